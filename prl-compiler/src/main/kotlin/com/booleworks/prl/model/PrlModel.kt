@@ -9,6 +9,7 @@ import com.booleworks.prl.model.constraints.Feature
 import com.booleworks.prl.model.datastructures.FeatureAssignment
 import com.booleworks.prl.model.rules.AnyRule
 import com.booleworks.prl.model.slices.AnySliceSelection
+import com.booleworks.prl.model.slices.PropertyIndex
 import com.booleworks.prl.model.slices.Slice
 import com.booleworks.prl.model.slices.evaluateProperties
 import com.booleworks.prl.parser.PrlVersion
@@ -24,6 +25,18 @@ data class PrlModel(
         featureStore.allDefinitions().associateBy({ it.code }, { it.feature })
     }
 
+    /**
+     * The index for finding the rules of a slice by their properties.
+     */
+    val ruleIndex: PropertyIndex<AnyRule> by lazy { PropertyIndex(rules) { it.properties } }
+
+    /**
+     * The index for finding the feature definitions of a slice by their properties.
+     */
+    val featureDefinitionIndex: PropertyIndex<AnyFeatureDef> by lazy {
+        PropertyIndex(featureStore.allDefinitions()) { it.properties }
+    }
+
     fun <T : Feature> getFeature(featureCode: String): T {
         val feature = featureMap[featureCode] ?: throw IllegalArgumentException("Could not find feature '$featureCode'")
         return feature as T
@@ -43,12 +56,11 @@ data class PrlModel(
     fun restrict(assignment: FeatureAssignment) = rules.map { it.restrict(assignment) }
     fun syntacticSimplify() = rules.map { it.syntacticSimplify() }
     fun rules(selections: List<AnySliceSelection>) = rules.filter { evaluateProperties(it.properties, selections) }
-    fun rules(slice: Slice) = rules.filter { evaluateProperties(it.properties, slice.selector()) }
+    fun rules(slice: Slice) = ruleIndex.elements(slice)
     fun featureDefinitions(selections: List<AnySliceSelection>) =
         featureStore.allDefinitions().filter { evaluateProperties(it.properties, selections) }
 
-    fun featureDefinitions(slice: Slice) =
-        featureStore.allDefinitions().filter { evaluateProperties(it.properties, slice.selector()) }
+    fun featureDefinitions(slice: Slice) = featureDefinitionIndex.elements(slice)
 
     fun propertyDefinition(name: String) = propertyStore.definition(name)
 
@@ -79,7 +79,7 @@ class BooleanList internal constructor(private val values: SortedSet<Boolean>) :
     }
 
     override fun compareTo(other: PropertyRange<Boolean>) =
-        if (other is EmptyBooleanRange) 1 else compareLexicographic(values.toList(), other.allValues().toList())
+        if (other is EmptyBooleanRange) 1 else compareLexicographic(values, other.allValues())
 }
 
 sealed interface IntRange : PropertyRange<Int> {
@@ -166,7 +166,7 @@ class IntList internal constructor(private val values: SortedSet<Int>) : IntRang
     override fun compareTo(other: PropertyRange<Int>) = when (other) {
         EmptyIntRange -> 1
         is IntInterval -> 1
-        is IntList -> compareLexicographic(values.toList(), other.values.toList())
+        is IntList -> compareLexicographic(values, other.values)
         else -> error("can never happen")
     }
 }
@@ -264,7 +264,7 @@ class DateList internal constructor(private val values: SortedSet<LocalDate>) :
     override fun compareTo(other: PropertyRange<LocalDate>) = when (other) {
         EmptyDateRange -> 1
         is DateInterval -> 1
-        is DateList -> compareLexicographic(values.toList(), other.values.toList())
+        is DateList -> compareLexicographic(values, other.values)
         else -> error("can never happen")
     }
 }
@@ -312,7 +312,7 @@ class EnumList internal constructor(private val values: SortedSet<String>) : Enu
     }
 
     override fun compareTo(other: PropertyRange<String>) =
-        if (other is EmptyEnumRange) 1 else compareLexicographic(values.toList(), other.allValues().toList())
+        if (other is EmptyEnumRange) 1 else compareLexicographic(values, other.allValues())
 }
 
 fun <E : Comparable<E>> compareLexicographic(set1: List<E>, set2: List<E>): Int {
@@ -323,3 +323,16 @@ fun <E : Comparable<E>> compareLexicographic(set1: List<E>, set2: List<E>): Int
     }
     return set1.size.compareTo(set2.size)
 }
+
+/**
+ * Compares the given (sorted) values lexicographically without copying them.
+ */
+fun <E : Comparable<E>> compareLexicographic(values1: Iterable<E>, values2: Iterable<E>): Int {
+    val it1 = values1.iterator()
+    val it2 = values2.iterator()
+    while (it1.hasNext() && it2.hasNext()) {
+        val comparison = it1.next().compareTo(it2.next())
+        if (comparison != 0) return comparison
+    }
+    return it1.hasNext().compareTo(it2.hasNext())
+}
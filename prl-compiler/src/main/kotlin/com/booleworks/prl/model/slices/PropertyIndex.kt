@@ -0,0 +1,70 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.prl.model.slices
+
+import com.booleworks.prl.model.AnyProperty
+import java.util.BitSet
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * An index over the properties of a list of elements (e.g. rules or feature
+ * definitions) which computes the elements matching a slice by bitset
+ * intersection.
+ *
+ * For each property value occurring in a slice, the set of matching elements
+ * is computed once and stored as a bitset over the element positions.  The
+ * elements matching a slice are then the intersection of the bitsets of all
+ * its properties.  Since slices of the same model share their property
+ * values, each element is evaluated only once per property value instead of
+ * once per slice.
+ *
+ * This class is thread-safe.
+ *
+ * @param T the type of the elements
+ * @param elements the indexed elements
+ * @param properties the function returning the properties of an element
+ */
+class PropertyIndex<T>(private val elements: List<T>, private val properties: (T) -> Map<String, AnyProperty>) {
+    private val bitsets = ConcurrentHashMap<AnyProperty, BitSet>()
+
+    /**
+     * Returns the positions of all elements matching the given slice.  The
+     * returned bitset is a fresh copy and can be modified by the caller.
+     */
+    fun matching(slice: Slice): BitSet {
+        val result = BitSet(elements.size).apply { set(0, elements.size) }
+        slice.allProperties().forEach { result.and(matching(it)) }
+        return result
+    }
+
+    /**
+     * Returns the elements at the positions of the given bitset in the order
+     * of the indexed elements.
+     */
+    fun elements(bits: BitSet): List<T> {
+        val result = ArrayList<T>(bits.cardinality())
+        var i = bits.nextSetBit(0)
+        while (i >= 0) {
+            result.add(elements[i])
+            i = bits.nextSetBit(i + 1)
+        }
+        return result
+    }
+
+    /**
+     * Returns all elements matching the given slice in the order of the
+     * indexed elements.
+     */
+    fun elements(slice: Slice) = elements(matching(slice))
+
+    // the cached bitsets are shared and must never be modified
+    private fun matching(property: AnyProperty): BitSet = bitsets.computeIfAbsent(property) {
+        val selection = Slice.of(property).selector()
+        BitSet(elements.size).apply {
+            elements.forEachIndexed { index, element ->
+                if (evaluateProperties(properties(element), selection)) set(index)
+            }
+        }
+    }
+}
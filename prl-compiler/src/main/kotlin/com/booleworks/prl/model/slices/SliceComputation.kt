@@ -24,7 +24,7 @@ import com.booleworks.prl.model.constraints.VersionedBooleanFeature
 import com.booleworks.prl.model.rules.AnyRule
 import com.booleworks.prl.model.rules.ConstraintRule
 import java.time.LocalDate
-import java.util.IdentityHashMap
+import java.util.BitSet
 
 const val MAXIMUM_NUMBER_OF_SLICES = 10_000
 
@@ -54,99 +54,110 @@ fun computeSliceSets(
     model: PrlModel,
     constraints: List<ConstraintRule>,
     consider: List<ConstraintRule>,
-): List<SliceSet> {
-    class RuleFeatureIdentitySet(featureDefs: List<AnyFeatureDef>, rules: List<AnyRule>) {
-        private val features = IdentityHashMap(featureDefs.associateWith { true })
-        private val rules = IdentityHashMap(rules.associateWith { true })
-        private val hashCode = features.hashCode() + rules.hashCode()
-        override fun hashCode() = hashCode
-        override fun equals(other: Any?): Boolean {
-            if (this === other) return true
-            if (javaClass != other?.javaClass) return false
-            other as RuleFeatureIdentitySet
-            if (features != other.features) return false
-            if (rules != other.rules) return false
-            return hashCode == other.hashCode
-        }
-    }
+): List<SliceSet> = computeSliceSets(slices.asSequence(), model, constraints, consider)
 
-    val sliceMap = mutableMapOf<RuleFeatureIdentitySet, SliceSet>()
+/**
+ * Groups the given slices into slice sets of slices with the same feature
+ * definitions and rules.  The slices are consumed one by one, so together
+ * with [enumerateSlices] only the slice sets are kept in memory.
+ */
+fun computeSliceSets(
+    slices: Sequence<Slice>,
+    model: PrlModel,
+    constraints: List<ConstraintRule>,
+    consider: List<ConstraintRule>,
+): List<SliceSet> {
+    // slices with the same feature definitions and rules share the same bitsets
+    val sliceMap = LinkedHashMap<Pair<BitSet, BitSet>, SliceSet>()
     slices.forEach { slice ->
-        val featureDefs = model.featureDefinitions(slice)
-        val rules = model.rules(slice) + constraints
-        sliceMap.computeIfAbsent(RuleFeatureIdentitySet(featureDefs, rules)) {
+        val featureBits = model.featureDefinitionIndex.matching(slice)
+        val ruleBits = model.ruleIndex.matching(slice)
+        sliceMap.computeIfAbsent(Pair(featureBits, ruleBits)) {
+            val featureDefs = model.featureDefinitionIndex.elements(featureBits)
+            val rules = model.ruleIndex.elements(ruleBits) + constraints
             SliceSet(mutableListOf(), featureDefs, rules, constraints, consider)
         }.slices.add(slice)
     }
     return sliceMap.values.toList()
 }
 
+/**
+ * Computes all slices of the given property definitions restricted by the
+ * given selectors.  Throws a [MaxNumberOfSlicesExceededException] if there
+ * are more than [maxNumberOfSlices] slices.  Use [enumerateSlices] if the
+ * slices do not have to be materialized.
+ */
 fun computeAllSlices(
     selectors: Collection<AnySliceSelection>,
     definitions: Collection<AnySlicingPropertyDefinition>,
     maxNumberOfSlices: Int = MAXIMUM_NUMBER_OF_SLICES
-): List<Slice> {
+): List<Slice> = enumerateSlices(selectors, definitions, maxNumberOfSlices).toList()
+
+/**
+ * Enumerates all slices of the given property definitions restricted by the
+ * given selectors lazily.  The slices are generated in the same order as by
+ * [computeAllSlices], but only the relevant properties of each definition are
+ * kept in memory, not the slices themselves.
+ *
+ * The number of slices is computed before the enumeration, so a
+ * [MaxNumberOfSlicesExceededException] is thrown by this function and not
+ * during the enumeration.  A maximum number of slices of 0 or less disables
+ * this check.
+ */
+fun enumerateSlices(
+    selectors: Collection<AnySliceSelection>,
+    definitions: Collection<AnySlicingPropertyDefinition>,
+    maxNumberOfSlices: Int = MAXIMUM_NUMBER_OF_SLICES
+): Sequence<Slice> {
+    if (definitions.isEmpty()) return sequenceOf(Slice.empty())
     val selectorMap = selectors.associateBy { it.property.name }
-    var slices = listOf<Slice>()
-    definitions.forEach { def ->
-        val selector = selectorMap[def.name]
-        val sliceType = selector?.sliceType
-        slices = when (def) {
-            is SlicingBooleanPropertyDefinition -> factorizeProperty(
-                slices,
-                def,
-                selector?.property as BooleanProperty?,
-                sliceType
-            )
-            is SlicingDatePropertyDefinition -> factorizeProperty(
-                slices,
-                def,
-                selector?.property as DateProperty?,
-                sliceType
-            )
-            is SlicingEnumPropertyDefinition -> factorizeProperty(
-                slices,
-                def,
-                selector?.property as EnumProperty?,
-                sliceType
-            )
-            is SlicingIntPropertyDefinition -> factorizeProperty(
-                slices,
-                def,
-                selector?.property as IntProperty?,
-                sliceType
-            )
+    val dimensions = definitions.map { relevantProperties(it, selectorMap[it.name]) }
+    // a definition without relevant values discards all previous definitions
+    val lastEmpty = dimensions.indexOfLast { it.isEmpty() }
+    if (lastEmpty == dimensions.size - 1) return emptySequence()
+    val factors = dimensions.drop(lastEmpty + 1)
+    if (maxNumberOfSlices > 0) {
+        var numberOfSlices = 1L
+        factors.forEach {
+            numberOfSlices *= it.size
+            if (numberOfSlices > maxNumberOfSlices) {
+                throw MaxNumberOfSlicesExceededException("Number of slice combinationes exceeded $maxNumberOfSlices")
+            }
         }
-        if (slices.size > maxNumberOfSlices) {
-            throw MaxNumberOfSlicesExceededException("Number of slice combinationes exceeded $maxNumberOfSlices")
+    }
+    return sequence {
+        val counters = IntArray(factors.size)
+        while (true) {
+            val properties = LinkedHashMap<AnyProperty, SliceType>()
+            factors.forEachIndexed { i, factor -> factor[counters[i]].let { properties[it.first] = it.second } }
+            yield(Slice.of(properties))
+            var i = factors.size - 1
+            while (i >= 0 && ++counters[i] == factors[i].size) {
+                counters[i--] = 0
+            }
+            if (i < 0) break
         }
     }
-    return if (definitions.isEmpty()) listOf(Slice.empty()) else slices
 }
 
-private fun <E : Any, R : PropertyRange<E>> factorizeProperty(
-    slices: List<Slice>,
-    def: SlicingPropertyDefinition<E, R>,
-    property: Property<E, R>?,
-    sliceType: SliceType?
-): List<Slice> =
-    (if (property == null) def.computeRelevantValues() else def.computeRelevantValues(property.range)).let { values ->
-        if (slices.isEmpty()) {
-            values.map { Slice.of(property(def.name, def.propertyType, it), sliceType ?: SliceType.ANY) }
-        } else {
-            slices.flatMap { slice ->
-                values.map {
-                    slice.copyWithAdditonalProperty(
-                        property(
-                            def.name,
-                            def.propertyType,
-                            it
-                        ), sliceType ?: SliceType.ANY
-                    )
-                }
-            }
-        }
+private fun relevantProperties(
+    def: AnySlicingPropertyDefinition,
+    selector: AnySliceSelection?
+): List<Pair<AnyProperty, SliceType>> {
+    val values = when (def) {
+        is SlicingBooleanPropertyDefinition -> relevantValues(def, selector?.property as BooleanProperty?)
+        is SlicingDatePropertyDefinition -> relevantValues(def, selector?.property as DateProperty?)
+        is SlicingEnumPropertyDefinition -> relevantValues(def, selector?.property as EnumProperty?)
+        is SlicingIntPropertyDefinition -> relevantValues(def, selector?.property as IntProperty?)
     }
+    val sliceType = selector?.sliceType ?: SliceType.ANY
+    return values.map { Pair(property(def.name, def.propertyType, it), sliceType) }
+}
+
+private fun <E : Any, R : PropertyRange<E>> relevantValues(
+    def: SlicingPropertyDefinition<E, R>,
+    property: Property<E, R>?
+): Collection<E> = if (property == null) def.computeRelevantValues() else def.computeRelevantValues(property.range)
 
 private fun property(propertyName: String, propertyType: PropertyType, value: Any): AnyProperty = when (propertyType) {
     PropertyType.BOOL -> BooleanProperty(propertyName, value as Boolean)
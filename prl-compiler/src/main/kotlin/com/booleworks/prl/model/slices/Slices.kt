@@ -14,54 +14,94 @@ import com.booleworks.prl.model.IntProperty
 import com.booleworks.prl.model.IntRange
 import com.booleworks.prl.model.Property
 import com.booleworks.prl.model.PropertyRange
-import com.booleworks.prl.model.compareLexicographic
 import java.time.LocalDate
 
 enum class SliceType { ANY, ALL, SPLIT }
 
-class Slice private constructor(private val properties: MutableMap<AnyProperty, SliceType>) : Comparable<Slice> {
+/**
+ * A slice, i.e. an assignment of slicing properties with their slice types.
+ *
+ * A slice is stored in two parallel arrays in the order the properties were
+ * added.  Slices are immutable, their hash code is computed once on creation,
+ * so they can be used as keys of hash maps without recomputing the hash codes
+ * of the property ranges.  Two slices are equal if they contain the same
+ * properties with the same slice types, independent of their order.
+ */
+class Slice private constructor(
+    private val properties: Array<AnyProperty>,
+    private val types: Array<SliceType>
+) : Comparable<Slice> {
+    private val hashCode = properties.indices.sumOf { properties[it].hashCode() xor types[it].hashCode() }
 
     companion object {
-        fun empty(): Slice = Slice(mutableMapOf())
+        private val EMPTY = Slice(arrayOf(), arrayOf())
+
+        fun empty(): Slice = EMPTY
 
         fun of(property: AnyProperty, sliceType: SliceType = SliceType.ANY): Slice =
-            Slice(mutableMapOf(Pair(property, sliceType)))
+            Slice(arrayOf(property), arrayOf(sliceType))
+
+        fun of(map: Map<AnyProperty, SliceType>): Slice =
+            Slice(map.keys.toTypedArray(), map.values.toTypedArray())
+
+        fun of(list: List<AnyProperty>): Slice = list.distinct().let { Slice(it.toTypedArray(), anyTypes(it.size)) }
+        fun of(vararg list: AnyProperty): Slice = of(list.asList())
 
-        fun of(map: Map<AnyProperty, SliceType>): Slice = Slice(map.toMutableMap())
-        fun of(list: List<AnyProperty>): Slice = Slice(list.associateWith { SliceType.ANY }.toMutableMap())
-        fun of(vararg list: AnyProperty): Slice = Slice(list.associateWith { SliceType.ANY }.toMutableMap())
+        private fun anyTypes(size: Int) = Array(size) { SliceType.ANY }
     }
 
-    fun copyWithAdditonalProperty(property: AnyProperty, sliceType: SliceType) =
-        Slice(properties.toMutableMap()).apply { properties[property] = sliceType }
+    fun copyWithAdditonalProperty(property: AnyProperty, sliceType: SliceType): Slice {
+        val index = properties.indexOf(property)
+        return if (index >= 0) {
+            Slice(properties, types.copyOf().apply { this[index] = sliceType })
+        } else {
+            Slice(properties + property, types + sliceType)
+        }
+    }
 
-    fun selector(): List<AnySliceSelection> = properties.map { entry ->
-        when (val prop = entry.key) {
-            is BooleanProperty -> BooleanSliceSelection(prop, entry.value)
-            is DateProperty -> DateSliceSelection(prop, entry.value)
-            is IntProperty -> IntSliceSelection(prop, entry.value)
-            is EnumProperty -> EnumSliceSelection(prop, entry.value)
+    fun selector(): List<AnySliceSelection> = properties.indices.map { i ->
+        when (val prop = properties[i]) {
+            is BooleanProperty -> BooleanSliceSelection(prop, types[i])
+            is DateProperty -> DateSliceSelection(prop, types[i])
+            is IntProperty -> IntSliceSelection(prop, types[i])
+            is EnumProperty -> EnumSliceSelection(prop, types[i])
         }
     }
 
-    fun property(name: String) = properties.keys.first { it.name == name }
-    fun allProperties() = properties.keys.toList()
-    fun filterProperties(sliceTypes: Set<SliceType>) =
-        Slice(properties.filter { it.value in sliceTypes }.toMutableMap())
+    fun property(name: String) = properties.first { it.name == name }
+    fun allProperties(): List<AnyProperty> = properties.asList()
+    fun filterProperties(sliceTypes: Set<SliceType>): Slice {
+        val indices = types.indices.filter { types[it] in sliceTypes }
+        if (indices.size == properties.size) return this
+        return Slice(Array(indices.size) { properties[indices[it]] }, Array(indices.size) { types[indices[it]] })
+    }
+
+    fun matches(slice: Slice) = slice.properties.indices.all { sliceType(slice.properties[it]) == slice.types[it] }
 
-    fun matches(slice: Slice) = slice.properties.all { properties[it.key] == it.value }
+    private fun sliceType(property: AnyProperty): SliceType? {
+        val index = properties.indexOf(property)
+        return if (index >= 0) types[index] else null
+    }
 
-    override fun toString() = "Slice($properties)"
-    override fun hashCode() = properties.hashCode()
+    override fun toString() =
+        properties.indices.joinToString(", ", "Slice({", "})") { "${properties[it]}=${types[it]}" }
+    override fun hashCode() = hashCode
 
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
-        return properties == (other as Slice).properties
+        other as Slice
+        return hashCode == other.hashCode && properties.size == other.properties.size && matches(other)
     }
 
-    override fun compareTo(other: Slice) =
-        compareLexicographic(properties.keys.toList(), other.properties.keys.toList())
+    override fun compareTo(other: Slice): Int {
+        val size = minOf(properties.size, other.properties.size)
+        for (index in 0 until size) {
+            val comparison = properties[index].compareTo(other.properties[index])
+            if (comparison != 0) return comparison
+        }
+        return properties.size.compareTo(other.properties.size)
+    }
 }
 
 typealias AnySliceSelection = SliceSelection<*, *, *>
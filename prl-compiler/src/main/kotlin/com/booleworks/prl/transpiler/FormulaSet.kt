@@ -61,6 +61,10 @@ data class SliceTranslation(val sliceSet: SliceSet, val info: TranspilationInfo)
 
 data class MergedSliceTranslation(val sliceSelectors: Map<String, SliceTranslation>, val info: TranspilationInfo)
 
+private val SPLIT_TYPES = setOf(SPLIT)
+private val SPLIT_ANY_TYPES = setOf(SPLIT, ANY)
+private val ALL_TYPES = setOf(SPLIT, ANY, ALL)
+
 data class ModelTranslation(
     val computations: List<SliceTranslation>,
     val skippedConstraints: List<String>
@@ -71,14 +75,23 @@ data class ModelTranslation(
     fun sliceMap(): Map<Slice, SliceTranslation> =
         computations.flatMap { it.sliceSet.slices.map { slice -> Pair(slice, it) } }.toMap()
 
-    fun allSplitSlices() = allSlices.map { it.filterProperties(setOf(SPLIT)) }.distinct()
+    // all slices of a translation have the same properties with the same slice
+    // types, so the slices matching a projected slice are exactly the slices
+    // with this projection
+    private val slicesBySplitSlice by lazy { allSlices.groupBy { it.filterProperties(SPLIT_TYPES) } }
+    private val slicesByAnySlice by lazy { allSlices.groupBy { it.filterProperties(SPLIT_ANY_TYPES) } }
+
+    fun allSplitSlices() = allSlices.map { it.filterProperties(SPLIT_TYPES) }.distinct()
     fun allAnySlices() = allSlices.map { it.filterProperties(setOf(ANY)) }.distinct()
     fun allAnySlices(slice: Slice) =
-        allSlices.filter { it.matches(slice) }.map { it.filterProperties(setOf(SPLIT, ANY)) }.distinct()
+        matchingSlices(slice, slicesBySplitSlice).map { it.filterProperties(SPLIT_ANY_TYPES) }.distinct()
 
     fun allAllSlices() = allSlices.map { it.filterProperties(setOf(ALL)) }.distinct()
     fun allAllSlices(slice: Slice) =
-        allSlices.filter { it.matches(slice) }.map { it.filterProperties(setOf(SPLIT, ANY, ALL)) }.distinct()
+        matchingSlices(slice, slicesByAnySlice).map { it.filterProperties(ALL_TYPES) }.distinct()
+
+    private fun matchingSlices(slice: Slice, index: Map<Slice, List<Slice>>) =
+        index[slice] ?: allSlices.filter { it.matches(slice) }
 
     operator fun get(index: Int) = computations[index]
     override fun iterator() = computations.iterator()
@@ -46,8 +46,8 @@ import com.booleworks.prl.model.rules.MandatoryFeatureRule
 import com.booleworks.prl.model.slices.AnySliceSelection
 import com.booleworks.prl.model.slices.MAXIMUM_NUMBER_OF_SLICES
 import com.booleworks.prl.model.slices.SliceSet
-import com.booleworks.prl.model.slices.computeAllSlices
 import com.booleworks.prl.model.slices.computeSliceSets
+import com.booleworks.prl.model.slices.enumerateSlices
 import com.booleworks.prl.parser.PrlConstraint
 import com.booleworks.prl.parser.parseConstraint
 import com.booleworks.prl.transpiler.RuleType.ADDITIONAL_RESTRICTION
@@ -74,7 +74,7 @@ fun transpileModel(
     val globalConstraints = additionalConstraints.mapNotNull { processConstraint(it, theoryMap, skippedConstraints) }
     val consider = considerConstraints.mapNotNull { processConstraint(it, theoryMap, skippedConstraints) }
 
-    val allSlices = computeAllSlices(selectors, model.propertyStore.allDefinitions(), maxNumberOfSlices)
+    val allSlices = enumerateSlices(selectors, model.propertyStore.allDefinitions(), maxNumberOfSlices)
     val sliceSets = computeSliceSets(allSlices, model, globalConstraints, consider)
     return ModelTranslation(
         sliceSets.map { transpileSliceSet(theoryMap, context, cf, intStore, it) },
@@ -0,0 +1,43 @@
+package com.booleworks.prl.model.slices
+
+import com.booleworks.prl.compiler.PrlCompiler
+import com.booleworks.prl.model.EnumProperty
+import com.booleworks.prl.model.IntProperty
+import com.booleworks.prl.parser.parseRuleFile
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+
+class PropertyIndexTest {
+    private val model = PrlCompiler().compile(parseRuleFile("../test-files/prl/compiler/rules_with_slices_2.prl"))
+    private val version = model.propertyStore.definition("version")
+    private val release = model.propertyStore.definition("release")
+
+    @Test
+    fun testIndexMatchesFilter() {
+        val slices = computeAllSlices(listOf(), listOf(version, release))
+        slices.forEach { slice ->
+            assertThat(model.ruleIndex.elements(slice))
+                .containsExactlyElementsOf(model.rules.filter { evaluateProperties(it.properties, slice.selector()) })
+            assertThat(model.featureDefinitionIndex.elements(slice))
+                .containsExactlyElementsOf(model.featureStore.allDefinitions()
+                    .filter { evaluateProperties(it.properties, slice.selector()) })
+        }
+    }
+
+    @Test
+    fun testEmptySlice() {
+        assertThat(model.ruleIndex.elements(Slice.empty())).containsExactlyElementsOf(model.rules)
+        assertThat(model.featureDefinitionIndex.elements(Slice.empty()))
+            .containsExactlyElementsOf(model.featureStore.allDefinitions())
+    }
+
+    @Test
+    fun testMatchingReturnsCopy() {
+        val slice = Slice.of(IntProperty("version", 1), EnumProperty("release", "R1"))
+        val bits = model.ruleIndex.matching(slice)
+        bits.clear()
+        assertThat(model.ruleIndex.matching(slice)).isNotEqualTo(BitSet())
+        assertThat(model.ruleIndex.elements(slice)).hasSize(4)
+    }
+}
@@ -59,4 +59,20 @@ class SliceComparisonTest {
 
         Assertions.assertThat(set).containsExactly(s1, s2, s3, s4, s5)
     }
+
+    @Test
+    fun testEqualityIndependentOfOrder() {
+        val i1 = IntProperty("i1", 1)
+        val e1 = EnumProperty("e1", "a")
+        val s1 = Slice.of(mapOf(Pair(i1, SliceType.ANY), Pair(e1, SliceType.SPLIT)))
+        val s2 = Slice.of(mapOf(Pair(e1, SliceType.SPLIT), Pair(i1, SliceType.ANY)))
+        val s3 = Slice.of(mapOf(Pair(e1, SliceType.ALL), Pair(i1, SliceType.ANY)))
+
+        Assertions.assertThat(s1).isEqualTo(s2)
+        Assertions.assertThat(s1.hashCode()).isEqualTo(s2.hashCode())
+        Assertions.assertThat(s1).isNotEqualTo(s3)
+        Assertions.assertThat(s1.filterProperties(setOf(SliceType.SPLIT))).isEqualTo(Slice.of(e1, SliceType.SPLIT))
+        Assertions.assertThat(s1.filterProperties(setOf(SliceType.ALL))).isEqualTo(Slice.empty())
+        Assertions.assertThat(s1.copyWithAdditonalProperty(e1, SliceType.ALL)).isEqualTo(s3)
+    }
 }
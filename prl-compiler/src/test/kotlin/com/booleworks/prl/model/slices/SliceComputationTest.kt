@@ -390,6 +390,26 @@ class SliceComputationTest {
             .hasMessage("Number of slice combinationes exceeded 10")
     }
 
+    @Test
+    fun testThreePropertiesNoMaximalSliceNumber() {
+        assertThat(computeAllSlices(listOf(), listOf(b2, d1, i1), 0)).hasSize(36)
+    }
+
+    @Test
+    fun testEnumerateSlicesExceedMaximalSliceNumber() {
+        assertThatThrownBy { enumerateSlices(listOf(), listOf(b2, d1, i1), 35) }
+            .isInstanceOf(MaxNumberOfSlicesExceededException::class.java)
+    }
+
+    @Test
+    fun testEnumerateSlicesIsLazy() {
+        val slices = enumerateSlices(listOf(), listOf(b2, d1, i1))
+        assertThat(slices.take(2).toList()).containsExactly(
+            Slice.of(BooleanProperty("b2", false), DateProperty("d1", date1), IntProperty("i1", 1)),
+            Slice.of(BooleanProperty("b2", false), DateProperty("d1", date1), IntProperty("i1", 2))
+        )
+    }
+
     @Test
     fun testThreePropertiesWithFilter() {
         val slices1 = computeAllSlices(
@@ -0,0 +1,57 @@
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.computations.backbone.BACKBONE
+import com.booleworks.boolerules.computations.backbone.BackboneType
+import com.booleworks.boolerules.computations.generic.SliceComputationResult
+import com.booleworks.boolerules.computations.generic.SliceDO
+import com.booleworks.boolerules.rulefile.PropertyRangeDO
+import com.booleworks.boolerules.rulefile.PropertyTypeDO
+import com.booleworks.boolerules.rulefile.SlicingPropertyDO
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import java.lang.management.ManagementFactory
+
+private const val WARMUP = 2_000
+private const val ITERATIONS = 10_000
+
+/**
+ * Prints the latency and the allocated bytes per call of the persistence
+ * serialization: a new mapper per call vs. the shared reader, and the JSON
+ * vs. the Smile encoding of a large result.
+ */
+fun main() {
+    val result = SliceComputationResult(1, BackboneType.MANDATORY, listOf(slice(1, 7)))
+    val json = PersistenceSerialization.mapper.writeValueAsString(result)
+    measure("new mapper per call") {
+        val mapper = jacksonObjectMapper().registerModule(JavaTimeModule())
+        val type = mapper.typeFactory.constructParametricType(SliceComputationResult::class.java, BACKBONE.main)
+        mapper.readValue<SliceComputationResult<BackboneType>>(json, type)
+    }
+    measure("shared reader") {
+        PersistenceSerialization.of(BACKBONE).main.read<SliceComputationResult<BackboneType>>(json.toByteArray())
+    }
+
+    val main = PersistenceSerialization.of(BACKBONE).main
+    val largeResult = SliceComputationResult(1, BackboneType.MANDATORY, (1..1000).map { slice(it, it) })
+    PersistenceEncoding.entries.forEach { encoding ->
+        val bytes = main.write(largeResult, encoding)
+        println("$encoding: ${bytes.size} bytes")
+        measure("$encoding write") { main.write(largeResult, encoding) }
+        measure("$encoding read") { main.read<SliceComputationResult<BackboneType>>(bytes) }
+    }
+}
+
+private fun slice(min: Int, max: Int) =
+    SliceDO(listOf(SlicingPropertyDO("version", PropertyTypeDO.INT, PropertyRangeDO(intMin = min, intMax = max))))
+
+private fun measure(name: String, block: () -> Any) {
+    val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+    val threadId = Thread.currentThread().id
+    repeat(WARMUP) { block() }
+    val bytesBefore = threads.getThreadAllocatedBytes(threadId)
+    val start = System.nanoTime()
+    repeat(ITERATIONS) { block() }
+    val nanos = System.nanoTime() - start
+    val bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore
+    println("$name: ${nanos / ITERATIONS} ns/call, ${bytes / ITERATIONS} bytes/call")
+}
@@ -0,0 +1,266 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.cache
+
+import com.booleworks.boolerules.computations.generic.CACHING_IMPORT_FF
+import com.booleworks.boolerules.computations.generic.ComputationRequest
+import com.booleworks.boolerules.config.ComputationConfig
+import com.booleworks.logicng.formulas.Equivalence
+import com.booleworks.logicng.formulas.FType
+import com.booleworks.logicng.formulas.Formula
+import com.booleworks.logicng.formulas.FormulaFactory
+import com.booleworks.logicng.formulas.Implication
+import com.booleworks.logicng.formulas.Literal
+import com.booleworks.logicng.formulas.Not
+import com.booleworks.logicng.formulas.Variable
+import com.booleworks.logicng.handlers.NumberOfNodesBddHandler
+import com.booleworks.logicng.knowledgecompilation.bdds.Bdd
+import com.booleworks.logicng.knowledgecompilation.bdds.BddFactory
+import com.booleworks.logicng.knowledgecompilation.bdds.jbuddy.BddKernel
+import com.booleworks.logicng.knowledgecompilation.bdds.orderings.ForceOrdering
+import com.booleworks.prl.model.slices.Slice
+import com.booleworks.prl.transpiler.RuleType
+import com.booleworks.prl.transpiler.TranspilationInfo
+import java.math.BigInteger
+import java.util.SortedSet
+import java.util.concurrent.ConcurrentHashMap
+
+private const val INITIAL_NODES = 10_000
+private const val OPERATION_CACHE_SIZE = 10_000
+
+/**
+ * The key of a compiled slice: the translation key of its request without
+ * additional constraints and the slice.  So all requests which only differ
+ * in their additional constraints share the same compiled slice, and the
+ * key is computed without looking at the formulas of the slice.
+ */
+internal data class CompilationKey(val translation: TranslationKey, val slice: Slice) {
+    val ruleFileId get() = translation.ruleFileId
+
+    companion object {
+        fun of(request: ComputationRequest, slice: Slice) = CompilationKey(
+            TranslationKey.of(
+                request.ruleFileId,
+                request.modelSliceSelection(),
+                listOf(),
+                request.considerConstraints()
+            ),
+            slice
+        )
+    }
+}
+
+/**
+ * Thrown if a constraint cannot be built on a compiled slice, since it
+ * contains variables or operators which are not supported there.
+ */
+private class UnsupportedConstraintException : RuntimeException()
+
+/**
+ * The backbone of a compiled slice.
+ */
+internal data class CompiledBackbone(
+    val positive: SortedSet<Variable>,
+    val negative: SortedSet<Variable>,
+    val optional: SortedSet<Variable>
+)
+
+/**
+ * A slice compiled to a BDD over the variables of the slice.  The BDD lives
+ * on its own factory and kernel which are not thread-safe, so all queries on
+ * a compiled slice are synchronized.  The formulas and variables passed to
+ * the queries are imported to the factory of the compiled slice.
+ *
+ * The nodes created by the queries stay in the node table of the kernel, so
+ * the weight of a compiled slice is the size of its node table after the
+ * last query instead of the size of its BDD.  The constraints of the queries
+ * are built directly on the kernel instead of being imported, so they do
+ * not grow the formula factory of the compiled slice.
+ */
+internal class CompiledSlice private constructor(
+    private val f: FormulaFactory,
+    private val kernel: BddKernel,
+    private val variables: List<Variable>,
+    private val bdd: Bdd,
+    val numberOfFormulas: Int
+) {
+    private val variableNames = variables.mapTo(HashSet()) { it.name }
+
+    @Volatile
+    var weight: Long = nodeTableSize()
+        private set
+
+    /**
+     * Returns the number of models of this slice under the given constraints
+     * projected to the given variables.  All other variables of the slice are
+     * existentially quantified.
+     */
+    @Synchronized
+    fun modelCount(constraints: List<Formula>, projection: Collection<Variable>): BigInteger {
+        val projected = projection.mapTo(HashSet()) { f.variable(it.name) }
+        val hidden = variables.filterNot(projected::contains)
+        // the quantified variables are still variables of the kernel and are counted as free variables
+        val count = condition(constraints).exists(hidden).modelCount().shiftRight(hidden.size)
+        weight = nodeTableSize()
+        return count
+    }
+
+    /**
+     * Returns the backbone of this slice under the given constraints wrt.
+     * the given variables or `null` if the slice is inconsistent under the
+     * constraints.
+     */
+    @Synchronized
+    fun backbone(relevantVariables: Collection<Variable>, constraints: List<Formula>): CompiledBackbone? {
+        val conditioned = condition(constraints)
+        if (conditioned.isContradiction) {
+            return null
+        }
+        val backbone = CompiledBackbone(sortedSetOf(), sortedSetOf(), sortedSetOf())
+        relevantVariables.forEach {
+            val variable = f.variable(it.name)
+            when {
+                conditioned.restrict(variable.negate(f)).isContradiction -> backbone.positive.add(it)
+                conditioned.restrict(variable).isContradiction -> backbone.negative.add(it)
+                else -> backbone.optional.add(it)
+            }
+        }
+        weight = nodeTableSize()
+        return backbone
+    }
+
+    private fun nodeTableSize() = kernel.statistics().nodesize.toLong()
+
+    private fun condition(constraints: List<Formula>) =
+        constraints.fold(bdd) { conditioned, constraint -> conditioned.and(build(constraint)) }
+
+    /**
+     * Builds the BDD of a formula of another factory on the kernel of this
+     * slice.  Only the variables of the formula are looked up in the factory
+     * of this slice.
+     */
+    private fun build(formula: Formula): Bdd = when (formula.type) {
+        FType.TRUE, FType.FALSE -> BddFactory.build(f, f.constant(formula.type == FType.TRUE), kernel)
+        FType.LITERAL -> {
+            val literal = formula as Literal
+            if (literal.name !in variableNames) throw UnsupportedConstraintException()
+            val variable = BddFactory.build(f, f.variable(literal.name), kernel)
+            if (literal.phase) variable else variable.negate()
+        }
+        FType.NOT -> build((formula as Not).operand).negate()
+        FType.IMPL -> build((formula as Implication).left).implies(build(formula.right))
+        FType.EQUIV -> build((formula as Equivalence).left).equivalence(build(formula.right))
+        FType.AND -> formula.map { build(it) }.reduce(Bdd::and)
+        FType.OR -> formula.map { build(it) }.reduce(Bdd::or)
+        else -> throw UnsupportedConstraintException()
+    }
+
+    companion object {
+        /**
+         * Compiles the conjunction of the given formulas to a BDD over the
+         * given variables, which must contain all variables of the formulas.
+         * Returns `null` if the compilation creates more than the given
+         * number of nodes.
+         */
+        fun compile(formulas: List<Formula>, variables: Collection<Variable>, maxNodes: Int): CompiledSlice? {
+            val f = CACHING_IMPORT_FF()
+            val formula = f.and(formulas.map { f.importFormula(it) })
+            val order = ForceOrdering().getOrder(f, formula)
+            val ordered = order.toSet()
+            val ordering = order + variables.map { f.variable(it.name) }.filterNot(ordered::contains)
+            val kernel = BddKernel(f, ordering, INITIAL_NODES, OPERATION_CACHE_SIZE)
+            val bdd = BddFactory.build(f, formula, kernel, NumberOfNodesBddHandler(maxNodes))
+            return if (bdd.isSuccess) CompiledSlice(f, kernel, ordering, bdd.result, formulas.size) else null
+        }
+    }
+}
+
+/**
+ * An in-process cache of slices compiled to BDDs.  Once a slice is compiled,
+ * model counts and backbones under arbitrary additional constraints over its
+ * variables are computed on the BDD instead of calling a solver.  Since the
+ * compilation of a slice can be much more expensive than a single solver
+ * call, the cache is disabled by default.  Its size is bounded by the total
+ * number of BDD nodes configured in [ComputationConfig.compilationCacheSize].
+ * Slices whose compilation exceeds this number on its own are not compiled
+ * again until the limit is raised, their computations fall back to a solver.
+ */
+internal object CompilationCache {
+    private val cache = WeightedLruCache<CompilationKey, CompiledSlice>(
+        "compilations",
+        { ComputationConfig.compilationCacheSize },
+        { it.weight }
+    )
+    private val uncompilable = ConcurrentHashMap<CompilationKey, Long>()
+
+    private class NodeLimitExceededException : RuntimeException()
+
+    /**
+     * Computes the given query on the compiled slice for the given request
+     * and slice with the formulas of the additional restrictions of the
+     * given translation.  If the slice is not yet compiled, it is compiled
+     * and stored in the cache.  Returns `null` if the cache is disabled, if
+     * the slice cannot be compiled within the size of the cache, or if the
+     * additional restrictions cannot be built on the compiled slice.
+     */
+    fun <T> compute(
+        request: ComputationRequest,
+        slice: Slice,
+        info: TranspilationInfo,
+        f: FormulaFactory,
+        query: (CompiledSlice, List<Formula>) -> T
+    ): T? {
+        val maxNodes = ComputationConfig.compilationCacheSize
+        if (maxNodes <= 0) {
+            return null
+        }
+        val (restrictions, rules) = info.propositions.partition {
+            it.backpack.ruleType == RuleType.ADDITIONAL_RESTRICTION
+        }
+        val key = CompilationKey.of(request, slice)
+        if ((uncompilable[key] ?: 0L) >= maxNodes) {
+            return null
+        }
+        val compiled = try {
+            cache.getOrLoad(key) {
+                val formulas = rules.map { it.formula }
+                val variables = sortedSetOf<Variable>()
+                formulas.forEach { variables.addAll(it.variables(f)) }
+                variables.addAll(info.knownVariables)
+                CompiledSlice.compile(formulas, variables, maxNodes.coerceAtMost(Int.MAX_VALUE.toLong()).toInt())
+                    ?.takeIf { it.weight <= maxNodes }
+                    ?: throw NodeLimitExceededException()
+            }
+        } catch (e: NodeLimitExceededException) {
+            uncompilable.merge(key, maxNodes, ::maxOf)
+            return null
+        }
+        // a cheap check that the slice was compiled from the same rules
+        if (compiled.numberOfFormulas != rules.size) {
+            return null
+        }
+        return try {
+            query(compiled, restrictions.map { it.formula })
+        } catch (e: UnsupportedConstraintException) {
+            null
+        } finally {
+            cache.reweigh(key, compiled)
+        }
+    }
+
+    /**
+     * Removes all compiled slices for the given rule file.
+     */
+    fun invalidate(ruleFileId: String): Int {
+        uncompilable.keys.removeIf { it.ruleFileId == ruleFileId }
+        return cache.invalidateIf { it.ruleFileId == ruleFileId }
+    }
+
+    fun invalidateAll() {
+        uncompilable.clear()
+        cache.invalidateAll()
+    }
+
+    fun statistics() = cache.statistics()
+}
@@ -0,0 +1,53 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.cache
+
+import com.booleworks.boolerules.config.ComputationConfig
+import com.booleworks.boolerules.persistence.Persistence
+import com.booleworks.prl.model.PrlModel
+import com.booleworks.prl.model.deserialize
+import com.booleworks.prl.model.protobuf.ProtoBufModel.PbModel
+import java.util.zip.GZIPInputStream
+
+/**
+ * An in-process cache of deserialized PRL models per rule file ID.  Since
+ * rule files are immutable once they are uploaded, a cached model is valid
+ * until its rule file is deleted.  The cache is shared between all
+ * computations and the detail routes.
+ *
+ * The heap size of a deserialized model is a multiple of its serialized
+ * size which depends on the structure of the model and cannot be measured
+ * cheaply.  So the cache is bounded by the number of cached models
+ * configured in [ComputationConfig.modelCacheSize] rather than by a memory
+ * budget.
+ */
+internal object ModelCache {
+    private val cache = WeightedLruCache<String, PrlModel>(
+        "models",
+        { ComputationConfig.modelCacheSize },
+        { 1L }
+    )
+
+    /**
+     * Returns the model for the given rule file ID.  If the model is not yet
+     * cached, it is loaded from the rule file persistence.  Concurrent
+     * requests for a model which is not yet cached load it only once.
+     */
+    fun getOrLoad(ruleFileId: String): Result<PrlModel> = runCatching {
+        cache.getOrLoad(ruleFileId) {
+            Persistence.rulefile.openBinaryRuleFile(ruleFileId).getOrThrow().use { binZipped ->
+                deserialize(PbModel.newBuilder().mergeFrom(GZIPInputStream(binZipped)).build())
+            }
+        }
+    }
+
+    /**
+     * Removes the model for the given rule file from the cache.
+     */
+    fun invalidate(ruleFileId: String) = cache.invalidateIf { it == ruleFileId }
+
+    fun invalidateAll() = cache.invalidateAll()
+
+    fun statistics() = cache.statistics()
+}
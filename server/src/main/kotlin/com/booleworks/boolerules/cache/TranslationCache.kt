@@ -0,0 +1,116 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.cache
+
+import com.booleworks.boolerules.computations.generic.IncrementalSliceSolver
+import com.booleworks.boolerules.config.ComputationConfig
+import com.booleworks.logicng.csp.CspFactory
+import com.booleworks.logicng.formulas.Formula
+import com.booleworks.logicng.formulas.FormulaFactory
+import com.booleworks.prl.model.PrlModel
+import com.booleworks.prl.model.slices.AnySliceSelection
+import com.booleworks.prl.transpiler.ModelTranslation
+import com.booleworks.prl.transpiler.transpileModel
+
+/**
+ * The key of a cached model translation.  Slice selections are sorted by
+ * their property and constraints are trimmed, so that requests which only
+ * differ in the order of their selections or in whitespace share the same
+ * translation.  The order of the constraints is kept, since it determines
+ * the order of the propositions and therefore the results of the solvers.
+ */
+internal data class TranslationKey(
+    val ruleFileId: String,
+    val sliceSelection: List<AnySliceSelection>,
+    val additionalConstraints: List<String>,
+    val considerConstraints: List<String>
+) {
+    companion object {
+        fun of(
+            ruleFileId: String,
+            sliceSelection: List<AnySliceSelection>,
+            additionalConstraints: List<String>,
+            considerConstraints: List<String>
+        ) = TranslationKey(
+            ruleFileId,
+            sliceSelection.sortedBy { it.property.name },
+            normalize(additionalConstraints),
+            normalize(considerConstraints)
+        )
+
+        private fun normalize(constraints: List<String>) =
+            constraints.map { it.trim() }.filter { it.isNotEmpty() }
+    }
+}
+
+/**
+ * A cached model translation.  All formulas of the translation are created
+ * on the given factory which is switched to read-only mode once the
+ * translation is complete.  Computations on a cached translation therefore
+ * always have to use their own factory derived from this one.
+ */
+internal data class CachedTranslation(val cf: CspFactory, val translation: ModelTranslation) {
+    val weight: Long = translation.computations.sumOf { it.info.propositions.size.toLong() }
+
+    /**
+     * The formulas common to all slice translations, computed on first use.
+     */
+    val commonFormulas: Set<Formula> by lazy { IncrementalSliceSolver.commonFormulas(translation) }
+}
+
+/**
+ * An in-process cache of model translations per rule file, slice selection
+ * and constraints.  The size of the cache is bounded by the total number of
+ * cached propositions.
+ */
+internal object TranslationCache {
+    private val cache = WeightedLruCache<TranslationKey, CachedTranslation>(
+        "translations",
+        { ComputationConfig.translationCacheSize },
+        { it.weight }
+    )
+
+    /**
+     * Returns the translation for the given rule file, slice selection and
+     * constraints.  If there is no cached translation yet, the model is
+     * transpiled and the result is stored in the cache.
+     */
+    fun getOrTranspile(
+        ruleFileId: String,
+        model: PrlModel,
+        sliceSelection: List<AnySliceSelection>,
+        additionalConstraints: List<String>,
+        considerConstraints: List<String>
+    ): CachedTranslation {
+        val key = TranslationKey.of(ruleFileId, sliceSelection, additionalConstraints, considerConstraints)
+        return cache.getOrLoad(key) { transpile(model, key) }
+    }
+
+    /**
+     * Transpiles the given model without consulting the cache.
+     */
+    fun transpile(model: PrlModel, key: TranslationKey): CachedTranslation {
+        val factory = FormulaFactory.caching()
+        val cf = CspFactory(factory)
+        val translation = transpileModel(
+            cf,
+            model,
+            key.sliceSelection,
+            maxNumberOfSlices = ComputationConfig.maxNumberOfSlices,
+            additionalConstraints = key.additionalConstraints,
+            considerConstraints = key.considerConstraints
+        )
+        factory.readOnlyMode()
+        return CachedTranslation(cf, translation)
+    }
+
+    /**
+     * Removes all cached translations for the given rule file.
+     */
+    fun invalidate(ruleFileId: String) = cache.invalidateIf { it.ruleFileId == ruleFileId }
+
+    fun invalidateAll() = cache.invalidateAll()
+
+    fun statistics() = cache.statistics()
+}
@@ -0,0 +1,190 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.cache
+
+import io.swagger.v3.oas.annotations.media.Schema
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A thread-safe least-recently-used cache which is bounded by the total
+ * weight of its values instead of the number of its entries.
+ *
+ * The maximum weight is read from the given provider on each insertion, so
+ * it follows configuration changes at runtime.  A maximum weight of 0
+ * disables the cache.  Values which are heavier than the maximum weight on
+ * their own are never cached.
+ *
+ * @param name the name of the cache (used in the statistics)
+ * @param maxWeight a provider for the maximum total weight of all values
+ * @param weigher the function computing the weight of a single value
+ */
+class WeightedLruCache<K : Any, V : Any>(
+    private val name: String,
+    private val maxWeight: () -> Long,
+    private val weigher: (V) -> Long
+) {
+    private data class Entry<V>(val value: V, val weight: Long)
+
+    private val entries = LinkedHashMap<K, Entry<V>>(16, 0.75f, true)
+    private val loading = HashMap<K, CompletableFuture<V>>()
+    private var currentWeight = 0L
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val evictions = AtomicLong()
+
+    /**
+     * Returns the value for the given key or `null` if there is no such
+     * value in the cache.
+     */
+    operator fun get(key: K): V? = synchronized(this) { entries[key]?.value }.also {
+        if (it == null) misses.incrementAndGet() else hits.incrementAndGet()
+    }
+
+    /**
+     * Returns the cached value for the given key.  If there is no such value,
+     * it is computed with the given loader and stored in the cache.  The
+     * loader is called outside the lock, but only once for concurrent misses
+     * of the same key: all other callers wait for its value or its exception
+     * and are counted as hits.
+     */
+    fun getOrLoad(key: K, loader: () -> V): V {
+        val (pending, isLoader) = synchronized(this) {
+            entries[key]?.let {
+                hits.incrementAndGet()
+                return it.value
+            }
+            loading[key]?.let {
+                hits.incrementAndGet()
+                Pair(it, false)
+            } ?: run {
+                misses.incrementAndGet()
+                Pair(CompletableFuture<V>().also { loading[key] = it }, true)
+            }
+        }
+        if (!isLoader) {
+            try {
+                return pending.get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+        }
+        try {
+            val value = loader()
+            return (putIfAbsent(key, value) ?: value).also { pending.complete(it) }
+        } catch (e: Throwable) {
+            pending.completeExceptionally(e)
+            throw e
+        } finally {
+            synchronized(this) { loading.remove(key) }
+        }
+    }
+
+    /**
+     * Recomputes the weight of the given value after it has changed, if it
+     * is still stored for the given key.  The value is removed if it became
+     * heavier than the maximum weight on its own, otherwise the least
+     * recently used values are evicted until the total weight fits again.
+     */
+    fun reweigh(key: K, value: V) {
+        val weight = weigher(value)
+        synchronized(this) {
+            val entry = entries[key]?.takeIf { it.value === value } ?: return
+            currentWeight += weight - entry.weight
+            val max = maxWeight()
+            if (weight > max) {
+                entries.remove(key)
+                currentWeight -= weight
+                evictions.incrementAndGet()
+            } else {
+                entries[key] = Entry(value, weight)
+                evict(max)
+            }
+        }
+    }
+
+    /**
+     * Stores the given value for the given key and returns the value which
+     * was already present for the key or `null` if there was none.
+     */
+    fun putIfAbsent(key: K, value: V): V? {
+        val weight = weigher(value)
+        synchronized(this) {
+            entries[key]?.let { return it.value }
+            val max = maxWeight()
+            if (weight > max) {
+                return null
+            }
+            entries[key] = Entry(value, weight)
+            currentWeight += weight
+            evict(max)
+        }
+        return null
+    }
+
+    /**
+     * Removes all entries whose key matches the given predicate and returns
+     * the number of removed entries.
+     */
+    fun invalidateIf(predicate: (K) -> Boolean): Int = synchronized(this) {
+        val iterator = entries.entries.iterator()
+        var removed = 0
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (predicate(entry.key)) {
+                currentWeight -= entry.value.weight
+                iterator.remove()
+                removed++
+            }
+        }
+        removed
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    fun invalidateAll() = synchronized(this) {
+        entries.clear()
+        currentWeight = 0
+    }
+
+    fun statistics() = synchronized(this) {
+        CacheStatistics(name, entries.size, currentWeight, maxWeight(), hits.get(), misses.get(), evictions.get())
+    }
+
+    private fun evict(max: Long) {
+        val iterator = entries.entries.iterator()
+        while (currentWeight > max && iterator.hasNext()) {
+            currentWeight -= iterator.next().value.weight
+            iterator.remove()
+            evictions.incrementAndGet()
+        }
+    }
+}
+
+@Schema(description = "The statistics of an in-process cache")
+data class CacheStatistics(
+
+    @field:Schema(description = "The name of the cache")
+    val name: String,
+
+    @field:Schema(description = "The current number of entries in the cache")
+    val entries: Int,
+
+    @field:Schema(description = "The current total weight of all entries in the cache")
+    val weight: Long,
+
+    @field:Schema(description = "The maximum total weight of all entries in the cache")
+    val maxWeight: Long,
+
+    @field:Schema(description = "The number of cache hits since the start of the application")
+    val hits: Long,
+
+    @field:Schema(description = "The number of cache misses since the start of the application")
+    val misses: Long,
+
+    @field:Schema(description = "The number of evicted entries since the start of the application")
+    val evictions: Long
+)
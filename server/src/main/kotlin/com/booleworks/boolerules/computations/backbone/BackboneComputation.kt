@@ -3,6 +3,8 @@
 
 package com.booleworks.boolerules.computations.backbone
 
+import com.booleworks.boolerules.cache.CompilationCache
+import com.booleworks.boolerules.cache.CompiledSlice
 import com.booleworks.boolerules.computations.ComputationType
 import com.booleworks.boolerules.computations.NoComputationDetail
 import com.booleworks.boolerules.computations.backbone.BackboneComputation.BackboneElementResult
@@ -65,6 +67,7 @@ internal object BackboneComputation : ListComputation<
         NoComputationDetail,
         BackboneInternalResult,
         BackboneElementResult,
+        FeatureDO,
         FeatureDO>(NON_CACHING_USE_FF) {
 
     override fun allowedSliceTypes() = setOf(SliceTypeDO.SPLIT, SliceTypeDO.ALL)
@@ -75,6 +78,9 @@ internal object BackboneComputation : ListComputation<
         newResult: BackboneInternalResult
     ) = newResult
 
+    override fun copyForSlice(result: BackboneInternalResult, slice: Slice) =
+        result.copy(slice = slice, backbone = LinkedHashMap(result.backbone))
+
     override fun computeForSlice(
         request: BackboneRequest,
         slice: Slice,
@@ -87,6 +93,11 @@ internal object BackboneComputation : ListComputation<
         val result = BackboneInternalResult(slice, LinkedHashMap())
         val relevantVars = computeRelevantVars(f, info, request.features).intersect(info.knownVariables)
         val relevantIntVars = computeRelevantIntVars(info, request.features)
+        if (relevantIntVars.isEmpty()) {
+            CompilationCache.compute(request, slice, info, f) { compiled, constraints ->
+                computeCompiledBackbone(compiled, constraints, relevantVars, slice, info, status)
+            }?.let { return it }
+        }
         val (translationFormula, translationMap) = computeTranslatedIntVars(relevantIntVars, cf.formulaFactory, info)
 
         val solver = satSolver(NON_PT_CONFIG, f, info, slice, status).also { if (!status.successful()) return result }
@@ -115,6 +126,31 @@ internal object BackboneComputation : ListComputation<
         return result
     }
 
+    /**
+     * Computes the backbone on the compiled slice.  Since int features are
+     * not compiled, this is only possible for boolean and enum features.
+     */
+    private fun computeCompiledBackbone(
+        compiled: CompiledSlice,
+        constraints: List<Formula>,
+        relevantVars: Set<Variable>,
+        slice: Slice,
+        info: TranspilationInfo,
+        status: ComputationStatusBuilder
+    ): BackboneInternalResult {
+        val result = BackboneInternalResult(slice, LinkedHashMap())
+        val backbone = compiled.backbone(relevantVars, constraints)
+        if (backbone != null) {
+            backbone.positive.forEach { result.backbone[extractFeature(it, info)] = BackboneType.MANDATORY }
+            backbone.negative.forEach { result.backbone[extractFeature(it, info)] = BackboneType.FORBIDDEN }
+            backbone.optional.forEach { result.backbone[extractFeature(it, info)] = BackboneType.OPTIONAL }
+        } else {
+            warnInconsistentSlice(slice, status)
+            relevantVars.forEach { result.backbone[extractFeature(it, info)] = BackboneType.FORBIDDEN }
+        }
+        return result
+    }
+
     private fun computeTranslatedIntVars(
         variables: Set<LngIntVariable>,
         f: FormulaFactory,
@@ -165,6 +201,8 @@ internal object BackboneComputation : ListComputation<
             internalResult.backbone.getOrDefault(element, BackboneType.FORBIDDEN)
         )
 
+    override fun expandElement(element: FeatureDO) = element
+
     data class BackboneInternalResult(
         override val slice: Slice,
         val backbone: MutableMap<FeatureDO, BackboneType>
@@ -9,6 +9,7 @@ import com.booleworks.boolerules.computations.bomcheck.PositionValidationComputa
 import com.booleworks.boolerules.computations.generic.ApiDocs
 import com.booleworks.boolerules.computations.generic.ComputationStatusBuilder
 import com.booleworks.boolerules.computations.generic.FeatureModelDO
+import com.booleworks.boolerules.computations.generic.IncrementalSliceSolver
 import com.booleworks.boolerules.computations.generic.InternalResult
 import com.booleworks.boolerules.computations.generic.NON_CACHING_USE_FF
 import com.booleworks.boolerules.computations.generic.NON_PT_CONFIG
@@ -18,9 +19,10 @@ import com.booleworks.boolerules.computations.generic.SliceTypeDO
 import com.booleworks.boolerules.computations.generic.computationDoc
 import com.booleworks.boolerules.computations.generic.extractModel
 import com.booleworks.logicng.csp.CspFactory
+import com.booleworks.logicng.datastructures.Model
 import com.booleworks.logicng.formulas.Formula
 import com.booleworks.logicng.formulas.FormulaFactory
-import com.booleworks.logicng.solvers.SatSolver
+import com.booleworks.logicng.solvers.sat.SatCall
 import com.booleworks.prl.model.PrlModel
 import com.booleworks.prl.model.slices.Slice
 import com.booleworks.prl.transpiler.TranspilationInfo
@@ -67,6 +69,8 @@ internal object PositionValidationComputation : SingleComputation<
         error("Only split slices are allowed, so this method should never be called")
     }
 
+    override fun copyForSlice(result: PositionInternalResult, slice: Slice) = result.copy(slice = slice)
+
     override fun computeForSlice(
         request: PositionValidationRequest,
         slice: Slice,
@@ -79,6 +83,45 @@ internal object PositionValidationComputation : SingleComputation<
         val solver = satSolver(NON_PT_CONFIG, f, info, slice, status).also {
             if (!it.sat()) return PositionInternalResult(slice, request.position, listOf(), listOf(), null)
         }
+        return validatePosition(request, slice, info, f, status) { formulas ->
+            solver.satCall().addFormulas(formulas).solve().use { exampleIfSat(it, info) }
+        }
+    }
+
+    override fun incrementalSolverConfig(request: PositionValidationRequest) = NON_PT_CONFIG
+
+    override fun computeForSliceIncrementally(
+        request: PositionValidationRequest,
+        slice: Slice,
+        info: TranspilationInfo,
+        model: PrlModel,
+        cf: CspFactory,
+        sliceSolver: IncrementalSliceSolver,
+        status: ComputationStatusBuilder,
+    ): PositionInternalResult {
+        if (!sliceSolver.sat(info)) {
+            warnInconsistentSlice(slice, status)
+            return PositionInternalResult(slice, request.position, listOf(), listOf(), null)
+        }
+        return validatePosition(request, slice, info, cf.formulaFactory, status) { formulas ->
+            sliceSolver.satCall(info).addFormulas(formulas).solve().use { exampleIfSat(it, info) }
+        }
+    }
+
+    /**
+     * Validates the position of the request.  The given solve function
+     * solves the slice together with the given formulas and returns a model
+     * over the known variables of the slice if the formulas are satisfiable
+     * on the slice, and `null` otherwise.
+     */
+    private fun validatePosition(
+        request: PositionValidationRequest,
+        slice: Slice,
+        info: TranspilationInfo,
+        f: FormulaFactory,
+        status: ComputationStatusBuilder,
+        solve: (List<Formula>) -> Model?
+    ): PositionInternalResult {
         val pvConstraintMap = mutableMapOf<PositionVariant, Formula>()
         request.position.positionVariants.forEach {
             val pvConstraint = info.translateConstraint(f, it.constraint)
@@ -95,27 +138,26 @@ internal object PositionValidationComputation : SingleComputation<
             return PositionInternalResult(slice, request.position, listOf(), listOf(), null)
         }
 
-        val deadPVs = checkDeadPVs(request, pvConstraintMap, solver)
-        val nonComplete = checkCompleteness(request, pvConstraintMap, solver, info, f, positionConstraint.second)
-        val nonUniquePVs = checkUniqueness(request, pvConstraintMap, solver, info)
+        val deadPVs = checkDeadPVs(request, pvConstraintMap, solve)
+        val nonComplete = checkCompleteness(request, pvConstraintMap, solve, info, f, positionConstraint.second)
+        val nonUniquePVs = checkUniqueness(request, pvConstraintMap, solve, info, f)
 
         return PositionInternalResult(slice, request.position, deadPVs, nonUniquePVs, nonComplete)
     }
 
+    private fun exampleIfSat(satCall: SatCall, info: TranspilationInfo) =
+        if (satCall.satResult.result == true) satCall.model(info.knownVariables) else null
 
     private fun checkDeadPVs(
         request: PositionValidationRequest,
         pvConstraintMap: MutableMap<PositionVariant, Formula>,
-        solver: SatSolver,
+        solve: (List<Formula>) -> Model?,
     ): List<PositionVariant> {
         val deadPVs = mutableListOf<PositionVariant>()
         if (BomCheckType.DEAD_PV in request.computationTypes) {
             pvConstraintMap.forEach { (pv, formula) ->
-                solver.satCall().addFormulas(formula).solve().use { satCall ->
-                    val res = satCall.satResult;
-                    if (!res.isSuccess || res.result == false) {
-                        deadPVs.add(pv)
-                    }
+                if (solve(listOf(formula)) == null) {
+                    deadPVs.add(pv)
                 }
             }
         }
@@ -125,20 +167,16 @@ internal object PositionValidationComputation : SingleComputation<
     private fun checkCompleteness(
         request: PositionValidationRequest,
         pvConstraintMap: MutableMap<PositionVariant, Formula>,
-        solver: SatSolver,
+        solve: (List<Formula>) -> Model?,
         info: TranspilationInfo,
         f: FormulaFactory,
         pConstraint: Formula,
     ): FeatureModelDO? {
         if (BomCheckType.COMPLETENESS in request.computationTypes) {
             val allPvConstraintsNegatedConjunction = f.and(pvConstraintMap.values.map { it.negate(f) })
-            solver.satCall().addFormulas(pConstraint, allPvConstraintsNegatedConjunction).solve()
-                .use { satCall ->
-                    if (satCall.satResult.result == true) {
-                        val relevantVars = allPvConstraintsNegatedConjunction.variables(f)
-                        return extractModel(satCall.model(info.knownVariables).positiveVariables(), info) //TODO
-                    }
-                }
+            solve(listOf(pConstraint, allPvConstraintsNegatedConjunction))?.let {
+                return extractModel(it.positiveVariables(), info) //TODO
+            }
         }
         return null
     }
@@ -146,10 +184,10 @@ internal object PositionValidationComputation : SingleComputation<
     private fun checkUniqueness(
         request: PositionValidationRequest,
         pvConstraintMap: MutableMap<PositionVariant, Formula>,
-        solver: SatSolver,
+        solve: (List<Formula>) -> Model?,
         info: TranspilationInfo,
+        f: FormulaFactory,
     ): List<NonUniquePvsDetail> {
-        val f = solver.factory
         val nonUniquePVs = mutableListOf<NonUniquePvsDetail>()
         if (BomCheckType.UNIQUENESS in request.computationTypes) {
             val constraints = pvConstraintMap.keys.toTypedArray()
@@ -158,13 +196,9 @@ internal object PositionValidationComputation : SingleComputation<
                 for (j in i + 1 until constraints.size) {
                     val secondPv = pvConstraintMap[constraints[j]]
                     val formula = f.and(firstPv, secondPv)
-                    solver.satCall().addFormulas(formula).solve().use { satCall ->
-                        if (satCall.satResult.result == true) {
-                            val example = extractModel(
-                                satCall.model(info.knownVariables).positiveVariables(), info, formula.variables(f)
-                            )
-                            nonUniquePVs.add(NonUniquePvsDetail(constraints[i], constraints[j], example))
-                        }
+                    solve(listOf(formula))?.let {
+                        val example = extractModel(it.positiveVariables(), info, formula.variables(f))
+                        nonUniquePVs.add(NonUniquePvsDetail(constraints[i], constraints[j], example))
                     }
                 }
             }
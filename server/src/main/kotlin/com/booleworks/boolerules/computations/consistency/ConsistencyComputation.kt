@@ -9,8 +9,10 @@ import com.booleworks.boolerules.computations.consistency.ConsistencyComputation
 import com.booleworks.boolerules.computations.generic.ApiDocs
 import com.booleworks.boolerules.computations.generic.ComputationStatusBuilder
 import com.booleworks.boolerules.computations.generic.FeatureModelDO
+import com.booleworks.boolerules.computations.generic.IncrementalSliceSolver
 import com.booleworks.boolerules.computations.generic.InternalResult
 import com.booleworks.boolerules.computations.generic.NON_CACHING_USE_FF
+import com.booleworks.boolerules.computations.generic.NON_PT_CONFIG
 import com.booleworks.boolerules.computations.generic.RuleDO
 import com.booleworks.boolerules.computations.generic.SingleComputation
 import com.booleworks.boolerules.computations.generic.SingleComputationRunner
@@ -20,6 +22,7 @@ import com.booleworks.boolerules.computations.generic.computeExplanation
 import com.booleworks.boolerules.computations.generic.extractModel
 import com.booleworks.logicng.csp.CspFactory
 import com.booleworks.logicng.solvers.SatSolver
+import com.booleworks.logicng.solvers.sat.SatCall
 import com.booleworks.logicng.solvers.sat.SatSolverConfig
 import com.booleworks.prl.model.PrlModel
 import com.booleworks.prl.model.slices.Slice
@@ -63,6 +66,8 @@ internal object ConsistencyComputation :
             existingResult
         }
 
+    override fun copyForSlice(result: ConsistencyInternalResult, slice: Slice) = result.copy(slice = slice)
+
     override fun computeForSlice(
         request: ConsistencyRequest,
         slice: Slice,
@@ -75,12 +80,7 @@ internal object ConsistencyComputation :
         if (!status.successful()) return ConsistencyInternalResult(slice, false, null, null)
         return solver.satCall().solve().use { satCall ->
             if (satCall.satResult.result == true) {
-                val intVars = info.integerVariables.map(LngIntVariable::variable)
-                val model = satCall.model(info.encodingContext.getSatVariables(intVars) + info.knownVariables)
-                val integerAssignment =
-                    cf.decode(model.toAssignment(), intVars, info.knownVariables, info.encodingContext)
-                val example = extractModel(integerAssignment, info)
-                ConsistencyInternalResult(slice, true, example, null)
+                ConsistencyInternalResult(slice, true, extractExample(satCall, info, cf), null)
             } else {
                 //TODO beautify explanation
                 ConsistencyInternalResult(
@@ -97,6 +97,29 @@ internal object ConsistencyComputation :
         }
     }
 
+    // explanations require a proof on the original propositions
+    override fun incrementalSolverConfig(request: ConsistencyRequest) =
+        if (request.computeAllDetails) null else NON_PT_CONFIG
+
+    override fun computeForSliceIncrementally(
+        request: ConsistencyRequest,
+        slice: Slice,
+        info: TranspilationInfo,
+        model: PrlModel,
+        cf: CspFactory,
+        sliceSolver: IncrementalSliceSolver,
+        status: ComputationStatusBuilder,
+    ): ConsistencyInternalResult {
+        if (!status.successful()) return ConsistencyInternalResult(slice, false, null, null)
+        return sliceSolver.satCall(info).solve().use { satCall ->
+            if (satCall.satResult.result == true) {
+                ConsistencyInternalResult(slice, true, extractExample(satCall, info, cf), null)
+            } else {
+                ConsistencyInternalResult(slice, false, null, null)
+            }
+        }
+    }
+
     override fun computeDetailForSlice(
         slice: Slice,
         model: PrlModel,
@@ -114,6 +137,13 @@ internal object ConsistencyComputation :
         }
     }
 
+    private fun extractExample(satCall: SatCall, info: TranspilationInfo, cf: CspFactory): FeatureModelDO {
+        val intVars = info.integerVariables.map(LngIntVariable::variable)
+        val model = satCall.model(info.encodingContext.getSatVariables(intVars) + info.knownVariables)
+        val integerAssignment = cf.decode(model.toAssignment(), intVars, info.knownVariables, info.encodingContext)
+        return extractModel(integerAssignment, info)
+    }
+
     private fun prepareSolver(
         cf: CspFactory,
         proofTracing: Boolean,
@@ -66,6 +66,8 @@ internal object CoverageComputation :
         error("Only split slices are allowed, so this method should never be called")
     }
 
+    override fun copyForSlice(result: CoverageInternalResult, slice: Slice) = result.copy(slice = slice)
+
     override fun computeForSlice(
         request: CoverageRequest,
         slice: Slice,
@@ -3,6 +3,7 @@
 
 package com.booleworks.boolerules.computations.details
 
+import com.booleworks.boolerules.cache.ModelCache
 import com.booleworks.boolerules.computations.ComputationType
 import com.booleworks.boolerules.computations.NoElement
 import com.booleworks.boolerules.computations.bomcheck.POSITION_VALIDATION
@@ -17,16 +18,15 @@ import com.booleworks.boolerules.computations.coverage.CoverageMainResult
 import com.booleworks.boolerules.computations.generic.SliceDO
 import com.booleworks.boolerules.computations.minmaxconfig.MINMAXCONFIG
 import com.booleworks.boolerules.computations.minmaxconfig.MinMaxConfigDetail
+import com.booleworks.boolerules.computations.modelcount.MODELCOUNT
+import com.booleworks.boolerules.computations.modelcount.ModelCountDetail
 import com.booleworks.boolerules.computations.optimization.OPTIMIZATION
 import com.booleworks.boolerules.computations.optimization.OptimizationDetail
 import com.booleworks.boolerules.persistence.Persistence
 import com.booleworks.prl.model.PrlModel
-import com.booleworks.prl.model.deserialize
-import com.booleworks.prl.model.protobuf.ProtoBufModel
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
-import java.io.ByteArrayInputStream
-import java.util.zip.GZIPInputStream
+import java.math.BigInteger
 
 private val logger: Logger = LoggerFactory.getLogger("DetailManager")
 
@@ -36,6 +36,7 @@ fun computeDetailResponse(
 ): DetailResponse<*, *, *> =
     when (computationType) {
         CONSISTENCY -> computeConsistencyDetail(request)
+        MODELCOUNT -> computeModelCountDetail(request)
         MINMAXCONFIG -> computeMinMaxDetail(request)
         OPTIMIZATION -> computeOptimizationDetail(request)
         COVERAGE -> computeCoverageDetail(request)
@@ -69,6 +70,19 @@ private fun computeConsistencyDetail(request: DetailRequest): DetailResponse<NoE
     return DetailResponse(null, mainResult, computationDetail)
 }
 
+private fun computeModelCountDetail(request: DetailRequest): DetailResponse<NoElement, BigInteger, ModelCountDetail> {
+    val computationDetail =
+        Persistence.computation.fetchDetail(
+            request.jobId,
+            SliceDO.fromSelection(request.sliceSelection),
+            request.elementId,
+            MODELCOUNT
+        ).getOrThrow()
+    val mainResult =
+        Persistence.computation.fetchMainResult(request.jobId, computationDetail.resultId, MODELCOUNT).getOrThrow()
+    return DetailResponse(null, mainResult, computationDetail)
+}
+
 private fun computeMinMaxDetail(request: DetailRequest): DetailResponse<NoElement, Int, MinMaxConfigDetail> {
     val computationDetail =
         Persistence.computation.fetchDetail(
@@ -127,10 +141,5 @@ private fun computePositionValidationDetail(
 
 internal fun fetchModel(jobId: String): PrlModel {
     val status = Persistence.computation.fetchStatus(jobId).getOrThrow()
-    val binZipped = Persistence.rulefile.getBinaryRuleFile(status.ruleFileId)
-    return deserialize(
-        ProtoBufModel.PbModel.newBuilder()
-            .mergeFrom(GZIPInputStream(ByteArrayInputStream(binZipped.getOrThrow())))
-            .build()
-    )
+    return ModelCache.getOrLoad(status.ruleFileId).getOrThrow()
 }
@@ -3,6 +3,9 @@
 
 package com.booleworks.boolerules.computations.generic
 
+import com.booleworks.boolerules.cache.CachedTranslation
+import com.booleworks.boolerules.cache.TranslationCache
+import com.booleworks.boolerules.cache.TranslationKey
 import com.booleworks.boolerules.config.ComputationConfig
 import com.booleworks.logicng.csp.CspFactory
 import com.booleworks.logicng.formulas.FormulaFactory
@@ -25,11 +28,9 @@ import com.booleworks.prl.transpiler.mergeSlices
 import com.booleworks.prl.transpiler.transpileModel
 import java.util.Collections
 import java.util.TreeMap
-import java.util.concurrent.Executors
+import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.atomic.AtomicInteger
-import kotlinx.coroutines.asCoroutineDispatcher
-import kotlinx.coroutines.launch
-import kotlinx.coroutines.runBlocking
+import java.util.concurrent.atomic.AtomicReferenceArray
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
@@ -101,77 +102,127 @@ sealed class Computation<
         status: ComputationStatusBuilder,
     ): INTRES
 
+    /**
+     * Returns a copy of the given result for the given slice.  The result was
+     * computed for another slice with exactly the same slice sets, so only
+     * the slice-specific parts of the result have to be replaced.  The copy
+     * must not share any mutable state with the given result, since results
+     * are modified when they are merged.
+     * @param result the result computed for another slice
+     * @param slice the slice for the copy
+     * @return the copy of the result for the given slice
+     */
+    internal abstract fun copyForSlice(result: INTRES, slice: Slice): INTRES
+
+    /**
+     * Returns the SAT solver configuration if the slices of the given request
+     * should be solved on an [IncrementalSliceSolver] shared by all slices of
+     * a worker, or `null` if each slice is solved with its own solver (the
+     * default).  Computations returning a configuration here have to
+     * override [computeForSliceIncrementally].
+     * @param request the global request for the computation
+     * @return the solver configuration or `null`
+     */
+    internal open fun incrementalSolverConfig(request: REQUEST): SatSolverConfig? = null
+
+    /**
+     * Performs the computation for a single slice on the given incremental
+     * solver.  This is only called for slices which are translated on their
+     * own, i.e. not for merged ANY or ALL slices.  By default, the slice is
+     * computed with [computeForSlice].
+     * @param request the global request for the computation
+     * @param slice the slice for the specific computation
+     * @param info the translation info including propositions, variables and
+     *             variable mappings
+     * @param model the compiled PRL model
+     * @param sliceSolver the incremental solver of the current worker
+     * @param status the status builder
+     * @return the internal result for the computation
+     */
+    internal open fun computeForSliceIncrementally(
+        request: REQUEST,
+        slice: Slice,
+        info: TranspilationInfo,
+        model: PrlModel,
+        cf: CspFactory,
+        sliceSolver: IncrementalSliceSolver,
+        status: ComputationStatusBuilder,
+    ): INTRES = computeForSlice(request, slice, info, model, cf, status)
+
     /**
      * Computes the result for the whole PRL model and returns a mapping from
-     * computed slice to internal result.
+     * computed slice to internal result.  If [useTranslationCache] is set,
+     * the model translation is taken from the [TranslationCache] if possible.
+     * This must only be set if the model is the stored rule file with the
+     * request's rule file ID.
      */
-    internal fun computeForModel(
+    internal open fun computeForModel(
         request: REQUEST,
         model: PrlModel,
-        status: ComputationStatusBuilder
+        status: ComputationStatusBuilder,
+        useTranslationCache: Boolean = false
     ): Map<Slice, INTRES> {
-        val factory: FormulaFactory = FormulaFactory.caching()
-        val cspFactory = CspFactory(factory)
         request.validateAndAugmentSliceSelection(model, allowedSliceTypes())
-        val modelTranslation = transpileModel(
-            cspFactory, model, request.modelSliceSelection(),
-            additionalConstraints = request.additionalConstraints,
-            considerConstraints = request.considerConstraints()
-        )
+        val cachedTranslation = translateModel(request, model, useTranslationCache)
+        val (cspFactory, modelTranslation) = cachedTranslation
         status.numberOfSlices = modelTranslation.allSlices.size
         status.sliceSets = computeProjectedSliceSets(modelTranslation.computations, request)
         val slice2Translation = modelTranslation.sliceMap()
-        //TODO slice simplification does currently not work with ANY/ALL slices
-//        val slicesToCompute = slice2Translation.values.map { it.sliceSet.slices[0] }.toSet()
-        val slicesToCompute = slice2Translation.values.flatMap { it.sliceSet.slices }.toSet()
+        val sliceSetResults = SliceSetResults<INTRES>(modelTranslation)
         val sliceResults = Collections.synchronizedMap(TreeMap<Slice, INTRES>())
         val splitComputations = modelTranslation.allSplitSlices().ifEmpty { setOf(Slice.empty()) }
         val numExecs = AtomicInteger(0)
+        val solverConfig = incrementalSolverConfig(request)
+        val workers = SliceWorkerPool {
+            val cf = CspFactory(cspFactory, ffProvider())
+            val sliceSolver = solverConfig?.let {
+                IncrementalSliceSolver(cf.formulaFactory, it, cachedTranslation.commonFormulas)
+            }
+            SliceWorker(cf, sliceSolver)
+        }
+        // if there are fewer split slices than threads, the ANY/ALL slices of
+        // each split slice are computed in parallel as well
+        val parallelAnySlices = ComputationConfig.numThreads > 1 && splitComputations.size < ComputationConfig.numThreads
 
-        if (ComputationConfig.numThreads == 1) {
-            splitComputations.forEach { splitSlice ->
+        val tasks = splitComputations.map<Slice, () -> Unit> { splitSlice ->
+            {
                 execute(
                     request,
-                    cspFactory,
+                    workers,
+                    parallelAnySlices,
                     model,
                     modelTranslation,
                     splitSlice,
                     slice2Translation,
-                    slicesToCompute,
+                    sliceSetResults,
                     sliceResults,
                     numExecs,
                     status
                 )
             }
-        } else {
-            factory.readOnlyMode()
-            Executors.newFixedThreadPool(ComputationConfig.numThreads).asCoroutineDispatcher().use { dispatcher ->
-                runBlocking {
-                    val jobs = splitComputations.map { splitSlice ->
-                        launch(dispatcher) {
-                            execute(
-                                request,
-                                CspFactory(cspFactory, ffProvider()),
-                                model,
-                                modelTranslation,
-                                splitSlice,
-                                slice2Translation,
-                                slicesToCompute,
-                                sliceResults,
-                                numExecs,
-                                status
-                            )
-                        }
-                    }
-                    jobs.forEach { it.join() }
-                }
-            }
         }
+        runTasks(tasks)
 
         status.numberOfSliceComputations = numExecs.get()
+        status.numberOfSavedSliceComputations = sliceSetResults.numberOfReusedResults()
         return sliceResults
     }
 
+    private fun translateModel(request: REQUEST, model: PrlModel, useTranslationCache: Boolean): CachedTranslation {
+        val sliceSelection = request.modelSliceSelection()
+        val additionalConstraints = request.additionalConstraints
+        val considerConstraints = request.considerConstraints()
+        return if (useTranslationCache) {
+            TranslationCache.getOrTranspile(
+                request.ruleFileId, model, sliceSelection, additionalConstraints, considerConstraints
+            )
+        } else {
+            TranslationCache.transpile(
+                model, TranslationKey.of(request.ruleFileId, sliceSelection, additionalConstraints, considerConstraints)
+            )
+        }
+    }
+
     private fun computeProjectedSliceSets(computations: List<SliceTranslation>, req: REQUEST): List<List<SliceDO>> {
         val splitProperties = req.splitProperties()
         return computations.map { comp -> comp.sliceSet.slices.map { it.toDO().project(splitProperties) } }
@@ -179,39 +230,88 @@ sealed class Computation<
 
     private fun execute(
         request: REQUEST,
-        cf: CspFactory,
+        workers: SliceWorkerPool,
+        parallelAnySlices: Boolean,
         model: PrlModel,
         modelTranslation: ModelTranslation,
         splitSlice: Slice,
         slice2Translation: Map<Slice, SliceTranslation>,
-        slicesToCompute: Set<Slice>,
+        sliceSetResults: SliceSetResults<INTRES>,
         sliceResults: MutableMap<Slice, INTRES>,
         numExecs: AtomicInteger,
         status: ComputationStatusBuilder,
     ) {
-        for (anySlice in modelTranslation.allAnySlices(splitSlice).ifEmpty { setOf(splitSlice) }) {
-            val allSlices = modelTranslation.allAllSlices(anySlice).ifEmpty { setOf(anySlice) }
-            val sliceTranslations = allSlices.map { slice2Translation[it]!! }.distinct()
-            if (sliceTranslations.size == 1) {
-                val sliceTranslation = sliceTranslations[0]
-                if (anySlice in slicesToCompute) {
-                    val result = computeForSlice(request, anySlice, sliceTranslation.info, model, cf, status)
-                    numExecs.incrementAndGet()
-                    val newResult = mergeInternalResult(sliceResults[splitSlice], result)
-                    sliceResults[splitSlice] = newResult
-                    //TODO slice simplification does currently not work with ANY/ALL slices
-//                    sliceTranslation.sliceSet.slices.drop(1).forEach {
-                    // set the result for the remaining slices of the set
-//                        sliceResults[it.filterProperties(setOf(SliceType.SPLIT))] = newResult
-//                    }
+        val anySlices = modelTranslation.allAnySlices(splitSlice).ifEmpty { setOf(splitSlice) }.toList()
+        val anyResults = AtomicReferenceArray<INTRES?>(anySlices.size)
+        val tasks = anySlices.mapIndexed<Slice, () -> Unit> { index, anySlice ->
+            {
+                val allSlices = modelTranslation.allAllSlices(anySlice).ifEmpty { setOf(anySlice) }
+                val sliceTranslations = allSlices.map { slice2Translation[it]!! }.distinct()
+                val result = sliceSetResults.getOrCompute(sliceTranslations, anySlice, status, ::copyForSlice) {
+                    workers.use { worker -> computeForAnySlice(request, worker, model, anySlice, sliceTranslations, it) }
                 }
-            } else {
-                val merged = mergeSlices(cf, sliceTranslations)
-                val result = computeForSlice(request, anySlice, merged.info, model, cf, status)
                 numExecs.incrementAndGet()
-                val newResult = mergeInternalResult(sliceResults[splitSlice], result)
-                sliceResults[splitSlice] = newResult
+                anyResults.set(index, result)
+            }
+        }
+        if (parallelAnySlices) runTasks(tasks) else tasks.forEach { it() }
+
+        // results are merged in the order of the ANY slices, independent of
+        // the order in which they were computed
+        var mergedResult: INTRES? = null
+        for (index in anySlices.indices) {
+            anyResults.get(index)?.let { mergedResult = mergeInternalResult(mergedResult, it) }
+        }
+        mergedResult?.let { sliceResults[splitSlice] = it }
+    }
+
+    private fun computeForAnySlice(
+        request: REQUEST,
+        worker: SliceWorker,
+        model: PrlModel,
+        anySlice: Slice,
+        sliceTranslations: List<SliceTranslation>,
+        status: ComputationStatusBuilder,
+    ): INTRES {
+        val cf = worker.cf
+        return if (sliceTranslations.size == 1) {
+            val info = sliceTranslations[0].info
+            if (worker.sliceSolver != null) {
+                computeForSliceIncrementally(request, anySlice, info, model, cf, worker.sliceSolver, status)
+            } else {
+                computeForSlice(request, anySlice, info, model, cf, status)
             }
+        } else {
+            val merged = mergeSlices(cf, sliceTranslations)
+            computeForSlice(request, anySlice, merged.info, model, cf, status)
+        }
+    }
+
+    private fun runTasks(tasks: List<() -> Unit>) {
+        if (ComputationConfig.numThreads == 1) {
+            tasks.forEach { it() }
+        } else {
+            ComputationScheduler.runAll(tasks, ComputationConfig.numThreads)
+        }
+    }
+
+    /**
+     * A worker computing split slices one after another.  Each worker has its
+     * own formula factory and optionally its own incremental solver.
+     */
+    private class SliceWorker(val cf: CspFactory, val sliceSolver: IncrementalSliceSolver?)
+
+    /**
+     * A pool of slice workers.  Since a worker is not thread-safe, each task
+     * takes its own worker from the pool and returns it afterward, so at most
+     * as many workers are created as tasks run at the same time.
+     */
+    private class SliceWorkerPool(private val newWorker: () -> SliceWorker) {
+        private val idleWorkers = ConcurrentLinkedQueue<SliceWorker>()
+
+        fun <T> use(block: (SliceWorker) -> T): T {
+            val worker = idleWorkers.poll() ?: newWorker()
+            return block(worker).also { idleWorkers.add(worker) }
         }
     }
 
@@ -225,14 +325,18 @@ sealed class Computation<
         val solver = SatSolver.newSolver(f, config)
         solver.addPropositions(info.propositions)
         if (!solver.sat()) {
-            status.addWarning(
-                "Original rule set for the slice $slice is inconsistent. " +
-                        "Use the 'consistency' check to get an explanation, why."
-            )
+            warnInconsistentSlice(slice, status)
         }
         return solver
     }
 
+    internal fun warnInconsistentSlice(slice: Slice, status: ComputationStatusBuilder) {
+        status.addWarning(
+            "Original rule set for the slice $slice is inconsistent. " +
+                    "Use the 'consistency' check to get an explanation, why."
+        )
+    }
+
     internal fun maxSat(
         config: MaxSatConfig,
         f: FormulaFactory,
@@ -264,12 +368,13 @@ abstract class SingleComputation<
      * Computes the result for a single computation request for the whole PRL
      * model and merges the slice results afterward.
      */
-    internal fun computeResponse(
+    internal open fun computeResponse(
         request: REQUEST,
         model: PrlModel,
-        status: ComputationStatusBuilder
+        status: ComputationStatusBuilder,
+        useTranslationCache: Boolean = false
     ): MergeResult<MAIN, DETAIL> =
-        mergeMainResults(request, computeForModel(request, model, status))
+        mergeMainResults(request, computeForModel(request, model, status, useTranslationCache))
 
     internal fun computeDetail(
         model: PrlModel,
@@ -312,40 +417,56 @@ abstract class ListComputation<
         INTRES : InternalResult<MAIN, DETAIL>,
         ELEMRES : InternalResult<ELEMMAIN, ELEMDETAIL>,
         ELEMENT : Comparable<ELEMENT>,
+        KEY : Comparable<KEY>,
         >(
     override val ffProvider: () -> FormulaFactory
 ) : Computation<REQUEST, MAIN, DETAIL, INTRES>(ffProvider) {
 
     /**
-     * Computes all different elements for the result.
+     * Computes all different elements for the result.  The elements are
+     * represented by their internal keys, which are only expanded to the
+     * elements of the response by [expandElement].
      */
-    internal abstract fun extractElements(internalResult: INTRES): Set<ELEMENT>
+    internal abstract fun extractElements(internalResult: INTRES): Set<KEY>
 
     /**
      * Extracts the internal result for a single element from the slice result
-     * over all elements.
+     * over all elements or returns `null` if the result for the element is
+     * unknown in this slice, e.g. since the computation of the slice was
+     * stopped early.  Such slices are omitted from the result of the element.
      */
-    internal abstract fun extractInternalResult(element: ELEMENT, internalResult: INTRES): ELEMRES
+    internal abstract fun extractInternalResult(element: KEY, internalResult: INTRES): ELEMRES?
+
+    /**
+     * Expands the internal key of an element to the element of the response.
+     */
+    internal abstract fun expandElement(element: KEY): ELEMENT
 
     /**
      * Computes the result for a list computation request for the whole PRL
      * model and merges the slice results afterward.
      */
-    internal fun computeResponse(request: REQUEST, model: PrlModel, status: ComputationStatusBuilder):
-            Map<ComputationElement<ELEMENT>, MergeResult<ELEMMAIN, ELEMDETAIL>> {
-        val computationResult = computeForModel(request, model, status)
+    internal open fun computeResponse(
+        request: REQUEST,
+        model: PrlModel,
+        status: ComputationStatusBuilder,
+        useTranslationCache: Boolean = false
+    ): Map<ComputationElement<ELEMENT>, MergeResult<ELEMMAIN, ELEMDETAIL>> {
+        val computationResult = computeForModel(request, model, status, useTranslationCache)
         val allElements = computationResult.values.flatMap { extractElements(it) }.toSet()
         val elementMap = allElements.associateWith { resultMapForElement(it, computationResult) }.toSortedMap()
         var elementId = 1
         return elementMap
             .map { (element, elementRes) ->
                 val mergeResult = mergeMainResults(request, elementRes)
-                val res = Pair(ComputationElement(elementId, element), mergeResult)
+                val res = Pair(ComputationElement(elementId, expandElement(element)), mergeResult)
                 elementId++
                 res
             }.toMap()
     }
 
-    private fun resultMapForElement(element: ELEMENT, computationResult: Map<Slice, INTRES>): Map<Slice, ELEMRES> =
-        computationResult.map { (slice, sliceRes) -> Pair(slice, extractInternalResult(element, sliceRes)) }.toMap()
+    private fun resultMapForElement(element: KEY, computationResult: Map<Slice, INTRES>): Map<Slice, ELEMRES> =
+        computationResult.mapNotNull { (slice, sliceRes) ->
+            extractInternalResult(element, sliceRes)?.let { Pair(slice, it) }
+        }.toMap()
 }
@@ -12,6 +12,7 @@ import com.booleworks.boolerules.rulefile.SlicingPropertyDO
 import com.booleworks.boolerules.rulefile.toDO
 import com.booleworks.boolerules.service.ApplicationVersion
 import com.booleworks.kjobs.api.JobFrameworkBuilder
+import com.booleworks.prl.model.AnyProperty
 import com.booleworks.prl.model.AnySlicingPropertyDefinition
 import com.booleworks.prl.model.PrlModel
 import com.booleworks.prl.model.SlicingBooleanPropertyDefinition
@@ -300,8 +301,9 @@ data class SliceDO(
     }
 }
 
-fun Slice.toDO() =
-    SliceDO(this.allProperties().map { SlicingPropertyDO(it.name, it.propertyType.toDO(), it.range.toDO()) })
+fun Slice.toDO() = SliceDO(this.allProperties().map { it.toDO() })
+
+fun AnyProperty.toDO() = SlicingPropertyDO(name, propertyType.toDO(), range.toDO())
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @Schema(description = "A selection for a single slicing property")
@@ -388,6 +390,12 @@ data class ComputationStatistics(
     @field:Schema(description = "The number of slice computations necessary for the computation")
     val numberOfSliceComputations: Int,
 
+    @field:Schema(
+        description = "The number of slice computations which were not solved, because their result " +
+                "could be taken from a slice with the same rules and feature definitions"
+    )
+    val numberOfSavedSliceComputations: Int,
+
     @field:Schema(description = "The average computation time in milliseconds per slice")
     val averageSliceComputationTimeInMs: Long
 )
@@ -401,7 +409,8 @@ internal fun ComputationStatus(ruleFileId: String, jobId: String, computationVar
 internal class ComputationStatusBuilder(
     private val ruleFileId: String,
     val jobId: String,
-    private val computationVariant: ComputationVariant
+    private val computationVariant: ComputationVariant,
+    private val parent: ComputationStatusBuilder? = null
 ) {
     private val startTime = System.currentTimeMillis()
     private val errors: MutableList<String> = Collections.synchronizedList(ArrayList())
@@ -410,25 +419,44 @@ internal class ComputationStatusBuilder(
     internal var sliceSets: List<List<SliceDO>> = mutableListOf()
     internal var numberOfSlices: Int = 0
     internal var numberOfSliceComputations: Int = 0
+    internal var numberOfSavedSliceComputations: Int = 0
 
     fun addError(message: String) {
         errors.add(message)
+        parent?.addError(message)
     }
 
     fun addWarning(message: String) {
         warnings.add(message)
+        parent?.addWarning(message)
     }
 
     fun addInfo(message: String) {
         infos.add(message)
+        parent?.addInfo(message)
     }
 
+    /**
+     * Returns a builder for the computation of a single slice.  All messages
+     * are forwarded to this builder, but the builder keeps its own messages
+     * as well, so that they can be re-issued for other slices.
+     */
+    fun forSlice() = ComputationStatusBuilder(ruleFileId, jobId, computationVariant, this)
+
+    fun warnings(): List<String> = synchronized(warnings) { warnings.toList() }
+
     fun successful() = errors.isEmpty()
 
     fun build(): ComputationStatus {
         val computationTime = System.currentTimeMillis() - startTime
         val avgTime = if (numberOfSliceComputations > 0) computationTime / numberOfSliceComputations else 0
-        val statistics = ComputationStatistics(computationTime, numberOfSlices, numberOfSliceComputations, avgTime)
+        val statistics = ComputationStatistics(
+            computationTime,
+            numberOfSlices,
+            numberOfSliceComputations,
+            numberOfSavedSliceComputations,
+            avgTime
+        )
         return ComputationStatus(
             errors.isEmpty(),
             jobId,
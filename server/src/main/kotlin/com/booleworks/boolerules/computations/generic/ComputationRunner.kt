@@ -3,15 +3,12 @@
 
 package com.booleworks.boolerules.computations.generic
 
+import com.booleworks.boolerules.cache.ModelCache
 import com.booleworks.boolerules.persistence.Persistence
 import com.booleworks.kjobs.control.ComputationResult
 import com.booleworks.kjobs.data.Job
 import com.booleworks.prl.model.PrlModel
-import com.booleworks.prl.model.deserialize
-import com.booleworks.prl.model.protobuf.ProtoBufModel.PbModel
 import org.slf4j.LoggerFactory
-import java.io.ByteArrayInputStream
-import java.util.zip.GZIPInputStream
 import kotlin.time.measureTimedValue
 
 sealed class ComputationRunner<REQUEST : ComputationRequest, MAIN, DETAIL : ComputationDetail>(
@@ -19,13 +16,12 @@ sealed class ComputationRunner<REQUEST : ComputationRequest, MAIN, DETAIL : Comp
 ) {
     internal val logger = LoggerFactory.getLogger(this::class.java)
     internal fun loadRuleFile(ruleFileId: String, status: ComputationStatusBuilder): PrlModel? {
-        val binZipped = Persistence.rulefile.getBinaryRuleFile(ruleFileId).getOrElse {
+        val model = ModelCache.getOrLoad(ruleFileId).getOrElse {
             status.addError("Could not find rulefile with ID $ruleFileId in store")
             return null
         }
-        val bin = PbModel.newBuilder().mergeFrom(GZIPInputStream(ByteArrayInputStream(binZipped))).build()
         status.addInfo("Successfully loaded rulefile with ID $ruleFileId from store")
-        return deserialize(bin)
+        return model
     }
 }
 
@@ -42,7 +38,7 @@ class SingleComputationRunner<REQUEST : ComputationRequest, MAIN, DETAIL : Compu
         } else {
             measureTimedValue {
                 val response = try {
-                    val res = computation.computeResponse(request, model, status)
+                    val res = computation.computeResponse(request, model, status, useTranslationCache = true)
                     val sliceMapping = Persistence.computation.storeSliceGroups(status.jobId, status.sliceSets)
                     Persistence.computation.storeDetails(status.jobId, res.detailMap, sliceMapping)
                     SingleComputationResponse(status.build(), res.merge)
@@ -67,7 +63,7 @@ class ListComputationRunner<
         ELEMMAIN : Comparable<ELEMMAIN>,
         ELEMDETAIL : ComputationDetail,
         ELEMENT : Comparable<ELEMENT>>(
-    override val computation: ListComputation<REQUEST, MAIN, DETAIL, ELEMMAIN, ELEMDETAIL, *, *, ELEMENT>
+    override val computation: ListComputation<REQUEST, MAIN, DETAIL, ELEMMAIN, ELEMDETAIL, *, *, ELEMENT, *>
 ) : ComputationRunner<REQUEST, MAIN, DETAIL>(computation) {
 
     fun compute(job: Job, request: REQUEST): ComputationResult<ListComputationResponse<ELEMMAIN, ELEMENT>> {
@@ -79,7 +75,7 @@ class ListComputationRunner<
         } else {
             measureTimedValue {
                 val response = try {
-                    val res = computation.computeResponse(request, model, status)
+                    val res = computation.computeResponse(request, model, status, useTranslationCache = true)
                     val sliceMapping = Persistence.computation.storeSliceGroups(status.jobId, status.sliceSets)
                     val resultPerElement = res.map { (k, v) -> ComputationElementResult(k, v.merge) }
                     res.forEach { (e, r) ->
@@ -0,0 +1,175 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.computations.generic
+
+import com.booleworks.boolerules.config.ComputationConfig
+import io.swagger.v3.oas.annotations.media.Schema
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.thread
+import kotlin.concurrent.withLock
+
+/**
+ * The server-wide scheduler for the slice tasks of all computations.
+ *
+ * All computations submit their tasks to one shared pool of worker threads
+ * of size [ComputationConfig.schedulerThreads] instead of creating their own
+ * thread pools.  Jobs with pending tasks are served round-robin, so a large
+ * job cannot starve smaller jobs, and each job runs at most the given number
+ * of tasks at the same time.
+ *
+ * A worker thread waiting for nested tasks (e.g. tasks submitted from within
+ * another task) executes pending tasks of the awaited job itself, as long
+ * as the job's parallelism allows, so nested submissions cannot dead-lock
+ * the pool.
+ */
+object ComputationScheduler {
+    private val lock = ReentrantLock()
+    private val tasksAvailable = lock.newCondition()
+    private val readyJobs = ArrayDeque<JobTasks>()
+    private val isWorker = ThreadLocal.withInitial { false }
+    private var numWorkers = 0
+    private val activeJobs = mutableSetOf<JobTasks>()
+    private var runningTasks = 0
+    private var completedTasks = 0L
+
+    private class JobTasks(tasks: List<() -> Unit>, val parallelism: Int) {
+        val pending = ArrayDeque(tasks)
+        val total = tasks.size
+        val done = lock.newCondition()
+        var running = 0
+        var finished = 0
+        var queued = false
+        var failure: Throwable? = null
+
+        fun isReady() = pending.isNotEmpty() && running < parallelism
+        fun isDone() = finished >= total
+
+        /**
+         * Skips all pending tasks, running tasks are not interrupted.
+         */
+        fun cancel() {
+            finished += pending.size
+            pending.clear()
+        }
+    }
+
+    /**
+     * Runs all given tasks on the shared worker pool and blocks until all
+     * tasks are finished.  At most [parallelism] tasks of this call are run
+     * at the same time.  If a task fails, the remaining pending tasks are
+     * skipped and the first failure is rethrown.  If the calling thread is
+     * interrupted while waiting, the pending tasks are skipped as well.
+     * @param tasks the tasks to run
+     * @param parallelism the maximum number of tasks running at the same time
+     */
+    fun runAll(tasks: List<() -> Unit>, parallelism: Int) {
+        if (tasks.isEmpty()) return
+        val job = JobTasks(tasks, parallelism.coerceAtLeast(1))
+        lock.withLock {
+            ensureWorkers()
+            activeJobs.add(job)
+            enqueueIfReady(job)
+            try {
+                while (!job.isDone()) {
+                    if (isWorker.get() && job.isReady()) {
+                        runTask(job, job.pending.removeFirst())
+                    } else {
+                        job.done.await()
+                    }
+                }
+            } finally {
+                job.cancel()
+                readyJobs.remove(job)
+                job.queued = false
+                activeJobs.remove(job)
+            }
+        }
+        job.failure?.let { throw it }
+    }
+
+    fun statistics() = lock.withLock {
+        SchedulerStatistics(
+            numWorkers,
+            activeJobs.size,
+            activeJobs.sumOf { it.pending.size },
+            runningTasks,
+            completedTasks
+        )
+    }
+
+    private fun ensureWorkers() {
+        val numThreads = ComputationConfig.schedulerThreads
+        while (numWorkers < numThreads) {
+            thread(name = "computation-${numWorkers++}", isDaemon = true) {
+                isWorker.set(true)
+                lock.withLock {
+                    while (true) {
+                        while (readyJobs.isEmpty()) tasksAvailable.await()
+                        val job = readyJobs.removeFirst()
+                        job.queued = false
+                        // the job may have been drained by a waiting worker in the meantime
+                        if (job.isReady()) runTask(job, job.pending.removeFirst())
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the given task of the given job.  Must be called with the lock
+     * held; the lock is released while the task is running.
+     */
+    private fun runTask(job: JobTasks, task: () -> Unit) {
+        job.running++
+        runningTasks++
+        enqueueIfReady(job)
+        lock.unlock()
+        val failure = try {
+            task()
+            null
+        } catch (t: Throwable) {
+            t
+        } finally {
+            lock.lock()
+        }
+        job.running--
+        runningTasks--
+        job.finished++
+        completedTasks++
+        if (failure != null && job.failure == null) {
+            job.failure = failure
+            job.cancel()
+        }
+        enqueueIfReady(job)
+        // a waiting worker may run the next pending task of the job now
+        job.done.signalAll()
+    }
+
+    private fun enqueueIfReady(job: JobTasks) {
+        if (!job.queued && job.isReady()) {
+            job.queued = true
+            readyJobs.addLast(job)
+            tasksAvailable.signal()
+        }
+    }
+}
+
+@Schema(description = "The statistics of the computation scheduler")
+data class SchedulerStatistics(
+
+    @field:Schema(description = "The number of worker threads")
+    val workers: Int,
+
+    @field:Schema(description = "The number of computations currently waiting for their slice tasks")
+    val activeJobs: Int,
+
+    @field:Schema(description = "The number of slice tasks waiting for a worker")
+    val queuedTasks: Int,
+
+    @field:Schema(description = "The number of slice tasks currently running")
+    val runningTasks: Int,
+
+    @field:Schema(description = "The number of slice tasks completed since the start of the application")
+    val completedTasks: Long
+)
@@ -0,0 +1,106 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.computations.generic
+
+import com.booleworks.logicng.formulas.Formula
+import com.booleworks.logicng.formulas.FormulaFactory
+import com.booleworks.logicng.formulas.Variable
+import com.booleworks.logicng.solvers.SatSolver
+import com.booleworks.logicng.solvers.sat.SatSolverConfig
+import com.booleworks.prl.transpiler.ModelTranslation
+import com.booleworks.prl.transpiler.TranspilationInfo
+import java.util.IdentityHashMap
+
+private const val SOLVER_SELECTOR_PREFIX = "@SSL"
+private const val MIN_GUARDED_FORMULAS = 10_000
+
+/**
+ * A SAT solver which is shared by all slices computed on the same worker.
+ *
+ * The formulas which are common to all slice translations of a model
+ * translation are added only once.  The remaining formulas of a slice are
+ * added the first time the slice is solved, guarded by a selector variable
+ * of the slice.  A slice is then solved by assuming only its selector.  The
+ * selectors of all other slices are left free: their guarded formulas can
+ * always be satisfied by setting the selector to false, so they do not
+ * restrict the current slice.  Consequently, models of the solver have to be
+ * projected to the variables of the slice.
+ *
+ * Guarded formulas are never removed from the solver, so the solver is
+ * rebuilt once the number of guarded formulas exceeds the number of common
+ * formulas.
+ *
+ * This solver must only be used for slice translations of the model
+ * translation the common formulas were computed for.  It is not thread-safe.
+ *
+ * @param f the formula factory of the worker
+ * @param config the configuration of the underlying SAT solver
+ * @param commonFormulas the formulas common to all slice translations
+ */
+class IncrementalSliceSolver(
+    private val f: FormulaFactory,
+    private val config: SatSolverConfig,
+    private val commonFormulas: Set<Formula>
+) {
+    private val selectors = IdentityHashMap<TranspilationInfo, Variable>()
+    private var numGuardedFormulas = 0
+    private var selectorCount = 0
+
+    /**
+     * The current underlying SAT solver.  It may change on each call of
+     * [select], so it must always be read after the slice was selected.
+     */
+    var solver: SatSolver = newSolver()
+        private set
+
+    /**
+     * Prepares the solver for the slice with the given translation and
+     * returns the selector which has to be assumed in each SAT call for
+     * this slice.
+     */
+    fun select(info: TranspilationInfo): Variable {
+        selectors[info]?.let { return it }
+        val sliceFormulas = info.propositions.map { it.formula }.filterNot { it in commonFormulas }
+        if (numGuardedFormulas > 0 && numGuardedFormulas + sliceFormulas.size > maxGuardedFormulas()) {
+            solver = newSolver()
+            selectors.clear()
+            numGuardedFormulas = 0
+        }
+        val selector = f.variable("$SOLVER_SELECTOR_PREFIX${selectorCount++}")
+        sliceFormulas.forEach { solver.add(f.implication(selector, it)) }
+        numGuardedFormulas += sliceFormulas.size
+        selectors[info] = selector
+        return selector
+    }
+
+    /**
+     * Returns a new SAT call for the slice with the given translation.
+     * Further formulas can be added to the call like on a usual SAT call.
+     */
+    fun satCall(info: TranspilationInfo) = select(info).let { solver.satCall().addFormulas(it) }
+
+    /**
+     * Returns whether the slice with the given translation is satisfiable.
+     */
+    fun sat(info: TranspilationInfo) = satCall(info).sat().result == true
+
+    private fun maxGuardedFormulas() = maxOf(commonFormulas.size, MIN_GUARDED_FORMULAS)
+
+    private fun newSolver() = SatSolver.newSolver(f, config).apply { commonFormulas.forEach { add(it) } }
+
+    companion object {
+        /**
+         * Computes the formulas which are contained in each slice translation
+         * of the given model translation.
+         */
+        fun commonFormulas(translation: ModelTranslation): Set<Formula> {
+            if (translation.computations.isEmpty()) return setOf()
+            val common = LinkedHashSet(translation.computations[0].info.propositions.map { it.formula })
+            translation.computations.drop(1).forEach { comp ->
+                common.retainAll(comp.info.propositions.mapTo(HashSet()) { it.formula })
+            }
+            return common
+        }
+    }
+}
@@ -17,7 +17,13 @@ data class FeatureModelDO(
     @JsonIgnore
     val size = features.size
 
-    override fun compareTo(other: FeatureModelDO) = toString().compareTo(other.toString())
+    /**
+     * Compares the models lexicographically by their features.
+     */
+    override fun compareTo(other: FeatureModelDO): Int {
+        features.zip(other.features).forEach { (f1, f2) -> f1.compareTo(f2).let { if (it != 0) return it } }
+        return size.compareTo(other.size)
+    }
 
     override fun toString() = features.joinToString(", ") {
         when (it.type) {
@@ -0,0 +1,95 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.computations.generic
+
+import com.booleworks.boolerules.computations.ComputationType
+import com.booleworks.boolerules.persistence.Persistence
+import io.github.smiley4.ktorswaggerui.dsl.get
+import io.ktor.http.ContentType
+import io.ktor.http.HttpStatusCode
+import io.ktor.server.application.call
+import io.ktor.server.response.respond
+import io.ktor.server.routing.Route
+import io.ktor.util.logging.error
+import io.swagger.v3.oas.annotations.media.Schema
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import kotlin.time.measureTime
+
+private val logger: Logger = LoggerFactory.getLogger("ResultPageApi")
+
+private const val DEFAULT_PAGE_SIZE = 1000
+private const val MAX_PAGE_SIZE = 10_000
+
+/**
+ * A page of the results of a list computation.
+ *
+ * @param MAIN the type of the main result of this computation
+ * @param ELEMENT the type of the list elements
+ */
+@Schema(description = "A page of the results of a list computation")
+data class ListComputationPage<MAIN, ELEMENT>(
+    val status: ComputationStatus,
+
+    @field:Schema(description = "The results for the elements of this page, ordered by their element ID")
+    val results: List<ComputationElementResult<MAIN, ELEMENT>>,
+
+    @field:Schema(description = "The cursor to fetch the next page or null if there are no more elements")
+    val nextCursor: Int?
+)
+
+fun <MAIN, ELEMENT> Route.resultPageRoute(computationType: ComputationType<*, *, MAIN, *, ELEMENT>) {
+    get(computationType.path + "/page/{uuid}", {
+        summary = "Get a page of the results for a ${computationType.path} computation"
+        description = "Returns the results for a range of elements of a finished computation.  " +
+                "The first page is returned without a cursor, each further page with the cursor of its predecessor"
+        tags = listOf(computationType.docs.computation)
+        request {
+            pathParameter<String>("uuid") {
+                required = true
+                description = "The UUID of the job."
+            }
+            queryParameter<Int>("cursor") {
+                description = "The cursor returned with the previous page"
+            }
+            queryParameter<Int>("limit") {
+                description = "The maximal number of elements of the page (default $DEFAULT_PAGE_SIZE, " +
+                        "at most $MAX_PAGE_SIZE)"
+            }
+        }
+        response {
+            HttpStatusCode.OK to {
+                description = "Successful Request"
+                body<ListComputationPage<MAIN, ELEMENT>> {
+                    mediaType(ContentType.Application.Json)
+                    description = "The page of results"
+                }
+            }
+            HttpStatusCode.NotFound to { description = "Job ID not found or job not finished" }
+            "5XX" to { description = "Server-side problem" }
+        }
+    }) {
+        val uuid = call.parameters["uuid"]!!
+        val cursor = (call.request.queryParameters["cursor"]?.toIntOrNull() ?: 0)
+            .coerceIn(0, Int.MAX_VALUE - MAX_PAGE_SIZE)
+        val limit = (call.request.queryParameters["limit"]?.toIntOrNull() ?: DEFAULT_PAGE_SIZE)
+            .coerceIn(1, MAX_PAGE_SIZE)
+        measureTime {
+            try {
+                val status = Persistence.computation.fetchStatus(uuid).getOrElse {
+                    call.respond(HttpStatusCode.NotFound, "No result for job ID $uuid")
+                    return@measureTime
+                }
+                val results = Persistence.computation.fetchListResultPage(uuid, cursor, limit, computationType)
+                val nextCursor = if (results.size < limit) null else results.last().element.id
+                call.respond(HttpStatusCode.OK, ListComputationPage(status, results, nextCursor))
+            } catch (e: Exception) {
+                logger.error(e)
+                call.respond(HttpStatusCode.InternalServerError, e.message!!)
+            }
+        }.let {
+            logger.info("Returned result page for job $uuid after element $cursor (${it})")
+        }
+    }
+}
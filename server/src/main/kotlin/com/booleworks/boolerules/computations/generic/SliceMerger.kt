@@ -7,34 +7,53 @@ import com.booleworks.boolerules.computations.NoComputationDetail
 import com.booleworks.boolerules.rulefile.PropertyRangeDO
 import com.booleworks.boolerules.rulefile.PropertyTypeDO
 import com.booleworks.boolerules.rulefile.SlicingPropertyDO
+import com.booleworks.prl.model.AnyProperty
 import com.booleworks.prl.model.slices.Slice
 import java.time.LocalDate
 
-private data class SliceWithDetails<DETAIL : ComputationDetail>(
-    val slice: SliceDO,
-    val details: List<SplitComputationDetail<DETAIL>>
-)
-
 internal data class MergeResult<MAIN, DETAIL : ComputationDetail>(
     val merge: List<SliceComputationResult<MAIN>>,
     val detailMap: Map<Int, List<SplitComputationDetail<DETAIL>>>
 )
 
+/**
+ * Merges the results of all slices with the same main result.  The split
+ * properties of the request are merged one after another: slices which only
+ * differ in the current split property are merged into one slice whose
+ * property contains all their values (discrete properties) or into one slice
+ * per window of consecutive values (continuous properties).
+ *
+ * Slices are not merged on their [SliceDO]s but on their coordinates: each
+ * (merged) property value is stored once in a [ValueTable] and a slice is an
+ * array of indices into these tables.  Each split property is processed in a
+ * single pass over all slices, so the merge scales linearly in the number of
+ * slices (plus sorting the slices once per continuous property).
+ */
 internal fun <REQUEST : ComputationRequest, MAIN, DETAIL : ComputationDetail> mergeMainResults(
     request: REQUEST,
     result: Map<Slice, InternalResult<MAIN, DETAIL>>
 ): MergeResult<MAIN, DETAIL> {
-    val mainMap: Map<MAIN, MutableList<SliceWithDetails<DETAIL>>> = mkMainMap(request, result)
-    val splitProperties = request.sliceSelection.filter { it.sliceType == SliceTypeDO.SPLIT }
-    val sortedContinuousPropertyValues: Map<String, PropertyRangeDO> =
-        collectContinuousPropertyValues(result.keys, request.sliceSelection)
+    if (result.isEmpty()) return MergeResult(listOf(), mapOf())
+    val tables = result.keys.first().allProperties().map { ValueTable(it.name, it.propertyType.toDO()) }
+    val positions = tables.withIndex().associate { it.value.name to it.index }
+    val mainMap = mkMainMap(request, result, tables, positions)
+    val splitProperties = request.sliceSelection.filter { it.sliceType == SliceTypeDO.SPLIT }.map {
+        SplitAxis(positions[it.property] ?: error("Unknown split property ${it.property}"), it.range.isContinuous())
+    }
+    val axes = splitProperties.filter { it.isContinuous }
+        .associate { it.position to ContinuousAxis(tables[it.position]) }
+    // merged properties are moved to the end of a slice in the order of the request
+    val order = tables.indices.filter { p -> splitProperties.none { it.position == p } } +
+            splitProperties.map { it.position }
+
     var id = 1
     val merge = mutableListOf<SliceComputationResult<MAIN>>()
     val detailMap = mutableMapOf<Int, List<SplitComputationDetail<DETAIL>>>()
-    mainMap.forEach { (main, splitResult) ->
-        val res = mergeResults(splitResult, splitProperties, sortedContinuousPropertyValues)
-        merge.add(SliceComputationResult(id, main, res.map { it.slice }))
-        detailMap[id] = res.flatMap { it.details }
+    mainMap.forEach { (main, entries) ->
+        var currentMerge: List<MergeEntry<DETAIL>> = entries
+        splitProperties.forEach { currentMerge = mergeProperty(currentMerge, it.position, tables, axes[it.position]) }
+        merge.add(SliceComputationResult(id, main, currentMerge.map { entry -> entry.toDO(tables, order) }))
+        detailMap[id] = currentMerge.flatMap { it.details }
         id++
     }
     return MergeResult(merge, detailMap)
@@ -42,173 +61,191 @@ internal fun <REQUEST : ComputationRequest, MAIN, DETAIL : ComputationDetail> me
 
 private fun <REQUEST : ComputationRequest, MAIN, DETAIL : ComputationDetail> mkMainMap(
     request: REQUEST,
-    result: Map<Slice, InternalResult<MAIN, DETAIL>>
-): MutableMap<MAIN, MutableList<SliceWithDetails<DETAIL>>> {
-    val mainMap = mutableMapOf<MAIN, MutableList<SliceWithDetails<DETAIL>>>()
+    result: Map<Slice, InternalResult<MAIN, DETAIL>>,
+    tables: List<ValueTable>,
+    positions: Map<String, Int>
+): Map<MAIN, MutableList<MergeEntry<DETAIL>>> {
+    val mainMap = mutableMapOf<MAIN, MutableList<MergeEntry<DETAIL>>>()
     val isEmptyDetail = result.any { (_, internalResult) -> internalResult.extractDetails() is NoComputationDetail }
+    val splitProperties = request.splitProperties()
     for ((slice, internalResult) in result) {
         val details = if (!isEmptyDetail) {
-            listOf(SplitComputationDetail(internalResult, request.splitProperties()))
+            mutableListOf(SplitComputationDetail(internalResult, splitProperties))
         } else {
-            listOf()
+            mutableListOf()
         }
-        mainMap.computeIfAbsent(internalResult.extractMainResult()) { mutableListOf() }
-            .add(SliceWithDetails(slice.toDO(), details))
+        val cells = IntArray(tables.size)
+        slice.allProperties().forEach {
+            val position = positions[it.name] ?: error("Unexpected slicing property ${it.name}")
+            cells[position] = tables[position].intern(it)
+        }
+        mainMap.computeIfAbsent(internalResult.extractMainResult()) { mutableListOf() }.add(MergeEntry(cells, details))
     }
     return mainMap
 }
 
-private fun collectContinuousPropertyValues(
-    slices: Set<Slice>,
-    sliceSelection: List<PropertySelectionDO>
-): Map<String, PropertyRangeDO> =
-    sliceSelection
-        .filter { it.sliceType == SliceTypeDO.SPLIT && it.range.isContinuous() }
-        .associate { propertySelection ->
-            propertySelection.property to
-                    slices.map { slice -> slice.toDO().content.first { it.name == propertySelection.property } }
-        }
-        .mapValues { mergeToDiscreteProperties(it.value).range }
-
-private fun <DETAIL : ComputationDetail> mergeResults(
-    splitResults: List<SliceWithDetails<DETAIL>>,
-    splitProperties: List<PropertySelectionDO>,
-    sortedContinuousPropertyValues: Map<String, PropertyRangeDO>
-): List<SliceWithDetails<DETAIL>> {
-    var currentMerge: List<SliceWithDetails<DETAIL>> = splitResults
-    for (splitProperty in splitProperties) {
-        val groupedProperties: MutableMap<
-                Set<SlicingPropertyDO>,
-                MutableList<Pair<SlicingPropertyDO, List<SplitComputationDetail<DETAIL>>>>> = mutableMapOf()
-        for (splitResult in currentMerge) {
-            val key: Set<SlicingPropertyDO> = splitResult.slice.content
-                .filterNot { it.name == splitProperty.property }.toSet()
-            groupedProperties.computeIfAbsent(key) { mutableListOf() }
-                .add(Pair(splitResult.slice.content.first { it.name == splitProperty.property }, splitResult.details))
-        }
-        val newMerge: MutableList<SliceWithDetails<DETAIL>> = mutableListOf()
-        for ((keyProperties, propertiesToMerge) in groupedProperties) {
-            val mergedProperties: List<Pair<SlicingPropertyDO, List<SplitComputationDetail<DETAIL>>>> =
-                mergeProperties(
-                    propertiesToMerge, splitProperty.range.isContinuous(),
-                    sortedContinuousPropertyValues[splitProperty.property]
-                )
-            for (mergedProperty in mergedProperties) {
-                newMerge.add(SliceWithDetails(SliceDO(keyProperties.toList() + mergedProperty.first), mergedProperty.second))
+/**
+ * Merges the given entries on the split property at the given position.
+ * The order of the result is the same as in the former implementation:
+ * entries are grouped by their other properties in the order of their first
+ * occurrence, the windows of a continuous property are sorted by value.
+ */
+private fun <DETAIL : ComputationDetail> mergeProperty(
+    entries: List<MergeEntry<DETAIL>>,
+    position: Int,
+    tables: List<ValueTable>,
+    axis: ContinuousAxis?
+): List<MergeEntry<DETAIL>> {
+    val groups = LinkedHashMap<CellKey, MutableList<MergeEntry<DETAIL>>>()
+    val keys = entries.map { entry -> CellKey(entry.cells, position).also { groups.putIfAbsent(it, mutableListOf()) } }
+    if (axis == null) {
+        entries.forEachIndexed { i, entry -> groups[keys[i]]!!.add(entry) }
+    } else {
+        val sorted = entries.indices.sortedBy { axis.rank(entries[it].cells[position]) }
+        sorted.forEach { groups[keys[it]]!!.add(entries[it]) }
+    }
+    val table = tables[position]
+    val result = ArrayList<MergeEntry<DETAIL>>(groups.size)
+    for (group in groups.values) {
+        if (axis == null) {
+            val range = table.union(group.map { it.cells[position] })
+            result.add(group[0].with(position, table.intern(range), group))
+        } else {
+            var start = 0
+            for (i in 1..group.size) {
+                val gap = i == group.size ||
+                        axis.rank(group[i].cells[position]) != axis.rank(group[i - 1].cells[position]) + 1
+                if (gap) {
+                    val window = group.subList(start, i)
+                    val range = axis.range(window.first().cells[position], window.last().cells[position])
+                    result.add(window[0].with(position, table.intern(range), window))
+                    start = i
+                }
             }
         }
-        currentMerge = newMerge
     }
-    return currentMerge
+    return result
 }
 
-private fun <DETAIL : ComputationDetail> mergeProperties(
-    propertiesToMerge: List<Pair<SlicingPropertyDO, List<SplitComputationDetail<DETAIL>>>>,
-    isContinuous: Boolean,
-    rangeOfAllValuesOfContinuousProperty: PropertyRangeDO?
-): List<Pair<SlicingPropertyDO, List<SplitComputationDetail<DETAIL>>>> {
-    return if (isContinuous) {
-        mergeToContinuousProperties(propertiesToMerge, rangeOfAllValuesOfContinuousProperty!!)
-    } else {
-        listOf(mergeToDiscreteProperties(propertiesToMerge.map { it.first }) to propertiesToMerge.flatMap { it.second })
+/**
+ * A (partially merged) slice: for each slicing property the index of its
+ * value in the value table of the property together with all details of the
+ * merged slices.
+ */
+private class MergeEntry<DETAIL : ComputationDetail>(
+    val cells: IntArray,
+    val details: MutableList<SplitComputationDetail<DETAIL>>
+) {
+    fun with(position: Int, value: Int, merged: List<MergeEntry<DETAIL>>): MergeEntry<DETAIL> {
+        val newCells = cells.copyOf().also { it[position] = value }
+        val newDetails = if (merged.size == 1) {
+            details
+        } else {
+            ArrayList<SplitComputationDetail<DETAIL>>(merged.sumOf { it.details.size }).apply {
+                merged.forEach { addAll(it.details) }
+            }
+        }
+        return MergeEntry(newCells, newDetails)
     }
+
+    fun toDO(tables: List<ValueTable>, order: List<Int>) =
+        SliceDO(order.map { SlicingPropertyDO(tables[it].name, tables[it].type, tables[it].values[cells[it]]) })
 }
 
-private fun mergeToDiscreteProperties(propertiesToMerge: List<SlicingPropertyDO>): SlicingPropertyDO =
-    propertiesToMerge.reduce { v1, v2 -> combineDiscrete(v1, v2) }
+/**
+ * The coordinates of a slice without the property at the given position.
+ */
+private class CellKey(cells: IntArray, position: Int) {
+    private val cells = cells.copyOf().also { it[position] = -1 }
+    private val hashCode = this.cells.contentHashCode()
 
-private fun combineDiscrete(v1: SlicingPropertyDO, v2: SlicingPropertyDO): SlicingPropertyDO = when {
-    v1.range.booleanValues != null && v2.range.booleanValues != null ->
-        SlicingPropertyDO(
-            v1.name, v1.type,
-            PropertyRangeDO(v1.range.booleanValues as Set<Boolean> + v2.range.booleanValues as Set<Boolean>)
-        )
+    override fun hashCode() = hashCode
+    override fun equals(other: Any?) =
+        other is CellKey && hashCode == other.hashCode && cells.contentEquals(other.cells)
+}
 
-    v1.range.intValues != null && v2.range.intValues != null         ->
-        SlicingPropertyDO(
-            v1.name, v1.type,
-            PropertyRangeDO(intValues = v1.range.intValues as Set<Int> + v2.range.intValues as Set<Int>)
-        )
+private data class SplitAxis(val position: Int, val isContinuous: Boolean)
 
-    v1.range.enumValues != null && v2.range.enumValues != null       ->
-        SlicingPropertyDO(
-            v1.name, v1.type,
-            PropertyRangeDO(enumValues = v1.range.enumValues as Set<String> + v2.range.enumValues as Set<String>)
-        )
+/**
+ * All distinct (merged) values of a single slicing property.  Equal values
+ * are stored only once, so two slices have the same value iff they have the
+ * same index.
+ */
+private class ValueTable(val name: String, val type: PropertyTypeDO) {
+    val values = mutableListOf<PropertyRangeDO>()
+    private val indices = mutableMapOf<PropertyRangeDO, Int>()
+    private val propertyIndices = mutableMapOf<AnyProperty, Int>()
 
-    v1.range.dateValues != null && v2.range.dateValues != null       ->
-        SlicingPropertyDO(v1.name, v1.type, PropertyRangeDO(dateValues = v1.range.dateValues as Set<LocalDate> + v2.range.dateValues as Set<LocalDate>))
+    fun intern(property: AnyProperty) = propertyIndices.getOrPut(property) { intern(property.range.toDO()) }
 
-    else                                                             -> error("Unexpected property ranges")
-}
+    fun intern(range: PropertyRangeDO) = indices.getOrPut(range) { values.add(range); values.size - 1 }
 
-private fun <DETAIL : ComputationDetail> mergeToContinuousProperties(
-    propertiesToMerge: List<Pair<SlicingPropertyDO, List<SplitComputationDetail<DETAIL>>>>,
-    rangeOfAllValuesOfContinuousProperty: PropertyRangeDO
-): List<Pair<SlicingPropertyDO, List<SplitComputationDetail<DETAIL>>>> {
-    val rangeToSplitDetails = propertiesToMerge.associate { it.first.range to it.second }
-    val propertyName = propertiesToMerge[0].first.name
-    val propertyType = propertiesToMerge[0].first.type
-    return when {
-        propertiesToMerge.all { it.first.range.intValues != null } -> mergeIntProperties(
-            rangeToSplitDetails.mapKeys { it.key.intValues!!.first() },
-            rangeOfAllValuesOfContinuousProperty.intValues!!,
-            propertyName,
-            propertyType,
-            { it - 1 },
-            { min, max -> PropertyRangeDO(intMin = min, intMax = max) }
-        )
-
-        propertiesToMerge.all { it.first.range.dateValues != null } -> mergeIntProperties(
-            rangeToSplitDetails.mapKeys { it.key.dateValues!!.first() },
-            rangeOfAllValuesOfContinuousProperty.dateValues!!,
-            propertyName,
-            propertyType,
-            { it.minusDays(1) },
-            { min, max -> PropertyRangeDO(dateMin = min, dateMax = max) }
-        )
+    fun union(indices: List<Int>): PropertyRangeDO {
+        val ranges = indices.map { values[it] }
+        return when {
+            ranges.size == 1 -> ranges[0]
 
-        else -> error("Unexpected property ranges")
+            ranges.all { it.booleanValues != null } ->
+                PropertyRangeDO(booleanValues = ranges.flatMapTo(LinkedHashSet()) { it.booleanValues!! })
+
+            ranges.all { it.intValues != null } ->
+                PropertyRangeDO(intValues = ranges.flatMapTo(LinkedHashSet()) { it.intValues!! })
+
+            ranges.all { it.enumValues != null } ->
+                PropertyRangeDO(enumValues = ranges.flatMapTo(LinkedHashSet()) { it.enumValues!! })
+
+            ranges.all { it.dateValues != null } ->
+                PropertyRangeDO(dateValues = ranges.flatMapTo(LinkedHashSet()) { it.dateValues!! })
+
+            else -> error("Unexpected property ranges")
+        }
     }
 }
 
-private fun <V : Comparable<V>, DETAIL : ComputationDetail> mergeIntProperties(
-    valuesToSplitDetails: Map<V, List<SplitComputationDetail<DETAIL>>>,
-    allOccurringValues: Set<V>,
-    propertyName: String,
-    propertyType: PropertyTypeDO,
-    previousValue: (V) -> V,
-    propertyRangeGenerator: (V, V) -> PropertyRangeDO
-): List<Pair<SlicingPropertyDO, List<SplitComputationDetail<DETAIL>>>> {
-    val allOccurringValuesSorted = allOccurringValues.toSortedSet().toList()
-    val valueToIndex = allOccurringValuesSorted.mapIndexed { i, value -> value to i }.toMap()
-
-    val windows = mutableListOf<Triple<V, V, List<SplitComputationDetail<DETAIL>>>>()
-    val currentDetails: MutableList<SplitComputationDetail<DETAIL>> = mutableListOf()
-    var rangeStart: V? = null
-    var previousIndex: Int? = null
-    for ((value, splitDetails) in valuesToSplitDetails.toSortedMap()) {
-        val index = valueToIndex[value]!!
-        if (previousIndex == null) {
-            rangeStart = value
-            currentDetails.addAll(splitDetails)
-        } else if (index == previousIndex + 1) {
-            currentDetails.addAll(splitDetails)
-        } else {
-            val rangeEnd = previousValue(allOccurringValuesSorted[previousIndex + 1])
-            windows.add(Triple(rangeStart!!, rangeEnd, currentDetails))
-            currentDetails.clear()
-            rangeStart = value
-        }
-        previousIndex = index
+/**
+ * All values of a continuous int or date property occurring in the slices,
+ * sorted once.  A window of consecutive values ranges from its first value
+ * to the day (or number) before the next occurring value, the last window
+ * ends at the last occurring value.
+ */
+private class ContinuousAxis(table: ValueTable) {
+    private val isDate = when (table.type) {
+        PropertyTypeDO.INT -> false
+        PropertyTypeDO.DATE -> true
+        else -> error("Unexpected property ranges")
     }
-    val rangeEnd = if (previousIndex!! == valueToIndex.values.last()) {
-        allOccurringValuesSorted[previousIndex]
-    } else {
-        previousValue(allOccurringValuesSorted[previousIndex + 1])
+    private val ranks: IntArray
+    private val sortedValues: List<Comparable<*>>
+
+    init {
+        val values = table.values.map { if (isDate) it.dateValues!!.first() else it.intValues!!.first() }
+        val sortedIndices = values.indices.sortedWith { i, j -> compare(values[i], values[j]) }
+        ranks = IntArray(values.size).also { ranks -> sortedIndices.forEachIndexed { rank, i -> ranks[i] = rank } }
+        sortedValues = sortedIndices.map { values[it] }
     }
-    windows.add(Triple(rangeStart!!, rangeEnd, currentDetails))
-    return windows.map {
-        SlicingPropertyDO(propertyName, propertyType, propertyRangeGenerator(it.first, it.second)) to it.third
+
+    fun rank(index: Int) = ranks[index]
+
+    fun range(startIndex: Int, endIndex: Int): PropertyRangeDO {
+        val endRank = ranks[endIndex]
+        val start = sortedValues[ranks[startIndex]]
+        return if (isDate) {
+            val end = if (endRank == sortedValues.size - 1) {
+                sortedValues[endRank] as LocalDate
+            } else {
+                (sortedValues[endRank + 1] as LocalDate).minusDays(1)
+            }
+            PropertyRangeDO(dateMin = start as LocalDate, dateMax = end)
+        } else {
+            val end = if (endRank == sortedValues.size - 1) {
+                sortedValues[endRank] as Int
+            } else {
+                (sortedValues[endRank + 1] as Int) - 1
+            }
+            PropertyRangeDO(intMin = start as Int, intMax = end)
+        }
     }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun compare(v1: Comparable<*>, v2: Comparable<*>) = (v1 as Comparable<Any>).compareTo(v2)
 }
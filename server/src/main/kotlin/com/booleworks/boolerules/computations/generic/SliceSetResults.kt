@@ -0,0 +1,80 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.computations.generic
+
+import com.booleworks.prl.model.slices.Slice
+import com.booleworks.prl.transpiler.ModelTranslation
+import com.booleworks.prl.transpiler.SliceTranslation
+import java.util.IdentityHashMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * The results of the slice computations of a single request.
+ *
+ * All slices of a slice set have the same rules and feature definitions, so
+ * the result of a slice only depends on the slice sets of its translations.
+ * Therefore, each distinct combination of slice sets is computed only once
+ * and all other slices with the same combination get a copy of this result.
+ * The warnings of the computation are stored with the result and re-issued
+ * for each slice which gets a copy.
+ *
+ * @param INTRES the type of the internal result
+ * @param modelTranslation the model translation of the request
+ */
+internal class SliceSetResults<INTRES>(modelTranslation: ModelTranslation) {
+    private val indices = IdentityHashMap<SliceTranslation, Int>().apply {
+        modelTranslation.computations.forEachIndexed { index, translation -> put(translation, index) }
+    }
+    private val results = ConcurrentHashMap<List<Int>, Lazy<SliceSetResult<INTRES>>>()
+    private val numberOfRequests = AtomicInteger()
+
+    /**
+     * Returns the result for the given slice which is translated by the
+     * given slice translations.  If there is no result for the slice sets
+     * of the translations yet, it is computed with the given function,
+     * otherwise the existing result is copied for the slice and the warnings
+     * of its computation are added to the status again.  In these warnings,
+     * the computed slice is replaced by the given slice.  Concurrent
+     * requests for the same slice sets wait for the first computation.
+     * @param translations the slice translations of the slice
+     * @param slice the slice
+     * @param status the status of the request
+     * @param copy the function copying a result for another slice
+     * @param compute the function computing the result for the slice with
+     * the given status
+     * @return the result for the slice
+     */
+    fun getOrCompute(
+        translations: List<SliceTranslation>,
+        slice: Slice,
+        status: ComputationStatusBuilder,
+        copy: (INTRES, Slice) -> INTRES,
+        compute: (ComputationStatusBuilder) -> INTRES
+    ): INTRES {
+        numberOfRequests.incrementAndGet()
+        val key = translations.map { indices[it]!! }.sorted()
+        val stored = results.computeIfAbsent(key) {
+            lazy {
+                val sliceStatus = status.forSlice()
+                SliceSetResult(slice, compute(sliceStatus), sliceStatus.warnings())
+            }
+        }.value
+        if (stored.slice !== slice) {
+            val computedSlice = stored.slice.toString()
+            stored.warnings.forEach { status.addWarning(it.replace(computedSlice, slice.toString())) }
+        }
+        // the stored result is never handed out, since results are modified
+        // when they are merged
+        return copy(stored.result, slice)
+    }
+
+    /**
+     * Returns the number of results which were copied from a result of
+     * another slice instead of being computed.
+     */
+    fun numberOfReusedResults() = numberOfRequests.get() - results.size
+
+    private class SliceSetResult<INTRES>(val slice: Slice, val result: INTRES, val warnings: List<String>)
+}
@@ -65,6 +65,8 @@ internal object MinMaxConfigComputation :
             if (newResult.size > existingResult.size) newResult else existingResult
         }
 
+    override fun copyForSlice(result: MinMaxInternalResult, slice: Slice) = result.copy(slice = slice)
+
     override fun computeForSlice(
         request: MinMaxConfigRequest,
         slice: Slice,
@@ -0,0 +1,190 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.computations.modelcount
+
+import com.booleworks.logicng.formulas.Literal
+import com.booleworks.logicng.formulas.Variable
+import com.booleworks.logicng.solvers.SatSolver
+import java.math.BigDecimal
+import java.math.BigInteger
+import java.math.RoundingMode
+import kotlin.math.ceil
+import kotlin.math.log2
+import kotlin.math.pow
+import kotlin.random.Random
+import kotlin.time.TimeMark
+
+internal const val DEFAULT_TOLERANCE = 0.1
+internal const val DEFAULT_CONFIDENCE = 0.9
+
+private const val SEL_XOR = "@SEL_XOR_"
+private const val XOR_AUX = "@XOR_AUX_"
+
+/**
+ * The result of an approximate model count.  The model count lies within
+ * the lower and the upper bound with the given confidence.  If the model
+ * count is exact, both bounds are equal to the estimate and the confidence
+ * is 1.
+ */
+internal data class ApproximateCount(
+    val estimate: BigInteger,
+    val lowerBound: BigInteger,
+    val upperBound: BigInteger,
+    val confidence: Double
+) {
+    val isExact get() = confidence == 1.0 && lowerBound == upperBound
+}
+
+/**
+ * A hashing-based approximate model counter after ApproxMC by Chakraborty,
+ * Meel, and Vardi.
+ *
+ * The models projected to the sampling variables are partitioned into cells
+ * by random XOR constraints.  The number of models in a cell which is small
+ * enough to be enumerated times the number of cells is an estimate of the
+ * model count.  The median of the estimates of several rounds lies within the
+ * tolerance ε of the model count with the confidence 1 - δ.
+ *
+ * Each XOR constraint is added to the solver only once and is guarded by a
+ * selector, so that a round enables a prefix of its constraints by
+ * assumptions.  Since the number of models in a cell can only decrease with
+ * more constraints, the number of constraints is found by a galloping search.
+ * The XOR constraints of a round and the blocking clauses of each bounded
+ * enumeration are removed by restoring the state of the solver afterward,
+ * so the solver does not grow over the rounds.
+ *
+ * If the time budget is exhausted, the median of the rounds computed so far
+ * is returned together with the (lower) confidence these rounds guarantee.
+ */
+internal class ApproximateModelCounter(
+    private val solver: SatSolver,
+    private val samplingVars: List<Variable>,
+    private val tolerance: Double,
+    private val confidence: Double,
+    private val deadline: TimeMark?,
+    private val random: Random
+) {
+    private val f = solver.factory
+    private val threshold =
+        ceil(1 + 9.84 * (1 + tolerance / (1 + tolerance)) * (1 + 1 / tolerance).pow(2)).toInt()
+    private val rounds = ceil(17 * log2(3 / (1 - confidence))).toInt()
+    private var counter = 0
+
+    /**
+     * Returns the approximate count or `null` if the time budget was
+     * exhausted before the first round was finished.
+     */
+    fun count(): ApproximateCount? {
+        val models = boundedCount(listOf()) ?: return null
+        if (models < threshold) {
+            val count = models.toBigInteger()
+            return ApproximateCount(count, count, count, 1.0)
+        }
+        val estimates = mutableListOf<BigInteger>()
+        var finishedRounds = 0
+        while (finishedRounds < rounds) {
+            val estimate = round() ?: break
+            finishedRounds++
+            if (estimate.signum() > 0) estimates.add(estimate)
+        }
+        if (estimates.isEmpty()) {
+            return null
+        }
+        val median = estimates.sorted()[estimates.size / 2]
+        val achievedConfidence =
+            if (finishedRounds == rounds) confidence else (1 - 3 / 2.0.pow(finishedRounds / 17.0)).coerceAtLeast(0.0)
+        val factor = BigDecimal.valueOf(1 + tolerance)
+        val lowerBound = BigDecimal(median).divide(factor, 0, RoundingMode.FLOOR).toBigInteger()
+        val upperBound = BigDecimal(median).multiply(factor).setScale(0, RoundingMode.CEILING).toBigInteger()
+        return ApproximateCount(median, lowerBound, upperBound, achievedConfidence)
+    }
+
+    /**
+     * Computes the estimate of a single round with fresh XOR constraints.
+     * Returns `null` if the time budget is exhausted and zero if even all
+     * constraints leave a cell which is too large.
+     */
+    private fun round(): BigInteger? {
+        val state = solver.saveState()
+        try {
+            val selectors = mutableListOf<Variable>()
+            val cellSizes = HashMap<Int, Int>()
+            fun cellSize(m: Int): Int? {
+                cellSizes[m]?.let { return it }
+                while (selectors.size < m) selectors.add(addXorConstraint())
+                return boundedCount(selectors.subList(0, m))?.also { cellSizes[m] = it }
+            }
+
+            var lower = 0
+            var upper = 1
+            while (true) {
+                val size = cellSize(upper) ?: return null
+                if (size < threshold) break
+                if (upper == samplingVars.size) return BigInteger.ZERO
+                lower = upper
+                upper = minOf(2 * upper, samplingVars.size)
+            }
+            while (upper - lower > 1) {
+                val middle = (lower + upper) / 2
+                val size = cellSize(middle) ?: return null
+                if (size < threshold) upper = middle else lower = middle
+            }
+            return cellSizes[upper]!!.toBigInteger().shiftLeft(upper)
+        } finally {
+            solver.loadState(state)
+        }
+    }
+
+    /**
+     * Adds a random XOR constraint over the sampling variables which is
+     * enabled by the returned selector.  The XOR is encoded by a chain of
+     * auxiliary variables for the parity of its prefixes.
+     */
+    private fun addXorConstraint(): Variable {
+        val selector = f.variable(SEL_XOR + counter++)
+        val variables = samplingVars.filter { random.nextBoolean() }
+        var parity: Literal? = null
+        variables.forEach { variable ->
+            parity = parity?.let { previous ->
+                f.variable(XOR_AUX + counter++).also {
+                    solver.add(f.or(it.negate(f), previous, variable))
+                    solver.add(f.or(it.negate(f), previous.negate(f), variable.negate(f)))
+                    solver.add(f.or(it, previous.negate(f), variable))
+                    solver.add(f.or(it, previous, variable.negate(f)))
+                }
+            } ?: variable
+        }
+        val expected = random.nextBoolean()
+        val result = parity
+        when {
+            result == null && expected -> solver.add(selector.negate(f))
+            result != null -> solver.add(f.or(selector.negate(f), if (expected) result else result.negate(f)))
+        }
+        return selector
+    }
+
+    /**
+     * Returns the number of models projected to the sampling variables under
+     * the given selectors, but at most the threshold.  Returns `null` if the
+     * time budget is exhausted.  The blocking clauses of the enumeration are
+     * removed afterward.
+     */
+    private fun boundedCount(selectors: List<Variable>): Int? {
+        val state = solver.saveState()
+        var count = 0
+        try {
+            while (count < threshold) {
+                if (deadline?.hasPassedNow() == true) return null
+                val model = solver.satCall().addFormulas(selectors).solve().use { satCall ->
+                    if (satCall.satResult.result == true) satCall.model(samplingVars) else null
+                } ?: break
+                solver.add(f.or(model.literals.map { it.negate(f) }))
+                count++
+            }
+        } finally {
+            solver.loadState(state)
+        }
+        return count
+    }
+}
@@ -3,6 +3,7 @@
 
 package com.booleworks.boolerules.computations.modelcount
 
+import com.booleworks.boolerules.computations.generic.ComputationDetail
 import com.booleworks.boolerules.computations.generic.ComputationRequest
 import com.booleworks.boolerules.computations.generic.PropertySelectionDO
 import com.booleworks.boolerules.computations.generic.SingleComputationResponse
@@ -20,6 +21,47 @@ data class ModelCountRequest(
 
     @field:Schema(description = "The list of additional restrictions for the computation")
     override val additionalConstraints: List<String> = listOf(),
+
+    @field:Schema(description = "A list of features to which the model count is projected, all features if empty")
+    val features: List<String> = listOf(),
+
+    @field:Schema(
+        description = "Flag whether the model count should be approximated.  The error bounds of " +
+                "an approximated count are part of its details"
+    )
+    val approximate: Boolean = false,
+
+    @field:Schema(
+        description = "The relative tolerance of an approximated model count (default $DEFAULT_TOLERANCE)"
+    )
+    val tolerance: Double? = null,
+
+    @field:Schema(
+        description = "The probability that an approximated model count lies within the tolerance " +
+                "(default $DEFAULT_CONFIDENCE)"
+    )
+    val confidence: Double? = null,
+
+    @field:Schema(
+        description = "The time budget in seconds for approximating the model counts of all slices.  " +
+                "If the budget is exhausted, the confidence of the counts is reduced"
+    )
+    val timeBudget: Int? = null,
 ) : ComputationRequest
 
+@Schema(description = "The details of a model count")
+data class ModelCountDetail(
+    @field:Schema(description = "Flag whether the model count is approximated")
+    val approximate: Boolean,
+
+    @field:Schema(description = "The lower bound of the model count")
+    val lowerBound: BigInteger,
+
+    @field:Schema(description = "The upper bound of the model count")
+    val upperBound: BigInteger,
+
+    @field:Schema(description = "The probability that the model count lies within the bounds")
+    val confidence: Double,
+) : ComputationDetail
+
 typealias ModelCountResponse = SingleComputationResponse<BigInteger>
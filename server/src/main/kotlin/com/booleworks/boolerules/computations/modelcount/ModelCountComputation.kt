@@ -3,50 +3,72 @@
 
 package com.booleworks.boolerules.computations.modelcount
 
+import com.booleworks.boolerules.cache.CompilationCache
 import com.booleworks.boolerules.computations.ComputationType
-import com.booleworks.boolerules.computations.NoComputationDetail
 import com.booleworks.boolerules.computations.NoElement
 import com.booleworks.boolerules.computations.generic.ApiDocs
 import com.booleworks.boolerules.computations.generic.CACHING_IMPORT_FF
 import com.booleworks.boolerules.computations.generic.ComputationStatusBuilder
 import com.booleworks.boolerules.computations.generic.InternalResult
+import com.booleworks.boolerules.computations.generic.NON_PT_CONFIG
 import com.booleworks.boolerules.computations.generic.SingleComputation
 import com.booleworks.boolerules.computations.generic.SingleComputationRunner
 import com.booleworks.boolerules.computations.generic.SliceTypeDO
 import com.booleworks.boolerules.computations.generic.computationDoc
+import com.booleworks.boolerules.computations.generic.computeRelevantIntVars
+import com.booleworks.boolerules.computations.generic.computeRelevantVars
 import com.booleworks.boolerules.computations.modelcount.ModelCountComputation.ModelCountInternalResult
 import com.booleworks.logicng.csp.CspFactory
+import com.booleworks.logicng.formulas.FormulaFactory
 import com.booleworks.logicng.formulas.Variable
-import com.booleworks.logicng.modelcounting.ModelCounter
 import com.booleworks.prl.model.PrlModel
 import com.booleworks.prl.model.slices.Slice
+import com.booleworks.prl.transpiler.LngIntVariable
 import com.booleworks.prl.transpiler.TranspilationInfo
 import java.math.BigInteger
+import kotlin.random.Random
+import kotlin.time.Duration.Companion.seconds
+import kotlin.time.TimeMark
+import kotlin.time.TimeSource
 
 val MODELCOUNT = object : ComputationType<
         ModelCountRequest,
         ModelCountResponse,
         BigInteger,
-        NoComputationDetail,
+        ModelCountDetail,
         NoElement> {
     override val path: String = "modelcount"
     override val docs: ApiDocs = computationDoc<ModelCountRequest, ModelCountResponse>(
         "Configuration Counting",
         "Compute the model count of a rule file",
-        "The model count represents the number of valid configurations for the rule file."
+        "The model count represents the number of valid configurations for the rule file.  " +
+                "For huge rule files the model count can be approximated within a given tolerance"
     )
 
     override val request = ModelCountRequest::class.java
     override val main = BigInteger::class.java
-    override val detail = NoComputationDetail::class.java
+    override val detail = ModelCountDetail::class.java
     override val element = NoElement::class.java
 
     override val runner = SingleComputationRunner(ModelCountComputation)
     override val computationFunction = runner::compute
 }
 
-internal object ModelCountComputation :
-    SingleComputation<ModelCountRequest, BigInteger, NoComputationDetail, ModelCountInternalResult>(CACHING_IMPORT_FF) {
+private const val RANDOM_SEED = 42
+
+/**
+ * The computation of model counts.
+ *
+ * The slices of a request are counted by an instance of its own, which holds
+ * the [TimeBudget] of the request.  The companion object is the computation
+ * used for all requests and creates this instance in [computeForModel], so
+ * the time budget of a request starts when its computation starts.
+ */
+internal open class ModelCountComputation private constructor(
+    private val budget: TimeBudget?
+) : SingleComputation<ModelCountRequest, BigInteger, ModelCountDetail, ModelCountInternalResult>(CACHING_IMPORT_FF) {
+
+    companion object : ModelCountComputation(null)
 
     override fun allowedSliceTypes() = setOf(SliceTypeDO.SPLIT, SliceTypeDO.ALL)
 
@@ -56,6 +78,20 @@ internal object ModelCountComputation :
         newResult: ModelCountInternalResult
     ) = newResult
 
+    override fun copyForSlice(result: ModelCountInternalResult, slice: Slice) = result.copy(slice = slice)
+
+    override fun computeForModel(
+        request: ModelCountRequest,
+        model: PrlModel,
+        status: ComputationStatusBuilder,
+        useTranslationCache: Boolean
+    ): Map<Slice, ModelCountInternalResult> =
+        if (budget == null) {
+            ModelCountComputation(TimeBudget.of(request)).computeForModel(request, model, status, useTranslationCache)
+        } else {
+            super.computeForModel(request, model, status, useTranslationCache)
+        }
+
     override fun computeForSlice(
         request: ModelCountRequest,
         slice: Slice,
@@ -64,19 +100,82 @@ internal object ModelCountComputation :
         cf: CspFactory,
         status: ComputationStatusBuilder,
     ): ModelCountInternalResult {
-        // currently no projected model counting is supported
-        // val variables = computeRelevantVars(f, info, listOf())
         val f = cf.formulaFactory
+        val projection = projectionVariables(f, info, request.features)
+        if (!status.successful()) {
+            return ModelCountInternalResult(slice, BigInteger.ZERO)
+        }
+        if (request.approximate) {
+            return approximateCount(request, slice, info, f, projection, status)
+        }
+        CompilationCache.compute(request, slice, info, f) { compiled, constraints ->
+            compiled.modelCount(constraints, projection)
+        }?.let { return ModelCountInternalResult(slice, it) }
         val allVariables = sortedSetOf<Variable>()
         val formulas = info.propositions.map {
             allVariables.addAll(it.formula.variables(f))
             it.formula
         }
-        allVariables.addAll(info.knownVariables)
-        if (!status.successful()) {
+        val featureVariables = projectionVariables(f, info, listOf())
+        allVariables.addAll(featureVariables)
+        val count = ProjectedModelCounter.count(f, formulas, allVariables, projection, featureVariables)
+        if (count == null) {
+            status.addError(
+                "The projected model count for slice $slice exceeded the limit of $MAX_PROJECTION_NODES BDD nodes"
+            )
+            return ModelCountInternalResult(slice, BigInteger.ZERO)
+        }
+        return ModelCountInternalResult(slice, count)
+    }
+
+    private fun approximateCount(
+        request: ModelCountRequest,
+        slice: Slice,
+        info: TranspilationInfo,
+        f: FormulaFactory,
+        projection: Set<Variable>,
+        status: ComputationStatusBuilder
+    ): ModelCountInternalResult {
+        val tolerance = request.tolerance ?: DEFAULT_TOLERANCE
+        val confidence = request.confidence ?: DEFAULT_CONFIDENCE
+        if (tolerance <= 0.0 || confidence <= 0.0 || confidence >= 1.0) {
+            status.addError("The tolerance must be positive and the confidence must be between 0 and 1")
             return ModelCountInternalResult(slice, BigInteger.ZERO)
         }
-        return ModelCountInternalResult(slice, ModelCounter.count(cf.formulaFactory, formulas, allVariables))
+        val solver = satSolver(NON_PT_CONFIG, f, info, slice, status)
+        val samplingVars = projection.sorted()
+        // a slice computed on its own has a time budget of its own
+        val deadline = (this.budget ?: TimeBudget.of(request)).deadline
+        val counter =
+            ApproximateModelCounter(solver, samplingVars, tolerance, confidence, deadline, Random(RANDOM_SEED))
+        val count = counter.count()
+        if (count == null) {
+            status.addWarning(
+                "The time budget was exhausted before the model count for slice $slice was approximated, " +
+                        "its bounds are only the trivial bounds of the ${samplingVars.size} counted variables"
+            )
+            val detail = ModelCountDetail(true, BigInteger.ZERO, BigInteger.TWO.pow(samplingVars.size), 0.0)
+            return ModelCountInternalResult(slice, BigInteger.ZERO, detail)
+        }
+        if (count.confidence < confidence) {
+            status.addWarning(
+                "The time budget was exhausted while approximating the model count for slice $slice, " +
+                        "its bounds only hold with a confidence of ${count.confidence}"
+            )
+        }
+        val detail = ModelCountDetail(!count.isExact, count.lowerBound, count.upperBound, count.confidence)
+        return ModelCountInternalResult(slice, count.estimate, detail)
+    }
+
+    /**
+     * Returns the variables of the given features the count is projected to.
+     * Int features are represented by the variables of their encoding, which
+     * determine their value.
+     */
+    private fun projectionVariables(f: FormulaFactory, info: TranspilationInfo, features: List<String>): Set<Variable> {
+        val relevantVars = computeRelevantVars(f, info, features).filter(info.knownVariables::contains)
+        val relevantIntVars = computeRelevantIntVars(info, features).map(LngIntVariable::variable)
+        return (relevantVars + info.encodingContext.getSatVariables(relevantIntVars)).toSet()
     }
 
     override fun computeDetailForSlice(
@@ -88,9 +187,23 @@ internal object ModelCountComputation :
         cf: CspFactory
     ) = error("details are always computed in main computation")
 
-    data class ModelCountInternalResult(override val slice: Slice, val count: BigInteger) :
-        InternalResult<BigInteger, NoComputationDetail>(slice) {
+    /**
+     * The time budget of a request with the deadline of its approximations
+     * or without a deadline if the request has no time budget.
+     */
+    private class TimeBudget(val deadline: TimeMark?) {
+        companion object {
+            fun of(request: ModelCountRequest) =
+                TimeBudget(request.timeBudget?.let { TimeSource.Monotonic.markNow() + it.seconds })
+        }
+    }
+
+    data class ModelCountInternalResult(
+        override val slice: Slice,
+        val count: BigInteger,
+        val detail: ModelCountDetail = ModelCountDetail(false, count, count, 1.0)
+    ) : InternalResult<BigInteger, ModelCountDetail>(slice) {
         override fun extractMainResult() = count
-        override fun extractDetails() = NoComputationDetail
+        override fun extractDetails() = detail
     }
 }
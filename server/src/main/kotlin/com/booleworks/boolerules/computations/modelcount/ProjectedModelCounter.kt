@@ -0,0 +1,134 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.computations.modelcount
+
+import com.booleworks.boolerules.cache.CompiledSlice
+import com.booleworks.boolerules.cache.WeightedLruCache
+import com.booleworks.boolerules.config.ComputationConfig
+import com.booleworks.logicng.datastructures.Substitution
+import com.booleworks.logicng.formulas.Formula
+import com.booleworks.logicng.formulas.FormulaFactory
+import com.booleworks.logicng.formulas.Variable
+import com.booleworks.logicng.modelcounting.ModelCounter
+import com.booleworks.logicng.solvers.SatSolver
+import java.math.BigInteger
+import java.util.SortedSet
+
+private const val COPY_PREFIX = "@PROJECTION_COPY_"
+
+/**
+ * The maximal number of BDD nodes for counting formulas whose projection
+ * is not determined.
+ */
+internal const val MAX_PROJECTION_NODES = 5_000_000
+
+/**
+ * Counts the models of formulas projected to a subset of their variables.
+ *
+ * The variables outside the feature variables are auxiliary variables of
+ * the encodings.  If they are functionally determined by the feature
+ * variables and the projection contains all feature variables, the
+ * projected count equals the count over all variables and the
+ * [ModelCounter] is used.  Whether variables are determined is checked with
+ * Padoa's method: the variables are determined if the formulas together
+ * with a copy of them, in which the variables are renamed, do not allow
+ * different values for any variable and its copy.  The check of the
+ * auxiliary variables only depends on the formulas, so it is computed once
+ * per translation and cached.  If the projection hides feature variables,
+ * it is checked whether they are determined by the projection.  If any
+ * variable outside the projection is not determined, the formulas are
+ * compiled to a BDD on which all variables outside the projection are
+ * existentially quantified.
+ */
+internal object ProjectedModelCounter {
+
+    /**
+     * The formulas and feature variables of a slice whose auxiliary
+     * variables were checked.
+     */
+    private data class AuxiliaryKey(val formulas: List<Formula>, val featureVariables: Set<Variable>)
+
+    private class AuxiliaryCheck(val determined: Boolean, val weight: Long)
+
+    /**
+     * The results of the checks of the auxiliary variables, bounded by the
+     * number of formulas like the translation cache.
+     */
+    private val auxiliaryChecks = WeightedLruCache<AuxiliaryKey, AuxiliaryCheck>(
+        "auxiliaries",
+        { ComputationConfig.translationCacheSize },
+        { it.weight }
+    )
+
+    /**
+     * Returns the number of models of the given formulas over the given
+     * variables projected to the given projection variables or `null` if
+     * the BDD of the formulas exceeds the given number of nodes.  The
+     * variables must contain all variables of the formulas and all given
+     * feature variables.
+     */
+    fun count(
+        f: FormulaFactory,
+        formulas: List<Formula>,
+        variables: SortedSet<Variable>,
+        projection: Set<Variable>,
+        featureVariables: Set<Variable>,
+        maxNodes: Int = MAX_PROJECTION_NODES
+    ): BigInteger? {
+        val hidden = variables.filterNot(projection::contains)
+        val hiddenFeatures = hidden.filter(featureVariables::contains)
+        val determined = auxiliariesDetermined(f, formulas, variables, featureVariables) &&
+                allDetermined(f, formulas, hidden, hiddenFeatures)
+        return if (determined) {
+            ModelCounter.count(f, formulas, variables)
+        } else {
+            CompiledSlice.compile(formulas, variables, maxNodes)?.modelCount(listOf(), projection)
+        }
+    }
+
+    /**
+     * Returns whether the auxiliary variables of the given formulas are
+     * determined by the given feature variables.
+     */
+    private fun auxiliariesDetermined(
+        f: FormulaFactory,
+        formulas: List<Formula>,
+        variables: Collection<Variable>,
+        featureVariables: Set<Variable>
+    ): Boolean {
+        val key = AuxiliaryKey(formulas, featureVariables)
+        return auxiliaryChecks.getOrLoad(key) {
+            val auxiliaries = variables.filterNot(featureVariables::contains)
+            AuxiliaryCheck(allDetermined(f, formulas, auxiliaries, auxiliaries), formulas.size.toLong())
+        }.determined
+    }
+
+    /**
+     * Returns whether the given checked variables are determined by all
+     * variables of the formulas which are not renamed.  All variables are
+     * checked with a single solver call for a difference in any of them.
+     */
+    private fun allDetermined(
+        f: FormulaFactory,
+        formulas: List<Formula>,
+        renamed: List<Variable>,
+        checked: List<Variable>
+    ): Boolean {
+        if (checked.isEmpty()) {
+            return true
+        }
+        val substitution = Substitution()
+        val copies = renamed.associateWith { f.variable(COPY_PREFIX + it.name) }
+        copies.forEach { (variable, copy) -> substitution.addMapping(variable, copy) }
+        val solver = SatSolver.newSolver(f)
+        formulas.forEach {
+            solver.add(it)
+            solver.add(it.substitute(f, substitution))
+        }
+        val difference = f.or(checked.map { f.not(f.equivalence(it, copies[it]!!)) })
+        return solver.satCall().addFormulas(difference).sat().result == false
+    }
+
+    fun statistics() = auxiliaryChecks.statistics()
+}
@@ -22,7 +22,13 @@ data class ModelEnumerationRequest(
     override val additionalConstraints: List<String> = listOf(),
 
     @field:Schema(description = "A list of features used for the (projected) model enumeration")
-    val features: List<String>
+    val features: List<String>,
+
+    @field:Schema(
+        description = "The maximal number of distinct models enumerated over all slices.  " +
+                "The limit of the service is used if this limit is missing or greater"
+    )
+    val maxModels: Int? = null
 ) : ComputationRequest
 
 typealias ModelEnumerationResponse = ListComputationResponse<Boolean, FeatureModelDO>
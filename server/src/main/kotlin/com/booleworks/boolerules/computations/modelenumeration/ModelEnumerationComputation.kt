@@ -6,22 +6,24 @@ package com.booleworks.boolerules.computations.modelenumeration
 import com.booleworks.boolerules.computations.ComputationType
 import com.booleworks.boolerules.computations.NoComputationDetail
 import com.booleworks.boolerules.computations.generic.ApiDocs
+import com.booleworks.boolerules.computations.generic.ComputationElement
 import com.booleworks.boolerules.computations.generic.ComputationStatusBuilder
 import com.booleworks.boolerules.computations.generic.FeatureModelDO
 import com.booleworks.boolerules.computations.generic.InternalListResult
 import com.booleworks.boolerules.computations.generic.InternalResult
 import com.booleworks.boolerules.computations.generic.ListComputation
 import com.booleworks.boolerules.computations.generic.ListComputationRunner
+import com.booleworks.boolerules.computations.generic.MergeResult
 import com.booleworks.boolerules.computations.generic.NON_CACHING_USE_FF
 import com.booleworks.boolerules.computations.generic.NON_PT_CONFIG
 import com.booleworks.boolerules.computations.generic.computationDoc
 import com.booleworks.boolerules.computations.generic.computeRelevantIntVars
 import com.booleworks.boolerules.computations.generic.computeRelevantVars
-import com.booleworks.boolerules.computations.generic.extractModel
 import com.booleworks.boolerules.computations.modelenumeration.ModelEnumerationComputation.ModelEnumerationElementResult
 import com.booleworks.boolerules.computations.modelenumeration.ModelEnumerationComputation.ModelEnumerationInternalResult
+import com.booleworks.boolerules.config.ComputationConfig
 import com.booleworks.logicng.csp.CspFactory
-import com.booleworks.logicng.csp.functions.CspModelEnumeration
+import com.booleworks.logicng.csp.terms.IntegerVariable
 import com.booleworks.logicng.formulas.Variable
 import com.booleworks.logicng.solvers.SatSolver
 import com.booleworks.prl.model.PrlModel
@@ -29,6 +31,7 @@ import com.booleworks.prl.model.slices.Slice
 import com.booleworks.prl.transpiler.LngIntVariable
 import com.booleworks.prl.transpiler.TranspilationInfo
 import java.util.SortedSet
+import java.util.concurrent.ConcurrentHashMap
 
 val MODELENUMERATION = object : ComputationType<
         ModelEnumerationRequest,
@@ -54,17 +57,43 @@ val MODELENUMERATION = object : ComputationType<
     override val computationFunction = runner::compute
 }
 
-internal object ModelEnumerationComputation : ListComputation<
+private const val SEL_TAUTOLOGY = "@SEL_TAUTOLOGY"
+
+/**
+ * The computation of buildable configurations.
+ *
+ * The models of all slices of a request are enumerated by an instance of its
+ * own, which holds the [Enumeration] state of the request.  The companion
+ * object is the computation used for all requests and creates this instance
+ * in [computeResponse].
+ */
+internal open class ModelEnumerationComputation private constructor(
+    private val enumeration: Enumeration?
+) : ListComputation<
         ModelEnumerationRequest,
-        Map<FeatureModelDO, Slice>,
+        Map<PackedModel, Slice>,
         NoComputationDetail,
         Boolean,
         NoComputationDetail,
         ModelEnumerationInternalResult,
         ModelEnumerationElementResult,
-        FeatureModelDO>(NON_CACHING_USE_FF) {
+        FeatureModelDO,
+        PackedModel>(NON_CACHING_USE_FF) {
 
-    private const val SEL_TAUTOLOGY = "@SEL_TAUTOLOGY"
+    companion object : ModelEnumerationComputation(null)
+
+    override fun computeResponse(
+        request: ModelEnumerationRequest,
+        model: PrlModel,
+        status: ComputationStatusBuilder,
+        useTranslationCache: Boolean
+    ): Map<ComputationElement<FeatureModelDO>, MergeResult<Boolean, NoComputationDetail>> =
+        if (enumeration == null) {
+            ModelEnumerationComputation(Enumeration(maxModels(request)))
+                .computeResponse(request, model, status, useTranslationCache)
+        } else {
+            super.computeResponse(request, model, status, useTranslationCache)
+        }
 
     override fun mergeInternalResult(
         existingResult: ModelEnumerationInternalResult?,
@@ -74,9 +103,12 @@ internal object ModelEnumerationComputation : ListComputation<
             newResult
         } else {
             existingResult.models.putAll(newResult.models)
-            existingResult
+            existingResult.copy(complete = existingResult.complete && newResult.complete)
         }
 
+    override fun copyForSlice(result: ModelEnumerationInternalResult, slice: Slice) =
+        result.copy(slice = slice, models = result.models.keys.associateWithTo(LinkedHashMap<PackedModel, Slice>()) { slice })
+
     override fun computeForSlice(
         request: ModelEnumerationRequest,
         slice: Slice,
@@ -95,12 +127,52 @@ internal object ModelEnumerationComputation : ListComputation<
         }
         addTautologyClauses(solver, relevantVars)
 
-        val models = CspModelEnumeration
-            .enumerate(solver, relevantIntVars, relevantVars, info.encodingContext, cf)
-            .map { model -> extractModel(model, info) }
-            .toSet()
+        // a slice computed on its own is enumerated with a state of its own
+        val enumeration = this.enumeration ?: Enumeration(maxModels(request))
+        val models = LinkedHashMap<PackedModel, Slice>()
+        val packer = ModelPacker(enumeration.featureIndex, info)
+        for (packedModel in enumerateModels(solver, relevantVars, relevantIntVars, info, packer, cf)) {
+            if (!enumeration.admit(packedModel)) {
+                status.addWarning(
+                    "The model enumeration for slice $slice was stopped since the limit of " +
+                            "${enumeration.maxModels} models for the request was reached, so the slice " +
+                            "is only listed for the models found in it"
+                )
+                return ModelEnumerationInternalResult(slice, models, complete = false)
+            }
+            models[packedModel] = slice
+        }
+        return ModelEnumerationInternalResult(slice, models)
+    }
 
-        return ModelEnumerationInternalResult(slice, models.associateWith { slice }.toMutableMap())
+    private fun maxModels(request: ModelEnumerationRequest): Int {
+        val configLimit = ComputationConfig.maxNumberOfModels.takeIf { it > 0 } ?: Int.MAX_VALUE
+        return minOf(request.maxModels?.takeIf { it > 0 } ?: Int.MAX_VALUE, configLimit)
+    }
+
+    /**
+     * Lazily enumerates the models of the solver projected to the given
+     * variables.  Each model is excluded by a blocking clause before the next
+     * model is computed, so only the models taken from the sequence are held
+     * in memory.
+     */
+    private fun enumerateModels(
+        solver: SatSolver,
+        relevantVars: SortedSet<Variable>,
+        relevantIntVars: List<IntegerVariable>,
+        info: TranspilationInfo,
+        packer: ModelPacker,
+        cf: CspFactory
+    ): Sequence<PackedModel> {
+        val f = cf.formulaFactory
+        val satVars = info.encodingContext.getSatVariables(relevantIntVars) + relevantVars
+        return generateSequence {
+            val model = solver.satCall().solve().use { satCall ->
+                if (satCall.satResult.result == true) satCall.model(satVars) else null
+            } ?: return@generateSequence null
+            solver.add(f.or(model.literals.map { it.negate(f) }))
+            packer.pack(cf.decode(model.toAssignment(), relevantIntVars, relevantVars, info.encodingContext))
+        }
     }
 
     private fun addTautologyClauses(solver: SatSolver, variables: SortedSet<Variable>) {
@@ -110,26 +182,59 @@ internal object ModelEnumerationComputation : ListComputation<
         solver.add(selTautology)
     }
 
-    override fun extractElements(internalResult: ModelEnumerationInternalResult): Set<FeatureModelDO> =
+    override fun extractElements(internalResult: ModelEnumerationInternalResult): Set<PackedModel> =
         internalResult.models.keys
 
     override fun extractInternalResult(
-        element: FeatureModelDO,
+        element: PackedModel,
         internalResult: ModelEnumerationInternalResult
-    ): ModelEnumerationElementResult =
+    ): ModelEnumerationElementResult? =
         internalResult.models[element].let { slice ->
-            if (slice == null) {
-                ModelEnumerationElementResult(internalResult.slice, false)
-            } else {
-                ModelEnumerationElementResult(slice, true)
+            when {
+                slice != null -> ModelEnumerationElementResult(slice, true)
+                // a model not found in a truncated slice might still be a model of it
+                internalResult.complete -> ModelEnumerationElementResult(internalResult.slice, false)
+                else -> null
             }
         }
 
+    override fun expandElement(element: PackedModel) = element.toFeatureModel()
+
+    /**
+     * The state of a model enumeration shared by all slices of a request: the
+     * index of its packed models and the distinct models enumerated so far.
+     * The limit of models holds for the distinct models over all slices,
+     * since all of them are held in memory until the response is built.
+     */
+    private class Enumeration(val maxModels: Int) {
+        val featureIndex = FeatureIndex()
+        private val models = ConcurrentHashMap.newKeySet<PackedModel>()
+
+        /**
+         * Returns whether the given model may be added to a slice result.
+         * Models which were already enumerated for another slice are always
+         * admitted, new models only as long as the limit is not reached.
+         */
+        fun admit(model: PackedModel): Boolean {
+            if (model in models) return true
+            synchronized(this) {
+                if (models.size >= maxModels) return model in models
+                models.add(model)
+                return true
+            }
+        }
+    }
+
+    /**
+     * The models enumerated for a slice.  If the enumeration was stopped by
+     * the limit of models, the result is not [complete].
+     */
     data class ModelEnumerationInternalResult(
         override val slice: Slice,
-        val models: MutableMap<FeatureModelDO, Slice>
+        val models: MutableMap<PackedModel, Slice>,
+        val complete: Boolean = true
     ) :
-        InternalListResult<Map<FeatureModelDO, Slice>, NoComputationDetail>(slice)
+        InternalListResult<Map<PackedModel, Slice>, NoComputationDetail>(slice)
 
     data class ModelEnumerationElementResult(override val slice: Slice, val isModel: Boolean) :
         InternalResult<Boolean, NoComputationDetail>(slice) {
@@ -0,0 +1,196 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.computations.modelenumeration
+
+import com.booleworks.boolerules.computations.generic.FeatureDO
+import com.booleworks.boolerules.computations.generic.FeatureModelDO
+import com.booleworks.boolerules.computations.generic.extractFeature
+import com.booleworks.logicng.csp.datastructures.CspAssignment
+import com.booleworks.logicng.formulas.Variable
+import com.booleworks.prl.transpiler.TranspilationInfo
+import java.util.BitSet
+
+private const val BITS_PER_WORD = 64
+private const val INT_KEY_OFFSET = 1L shl 62
+
+/**
+ * A compact representation of a [FeatureModelDO].
+ *
+ * The boolean features, versioned boolean features with their version, and
+ * enum features with their value of the model are stored as a bitset over
+ * the atoms of the [FeatureIndex].  The int features are stored as pairs of
+ * their slot in the index and their value, ordered by the slot.  All packed
+ * models which are compared with each other must share the same index.
+ *
+ * Packed models are ordered like their features sorted and compared
+ * lexicographically, but without expanding them.
+ */
+internal class PackedModel(
+    private val index: FeatureIndex,
+    internal val atoms: LongArray,
+    internal val ints: IntArray
+) : Comparable<PackedModel> {
+
+    fun toFeatureModel(): FeatureModelDO = index.expand(this)
+
+    override fun compareTo(other: PackedModel) = index.compare(this, other)
+
+    override fun equals(other: Any?) =
+        this === other || other is PackedModel && atoms.contentEquals(other.atoms) && ints.contentEquals(other.ints)
+
+    override fun hashCode() = 31 * atoms.contentHashCode() + ints.contentHashCode()
+
+    override fun toString() = toFeatureModel().toString()
+}
+
+/**
+ * The atoms and int features of the packed models of a single computation.
+ * Atoms and int features get their index when they are seen for the first
+ * time.  So the indices depend on the order of the computations, but the
+ * order of the packed models does not.
+ *
+ * This class is thread-safe.
+ */
+internal class FeatureIndex {
+    private val atomIndices = HashMap<FeatureDO, Int>()
+    private val atomFeatures = ArrayList<FeatureDO>()
+    private val intSlots = HashMap<String, Int>()
+    private val intCodes = ArrayList<String>()
+    private var ranks: Ranks? = null
+
+    private class Ranks(val atoms: IntArray, val ints: IntArray)
+
+    /**
+     * Returns the index of the given boolean, versioned boolean, or enum
+     * feature.
+     */
+    @Synchronized
+    fun atom(feature: FeatureDO) = atomIndices.getOrPut(feature) { atomFeatures.add(feature); atomFeatures.size - 1 }
+
+    /**
+     * Returns the slot of the int feature with the given code.
+     */
+    @Synchronized
+    fun intSlot(code: String) = intSlots.getOrPut(code) { intCodes.add(code); intCodes.size - 1 }
+
+    /**
+     * Expands the given packed model to its features in their natural order.
+     */
+    @Synchronized
+    fun expand(model: PackedModel): FeatureModelDO {
+        val features = ArrayList<FeatureDO>()
+        BitSet.valueOf(model.atoms).stream().forEach { features.add(atomFeatures[it]) }
+        for (i in model.ints.indices step 2) {
+            features.add(FeatureDO.int(intCodes[model.ints[i]], model.ints[i + 1]))
+        }
+        return FeatureModelDO(features.sorted())
+    }
+
+    /**
+     * Compares the given packed models like their sorted feature lists.  The
+     * smallest feature which is contained in only one of both models decides
+     * the order: if the other model has a greater feature, the model with
+     * this feature is smaller, otherwise the other model is a prefix of it.
+     */
+    fun compare(a: PackedModel, b: PackedModel): Int {
+        val ranks = ranks()
+        var min = Long.MAX_VALUE
+        var minInA = false
+        for (word in 0 until maxOf(a.atoms.size, b.atoms.size)) {
+            val wordA = a.atoms.getOrElse(word) { 0L }
+            var diff = wordA xor b.atoms.getOrElse(word) { 0L }
+            while (diff != 0L) {
+                val bit = diff.countTrailingZeroBits()
+                val key = ranks.atoms[word * BITS_PER_WORD + bit].toLong()
+                if (key < min) {
+                    min = key
+                    minInA = wordA and (1L shl bit) != 0L
+                }
+                diff = diff and (diff - 1)
+            }
+        }
+        var i = 0
+        var j = 0
+        while (i < a.ints.size || j < b.ints.size) {
+            val slotA = if (i < a.ints.size) a.ints[i] else Int.MAX_VALUE
+            val slotB = if (j < b.ints.size) b.ints[j] else Int.MAX_VALUE
+            if (slotA <= slotB && (slotA != slotB || a.ints[i + 1] != b.ints[j + 1])) {
+                val key = intKey(ranks, slotA, a.ints[i + 1])
+                if (key < min) {
+                    min = key
+                    minInA = true
+                }
+            }
+            if (slotB <= slotA && (slotA != slotB || a.ints[i + 1] != b.ints[j + 1])) {
+                val key = intKey(ranks, slotB, b.ints[j + 1])
+                if (key < min) {
+                    min = key
+                    minInA = false
+                }
+            }
+            if (slotA <= slotB) i += 2
+            if (slotB <= slotA) j += 2
+        }
+        return when {
+            min == Long.MAX_VALUE -> 0
+            maxKey(ranks, if (minInA) b else a) > min -> if (minInA) -1 else 1
+            else -> if (minInA) 1 else -1
+        }
+    }
+
+    private fun maxKey(ranks: Ranks, model: PackedModel): Long {
+        var max = -1L
+        for (i in model.ints.indices step 2) {
+            max = maxOf(max, intKey(ranks, model.ints[i], model.ints[i + 1]))
+        }
+        if (max < 0) {
+            BitSet.valueOf(model.atoms).stream().forEach { max = maxOf(max, ranks.atoms[it].toLong()) }
+        }
+        return max
+    }
+
+    /**
+     * Int features are greater than all atoms and ordered by their code and
+     * their value, like [FeatureDO]s.
+     */
+    private fun intKey(ranks: Ranks, slot: Int, value: Int) =
+        INT_KEY_OFFSET + (ranks.ints[slot].toLong() shl Int.SIZE_BITS) + (value.toLong() - Int.MIN_VALUE)
+
+    @Synchronized
+    private fun ranks(): Ranks {
+        ranks?.takeIf { it.atoms.size == atomFeatures.size && it.ints.size == intCodes.size }?.let { return it }
+        val atomRanks = IntArray(atomFeatures.size)
+        atomFeatures.indices.sortedBy { atomFeatures[it] }.forEachIndexed { rank, atom -> atomRanks[atom] = rank }
+        val intRanks = IntArray(intCodes.size)
+        intCodes.indices.sortedBy { intCodes[it] }.forEachIndexed { rank, slot -> intRanks[slot] = rank }
+        return Ranks(atomRanks, intRanks).also { ranks = it }
+    }
+}
+
+/**
+ * Packs the models of a single slice.  The features of the variables of the
+ * slice are looked up in the index only once.
+ */
+internal class ModelPacker(private val index: FeatureIndex, private val info: TranspilationInfo) {
+    private val atoms = HashMap<Variable, Int>()
+    private val intSlots = HashMap<String, Int>()
+
+    fun pack(assignment: CspAssignment): PackedModel {
+        val bits = BitSet()
+        assignment.positiveBooleans().forEach { bits.set(atoms.getOrPut(it) { index.atom(extractFeature(it, info)) }) }
+        val ints = assignment.integerAssignments.entries
+            .map { (variable, value) -> Pair(intSlot(variable.name), value) }
+            .sortedBy { it.first }
+        val packedInts = IntArray(2 * ints.size)
+        ints.forEachIndexed { i, (slot, value) ->
+            packedInts[2 * i] = slot
+            packedInts[2 * i + 1] = value
+        }
+        return PackedModel(index, bits.toLongArray(), packedInts)
+    }
+
+    private fun intSlot(name: String) = intSlots.getOrPut(name) {
+        index.intSlot(info.integerVariables.first { it.variable.name == name }.feature)
+    }
+}
@@ -67,6 +67,8 @@ internal object OptimizationComputation :
             if (newResult.weight > existingResult.weight) newResult else existingResult
         }
 
+    override fun copyForSlice(result: OptimizationInternalResult, slice: Slice) = result.copy(slice = slice)
+
     override fun computeForSlice(
         request: OptimizationRequest,
         slice: Slice,
@@ -76,6 +76,8 @@ object PackageSolvingComputation :
         cf: CspFactory
     ) = error("details are always computed in main computation")
 
+    override fun copyForSlice(result: PackageSolvingInternalResult, slice: Slice) = result.copy(slice = slice)
+
     override fun computeForSlice(
         request: PackageSolvingRequest,
         slice: Slice,
@@ -68,6 +68,8 @@ object ReconfigurationComputation :
         cf: CspFactory
     ) = error("details are always computed in main computation")
 
+    override fun copyForSlice(result: ReconfigurationInternalResult, slice: Slice) = result.copy(slice = slice)
+
     override fun computeForSlice(
         request: ReconfigurationRequest,
         slice: Slice,
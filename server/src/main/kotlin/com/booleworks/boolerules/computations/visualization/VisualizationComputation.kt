@@ -70,6 +70,8 @@ object VisualizationComputation :
         cf: CspFactory
     ) = error("details are always computed in main computation")
 
+    override fun copyForSlice(result: VisualizationInternalResult, slice: Slice) = result.copy(slice = slice)
+
     override fun computeForSlice(
         request: VisualizationRequest,
         slice: Slice,
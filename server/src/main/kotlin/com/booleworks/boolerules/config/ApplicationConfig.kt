@@ -7,7 +7,12 @@ import com.booleworks.boolerules.service.ServiceEnv
 
 data object ApplicationConfig {
 
-    var instance = "INSTANCE"
+    /**
+     * The instance name used if none is configured.
+     */
+    const val DEFAULT_INSTANCE = "INSTANCE"
+
+    var instance = DEFAULT_INSTANCE
         private set
     var jobCheckInterval = 250
         private set
@@ -4,18 +4,61 @@
 package com.booleworks.boolerules.config
 
 import com.booleworks.boolerules.service.ServiceEnv
+import com.booleworks.prl.model.slices.MAXIMUM_NUMBER_OF_SLICES
 
 data object ComputationConfig {
     var numThreads = 1
         private set
+    var schedulerThreads = Runtime.getRuntime().availableProcessors()
+        private set
+    var translationCacheSize = 1_000_000L
+        private set
+    var modelCacheSize = 16L
+        private set
+    var maxNumberOfSlices = MAXIMUM_NUMBER_OF_SLICES
+        private set
+    var maxNumberOfModels = 100_000
+        private set
+    var compilationCacheSize = 0L
+        private set
 
     fun setFromEnvironment(env: ServiceEnv) {
         env.numThreads?.toInt()?.let { numThreads = it }
+        env.schedulerThreads?.toInt()?.let { schedulerThreads = it }
+        env.translationCacheSize?.toLong()?.let { translationCacheSize = it }
+        env.modelCacheSize?.toLong()?.let { modelCacheSize = it }
+        env.maxNumberOfSlices?.toInt()?.let { maxNumberOfSlices = it }
+        env.maxNumberOfModels?.toInt()?.let { maxNumberOfModels = it }
+        env.compilationCacheSize?.toLong()?.let { compilationCacheSize = it }
     }
 
-    fun setFromValues(numThreads: Int? = null) {
+    fun setFromValues(
+        numThreads: Int? = null,
+        schedulerThreads: Int? = null,
+        translationCacheSize: Long? = null,
+        modelCacheSize: Long? = null,
+        maxNumberOfSlices: Int? = null,
+        maxNumberOfModels: Int? = null,
+        compilationCacheSize: Long? = null
+    ) {
         numThreads?.let { ComputationConfig.numThreads = it }
+        schedulerThreads?.let { ComputationConfig.schedulerThreads = it }
+        translationCacheSize?.let { ComputationConfig.translationCacheSize = it }
+        modelCacheSize?.let { ComputationConfig.modelCacheSize = it }
+        maxNumberOfSlices?.let { ComputationConfig.maxNumberOfSlices = it }
+        maxNumberOfModels?.let { ComputationConfig.maxNumberOfModels = it }
+        compilationCacheSize?.let { ComputationConfig.compilationCacheSize = it }
     }
 
-    override fun toString() = "ComputationConfig(numThreads=$numThreads)"
+    override fun toString(): String {
+        return "ComputationConfig(" +
+                "numThreads=$numThreads, " +
+                "schedulerThreads=$schedulerThreads, " +
+                "translationCacheSize=$translationCacheSize, " +
+                "modelCacheSize=$modelCacheSize, " +
+                "maxNumberOfSlices=$maxNumberOfSlices, " +
+                "maxNumberOfModels=$maxNumberOfModels, " +
+                "compilationCacheSize=$compilationCacheSize" +
+                ")"
+    }
 }
@@ -32,27 +32,27 @@ import com.booleworks.kjobs.data.internalError
 import com.booleworks.kjobs.data.notFound
 import com.booleworks.kjobs.data.result
 import com.booleworks.kjobs.data.success
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
-import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
-import com.fasterxml.jackson.module.kotlin.readValue
 import kotlinx.coroutines.runBlocking
 import org.slf4j.LoggerFactory
+import redis.clients.jedis.Jedis
 import redis.clients.jedis.JedisPool
+import redis.clients.jedis.Response
 import redis.clients.jedis.Transaction
+import redis.clients.jedis.params.ScanParams
+import redis.clients.jedis.params.ZAddParams
+import java.time.LocalDateTime
+import kotlin.time.toJavaDuration
 import kotlin.use
 
 class RedisRulefilePersistence(private val pool: JedisPool) : RulefilePersistence {
 
-    private val summaryDeserializer: (String) -> UploadSummaryDO =
-        jacksonObjectMapper().registerModule(JavaTimeModule())::readValue
-
-    private val summarySerializer: (UploadSummaryDO) -> String =
-        jacksonObjectMapper().registerModule(JavaTimeModule())::writeValueAsString
+    private val summaryReader = PersistenceSerialization.summaryReader
+    private val summaryWriter = PersistenceSerialization.summaryWriter
 
     override fun storeRuleFile(ruleFileId: String, bytes: ByteArray, uploadSummary: UploadSummaryDO) {
         pool.resource.use { jedis ->
             jedis.set(ruleFileId.toByteArray(), bytes)
-            jedis.set("$RULEFILE_PREFIX:$ruleFileId", summarySerializer(uploadSummary))
+            jedis.set("$RULEFILE_PREFIX:$ruleFileId", summaryWriter.writeValueAsString(uploadSummary))
         }
     }
 
@@ -65,22 +65,80 @@ class RedisRulefilePersistence(private val pool: JedisPool) : RulefilePersistenc
         }
     }
 
+    override fun getSummary(ruleFileId: String): Result<UploadSummaryDO> = pool.resource.use { jedis ->
+        val summary = jedis.get("$RULEFILE_PREFIX:$ruleFileId")
+        return if (summary != null) {
+            Result.success(summaryReader.readValue<UploadSummaryDO>(summary))
+        } else {
+            Result.failure(PersistenceNotFoundException("No rule file summary for ID $ruleFileId"))
+        }
+    }
+
     override fun deleteRuleFile(ruleFileId: String) = pool.resource.use { jedis ->
         jedis.del("$RULEFILE_PREFIX:$ruleFileId".toByteArray())
         jedis.del(ruleFileId.toByteArray()) > 0
     }
 
     override fun getAllSummaries() = pool.resource.use { jedis ->
-        val keys = jedis.keys("$RULEFILE_PREFIX:$ANY")
-        if (keys.isNotEmpty()) jedis.mget(*keys.toTypedArray()).map(summaryDeserializer) else listOf()
+        val keys = jedis.scanKeys("$RULEFILE_PREFIX:$ANY")
+        if (keys.isNotEmpty()) {
+            jedis.mget(*keys.toTypedArray()).map { summaryReader.readValue<UploadSummaryDO>(it) }
+        } else {
+            listOf()
+        }
     }
 }
 
-class RedisComputationPersistence(private val pool: JedisPool) : ComputationPersistence {
+/**
+ * The Redis persistence for computations.
+ *
+ * Besides the results, each job maintains index structures under
+ * `result:<jobId>:index`: a set of all keys written for the job, a sorted set
+ * of its single result IDs, and a hash from the keys of its slices to their
+ * slice groups.  A global set contains the IDs of all jobs with results.  So
+ * every lookup and delete is proportional to the data of the job and never
+ * needs `KEYS`.  Jobs stored by an older version without these indices are
+ * recognized by their status without an index and only these are searched
+ * with `SCAN`.
+ *
+ * The elements and results of a list computation are stored in a single hash
+ * `result:<jobId>:list` and all details of a job in a single hash
+ * `result:<jobId>:detail`, so a list response with thousands of elements is
+ * fetched with one command instead of one round trip per element.
+ *
+ * Results, details, elements, and statuses are written in the given
+ * [encoding], but can always be read in both encodings.
+ *
+ * The data of a job expires after the time to live of its computation type
+ * given by the [retention].  The serialized size and the computation type of
+ * each job are kept in the hash `result:index:bytes`, the running total of
+ * all sizes in `result:index:bytes:total`, and the time of the last access of
+ * each job in the sorted set `result:index:used`.  If the running total
+ * exceeds the maximum size of the [retention] after a result was stored, the
+ * least recently used jobs are evicted.
+ */
+class RedisComputationPersistence(
+    private val pool: JedisPool,
+    private val encoding: PersistenceEncoding = PersistenceEncoding.JSON,
+    private val retention: RetentionConfig = RetentionConfig()
+) : ComputationPersistence {
+    private val logger = LoggerFactory.getLogger(RedisComputationPersistence::class.java)
+
+    init {
+        // jobs stored by an older version are not contained in the running total
+        if (retention.maxSize > 0) {
+            pool.resource.use { jedis -> if (!jedis.exists(totalBytesKey())) jedis.recomputeTotalBytes() }
+        }
+    }
 
     override fun fetchJobInfo(jobId: String): Result<Job> {
-        val job = runBlocking { RedisJobPersistence(pool).fetchJob(jobId) }.getOrElse {
-            return Result.failure(PersistenceNotFoundException("No Job for job ID $jobId"))
+        val job = runBlocking { RedisJobPersistence(pool).fetchJob(jobId) }.getOrElse { error ->
+            // only a job which does not exist is reported as not found, other errors must not look like it
+            val exists = runCatching { pool.resource.use { it.exists(jobKey(jobId)) } }.getOrDefault(true)
+            return Result.failure(
+                if (exists) IllegalStateException("Could not fetch job $jobId: $error")
+                else PersistenceNotFoundException("No Job for job ID $jobId")
+            )
         }
         return Result.success(job)
     }
@@ -90,9 +148,12 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
     ): DataPersistence<REQUEST, ComputationResponse<MAIN>> =
         BooleRulesRedisPersistence(
             pool,
-            jacksonObjectMapper().registerModule(JavaTimeModule())::writeValueAsBytes,
-            { jacksonObjectMapper().registerModule(JavaTimeModule()).readValue(it, computationType.request) },
+            PersistenceSerialization.of(computationType).requestWriter::writeValueAsBytes,
+            { PersistenceSerialization.of(computationType).requestReader.readValue(it) },
             computationType,
+            encoding,
+            retention,
+            ::evictLeastRecentlyUsed,
             DefaultRedisConfig()
         )
 
@@ -102,29 +163,48 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
         sliceMap: Map<SliceDO, Int>,
         elementId: Int?
     ) {
-        val detailSerializer: (SplitComputationDetail<DETAIL>) -> String =
-            jacksonObjectMapper().registerModule(JavaTimeModule())::writeValueAsString
-        pool.resource.use { jedis ->
-            val keyValues = mutableListOf<String>()
-            details.forEach { (id, ds) ->
-                ds.forEach { d ->
-                    d.resultId = id
-                    d.elementId = elementId
-                    val sliceGroup = sliceMap[d.slice] ?: 0
-                    keyValues.add(detailKey(jobId, sliceGroup, elementId))
-                    keyValues.add(detailSerializer(d))
+        val detailCodec = PersistenceSerialization.any
+        val fields = HashMap<ByteArray, ByteArray>()
+        details.forEach { (id, ds) ->
+            ds.forEach { d ->
+                d.resultId = id
+                d.elementId = elementId
+                val sliceGroup = sliceMap[d.slice] ?: 0
+                fields[detailField(sliceGroup, elementId).toByteArray()] = detailCodec.write(d, encoding)
+            }
+        }
+        if (fields.isNotEmpty()) {
+            pool.resource.use { jedis ->
+                jedis.hset(detailKey(jobId).toByteArray(), fields)
+                jedis.sadd(keyIndexKey(jobId), detailKey(jobId))
+                jedis.hincrBy(bytesIndexKey(), bytesField(jobId, DETAIL), fields.byteSize())
+                jedis.incrBy(totalBytesKey(), fields.byteSize())
+                jedis.zadd(usageKey(), System.currentTimeMillis().toDouble(), jobId)
+                val ttl = if (retention.ttls.isEmpty()) {
+                    retention.defaultTtl
+                } else {
+                    retention.ttl(jedis.hget(bytesIndexKey(), bytesField(jobId, TYPE)))
+                }
+                if (ttl.isPositive()) {
+                    jedis.pexpire(detailKey(jobId), ttl.inWholeMilliseconds)
+                    jedis.pexpire(keyIndexKey(jobId), ttl.inWholeMilliseconds)
                 }
             }
-            if (keyValues.isNotEmpty()) jedis.mset(*keyValues.toTypedArray())
         }
     }
 
     override fun fetchStatus(jobId: String): Result<ComputationStatus> {
-        val status = pool.resource.use { jedis -> jedis.get(statusKey(jobId)) }
+        val status = pool.resource.use { jedis ->
+            // every response is fetched with its status, so this is the access relevant for the eviction
+            if (retention.maxSize > 0) {
+                jedis.zadd(usageKey(), System.currentTimeMillis().toDouble(), jobId, ZAddParams.zAddParams().xx())
+            }
+            jedis.get(statusKey(jobId).toByteArray())
+        }
         return if (status == null) {
             Result.failure(PersistenceNotFoundException("No status for job ID $jobId"))
         } else {
-            Result.success(jacksonObjectMapper().registerModule(JavaTimeModule()).readValue(status))
+            Result.success(PersistenceSerialization.status.read(status))
         }
     }
 
@@ -134,17 +214,14 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
         elementId: Int?,
         computationType: ComputationType<*, *, *, DETAIL, *>
     ): Result<SplitComputationDetail<DETAIL>> {
-        val mapper = jacksonObjectMapper().registerModule(JavaTimeModule())
-        val detailType =
-            mapper.typeFactory.constructParametricType(SplitComputationDetail::class.java, computationType.detail)
         val sliceGroup = fetchSliceGroup(jobId, slice).getOrElse { return Result.failure(it) }
-        val key = detailKey(jobId, sliceGroup, elementId)
         pool.resource.use { jedis ->
-            val res = jedis.get(key)
+            val res = jedis.hget(detailKey(jobId).toByteArray(), detailField(sliceGroup, elementId).toByteArray())
+                ?: jedis.get(legacyDetailKey(jobId, sliceGroup, elementId).toByteArray())
                 ?: return Result.failure(
                     PersistenceNotFoundException("No detail for job ID $jobId, slice $slice, and element ID $elementId")
                 )
-            return Result.success(mapper.readValue(res, detailType))
+            return Result.success(PersistenceSerialization.of(computationType).detail.read(res))
         }
     }
 
@@ -152,12 +229,10 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
         jobId: String,
         computationType: ComputationType<REQUEST, *, *, *, *>
     ): Result<REQUEST> {
-        val requestDeserializer: (String) -> REQUEST =
-            { jacksonObjectMapper().registerModule(JavaTimeModule()).readValue(it, computationType.request) }
         pool.resource.use {
             val request = it.get(requestKey(jobId))
                 ?: return Result.failure(PersistenceNotFoundException("No request for job ID $jobId"))
-            return Result.success(requestDeserializer(request))
+            return Result.success(PersistenceSerialization.of(computationType).requestReader.readValue(request))
         }
     }
 
@@ -167,18 +242,18 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
         elementId: Int?,
         computationType: ComputationType<*, *, MAIN, *, *>
     ): Result<SliceComputationResult<MAIN>> {
-        val mapper = jacksonObjectMapper().registerModule(JavaTimeModule())
-        val mainType =
-            mapper.typeFactory.constructParametricType(SliceComputationResult::class.java, computationType.main)
-        val key = if (elementId == null) singleResultKey(jobId, resultId) else listResultKey(jobId, elementId, resultId)
         pool.resource.use { jedis ->
-            val res = jedis.get(key)
-                ?: return Result.failure(
+            val res = if (elementId == null) {
+                jedis.get(singleResultKey(jobId, resultId).toByteArray())
+            } else {
+                jedis.hget(listKey(jobId).toByteArray(), listResultField(elementId, resultId).toByteArray())
+                    ?: jedis.get(legacyListResultKey(jobId, elementId, resultId).toByteArray())
+            } ?: return Result.failure(
                     PersistenceNotFoundException(
                         "No detail for job ID $jobId, result ID $resultId, and element ID $elementId"
                     )
                 )
-            return Result.success(mapper.readValue(res, mainType))
+            return Result.success(PersistenceSerialization.of(computationType).main.read(res))
         }
     }
 
@@ -195,15 +270,16 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
         jobId: String,
         computationType: ComputationType<*, *, MAIN, *, *>
     ): List<SliceComputationResult<MAIN>> {
-        val mapper = jacksonObjectMapper().registerModule(JavaTimeModule())
-        val mainType =
-            mapper.typeFactory.constructParametricType(SliceComputationResult::class.java, computationType.main)
+        val main = PersistenceSerialization.of(computationType).main
         val results = mutableListOf<SliceComputationResult<MAIN>>()
         pool.resource.use { jedis ->
-            val keys = jedis.keys(allSingleResultsKey(jobId)).toTypedArray()
-            if (keys.isNotEmpty()) jedis.mget(*keys).forEach { value ->
-                val main: SliceComputationResult<MAIN> = mapper.readValue(value, mainType)
-                results.add(main)
+            val keys = if (jedis.isLegacy(jobId)) {
+                jedis.scanKeys(allSingleResultsKey(jobId))
+            } else {
+                jedis.zrange(singleIndexKey(jobId), 0, -1).map { singleResultKey(jobId, it.toInt()) }
+            }
+            if (keys.isNotEmpty()) jedis.mget(*keys.map { it.toByteArray() }.toTypedArray()).forEach { value ->
+                results.add(main.read(value))
             }
         }
         return results.sortedBy { it.id }
@@ -214,28 +290,64 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
         computationType: ComputationType<*, *, MAIN, *, ELEMENT>
     ):
             List<ComputationElementResult<MAIN, ELEMENT>> {
-        val mapper = jacksonObjectMapper().registerModule(JavaTimeModule())
-        val elementType =
-            mapper.typeFactory.constructParametricType(ComputationElement::class.java, computationType.element)
-        val mainType =
-            mapper.typeFactory.constructParametricType(SliceComputationResult::class.java, computationType.main)
-        val results = mutableListOf<ComputationElementResult<MAIN, ELEMENT>>()
-        pool.resource.use { jedis ->
-            val elementKeys = jedis.keys(allElementsKey(jobId)).toTypedArray()
-            if (elementKeys.isNotEmpty()) {
-                jedis.mget(*elementKeys).forEach { elementValue ->
-                    val elementResults = mutableListOf<SliceComputationResult<MAIN>>()
-                    val element: ComputationElement<ELEMENT> = mapper.readValue(elementValue, elementType)
-                    val keys = jedis.keys(allResultsForElementKey(jobId, element.id)).toTypedArray()
-                    if (keys.isNotEmpty()) jedis.mget(*keys).forEach { value ->
-                        val main: SliceComputationResult<MAIN> = mapper.readValue(value, mainType)
-                        elementResults.add(main)
-                    }
-                    results.add(ComputationElementResult(element, elementResults.sortedBy { it.id }))
-                }
+        val serializers = PersistenceSerialization.of(computationType)
+        val fields = pool.resource.use { jedis ->
+            if (jedis.isLegacy(jobId)) {
+                jedis.fetchLegacyListFields(jobId)
+            } else {
+                jedis.hgetAll(listKey(jobId).toByteArray()).mapKeys { String(it.key) }
             }
         }
-        return results.sortedBy { it.element.id }
+        val elements = sortedMapOf<Int, ComputationElement<ELEMENT>>()
+        val elementResults = mutableMapOf<Int, MutableList<SliceComputationResult<MAIN>>>()
+        fields.forEach { (field, value) ->
+            if (field.startsWith(ELEMENT_FIELD_PREFIX)) {
+                val element: ComputationElement<ELEMENT> = serializers.element.read(value)
+                elements[element.id] = element
+            } else if (!field.startsWith(RESULT_IDS_FIELD_PREFIX)) {
+                val elementId = field.substringBefore(':').toInt()
+                val main: SliceComputationResult<MAIN> = serializers.main.read(value)
+                elementResults.computeIfAbsent(elementId) { mutableListOf() }.add(main)
+            }
+        }
+        return elements.map { (id, element) ->
+            ComputationElementResult(element, elementResults[id]?.sortedBy { it.id } ?: listOf())
+        }
+    }
+
+    override fun <MAIN, ELEMENT> fetchListResultPage(
+        jobId: String,
+        afterElementId: Int,
+        limit: Int,
+        computationType: ComputationType<*, *, MAIN, *, ELEMENT>
+    ): List<ComputationElementResult<MAIN, ELEMENT>> {
+        val serializers = PersistenceSerialization.of(computationType)
+        val key = listKey(jobId).toByteArray()
+        val (resultIds, values) = pool.resource.use { jedis ->
+            val elementIds = (1..limit).map { afterElementId + it }
+            val resultIds = elementIds
+                .zip(jedis.hmget(key, *elementIds.map { resultIdsField(it).toByteArray() }.toTypedArray()))
+                .takeWhile { it.second != null }
+                .associate { (id, ids) -> id to String(ids).split(',').filter(String::isNotEmpty).map(String::toInt) }
+            if (resultIds.isEmpty() &&
+                (jedis.isLegacy(jobId) || jedis.hexists(key, elementField(afterElementId + 1).toByteArray()))
+            ) {
+                // the job was stored without result IDs per element
+                return super.fetchListResultPage(jobId, afterElementId, limit, computationType)
+            }
+            val fields = resultIds.flatMap { (id, ids) ->
+                listOf(elementField(id)) + ids.map { listResultField(id, it) }
+            }
+            val values =
+                if (fields.isEmpty()) listOf() else jedis.hmget(key, *fields.map { it.toByteArray() }.toTypedArray())
+            Pair(resultIds, fields.zip(values).toMap())
+        }
+        return resultIds.mapNotNull { (id, ids) ->
+            val element = values[elementField(id)] ?: return@mapNotNull null
+            val results = ids.mapNotNull { values[listResultField(id, it)] }
+                .map { serializers.main.read<SliceComputationResult<MAIN>>(it) }
+            ComputationElementResult(serializers.element.read<ComputationElement<ELEMENT>>(element), results)
+        }
     }
 
     override fun <MAIN, ELEMENT> fetchListResponse(
@@ -254,32 +366,42 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
         computationType: ComputationType<*, *, *, *, ELEMENT>
     ):
             Result<ComputationElement<ELEMENT>> {
-        val mapper = jacksonObjectMapper().registerModule(JavaTimeModule())
-        val elementType =
-            mapper.typeFactory.constructParametricType(ComputationElement::class.java, computationType.element)
-        val key = elementKey(jobId, elementId)
         pool.resource.use { jedis ->
-            val res = jedis.get(key)
+            val res = jedis.hget(listKey(jobId).toByteArray(), elementField(elementId).toByteArray())
+                ?: jedis.get(legacyElementKey(jobId, elementId).toByteArray())
                 ?: return Result.failure(
                     PersistenceNotFoundException("No element for job ID $jobId and element ID $elementId")
                 )
-            return Result.success(mapper.readValue(res, elementType))
+            return Result.success(PersistenceSerialization.of(computationType).element.read(res))
         }
     }
 
     override fun storeSliceGroups(jobId: String, sliceSets: List<List<SliceDO>>): Map<SliceDO, Int> {
         val sliceMap = mutableMapOf<SliceDO, Int>()
-        pool.resource.use { jedis ->
-            var sliceGroupId = 1
-            sliceSets.forEach { set ->
-                val keyValues = mutableListOf<String>()
-                set.forEach { slice ->
-                    keyValues.add(sliceKey(jobId, slice))
-                    keyValues.add(sliceGroupId.toString())
-                    sliceMap[slice] = sliceGroupId
+        val sliceGroups = mutableMapOf<String, String>()
+        sliceSets.forEachIndexed { index, set ->
+            val sliceGroupId = index + 1
+            set.forEach { slice ->
+                sliceGroups[slice.uniqueKey()] = sliceGroupId.toString()
+                sliceMap[slice] = sliceGroupId
+            }
+        }
+        if (sliceGroups.isNotEmpty()) {
+            val type = fetchJobInfo(jobId).getOrNull()?.type
+            pool.resource.use { jedis ->
+                jedis.hset(sliceIndexKey(jobId), sliceGroups)
+                jedis.sadd(keyIndexKey(jobId), sliceIndexKey(jobId))
+                val bytes = sliceGroups.entries.sumOf { it.key.length + it.value.length }.toLong()
+                val formerBytes = jedis.hget(bytesIndexKey(), bytesField(jobId, SLICE))?.toLong() ?: 0L
+                jedis.hset(bytesIndexKey(), bytesField(jobId, SLICE), bytes.toString())
+                jedis.incrBy(totalBytesKey(), bytes - formerBytes)
+                if (type != null) jedis.hset(bytesIndexKey(), bytesField(jobId, TYPE), type)
+                jedis.zadd(usageKey(), System.currentTimeMillis().toDouble(), jobId)
+                val ttl = retention.ttl(type)
+                if (ttl.isPositive()) {
+                    jedis.pexpire(sliceIndexKey(jobId), ttl.inWholeMilliseconds)
+                    jedis.pexpire(keyIndexKey(jobId), ttl.inWholeMilliseconds)
                 }
-                jedis.mset(*keyValues.toTypedArray())
-                sliceGroupId++
             }
         }
         return sliceMap
@@ -287,37 +409,156 @@ class RedisComputationPersistence(private val pool: JedisPool) : ComputationPers
 
     override fun fetchSliceGroup(jobId: String, slice: SliceDO): Result<Int> =
         pool.resource.use { jedis ->
-            val keys = jedis.keys(sliceSearchKey(jobId, slice)).toTypedArray().sortedArray()
-            if (keys.isEmpty()) {
-                return Result.failure(
-                    PersistenceNotFoundException("No slice group for job ID $jobId and slice $slice")
-                )
+            val sliceGroup = if (jedis.isLegacy(jobId)) {
+                jedis.scanKeys(sliceSearchKey(jobId, slice)).minOrNull()?.let { jedis.get(it) }
+            } else {
+                // the slice is usually stored with exactly the requested properties, otherwise
+                // the first slice containing all requested properties is used
+                jedis.hget(sliceIndexKey(jobId), slice.uniqueKey())
+                    ?: jedis.hscanFields(sliceIndexKey(jobId), slice.searchKey()).minOrNull()
+                        ?.let { jedis.hget(sliceIndexKey(jobId), it) }
             }
-            val sliceGroup = jedis.get(keys[0])?.toInt()
-                ?: return Result.failure(
-                    PersistenceNotFoundException("No slice group for job ID $jobId and slice $slice")
-                )
-            return Result.success(sliceGroup)
+            return sliceGroup?.toInt()?.let { Result.success(it) } ?: Result.failure(
+                PersistenceNotFoundException("No slice group for job ID $jobId and slice $slice")
+            )
         }
 
-    override fun deleteComputation(jobId: String): Long {
+    override fun deleteComputation(jobId: String): Long = pool.resource.use { it.deleteComputation(jobId) }
+
+    override fun deleteAllComputations(): Long {
         var deleted = 0L
         pool.resource.use { jedis ->
-            deleted += jedis.del(requestKey(jobId))
-            deleted += jedis.del(jobKey(jobId))
-            val keys = jedis.keys(allResultKey(jobId)).toTypedArray()
-            if (keys.isNotEmpty()) deleted += jedis.del(*keys)
+            jedis.smembers(jobIndexKey()).forEach { deleted += jedis.deleteComputation(it) }
+            // jobs stored before the job index was introduced
+            jedis.scanKeys(allStatusKey()).forEach { deleted += jedis.deleteComputation(extractIdFromStatusKey(it)) }
+            jedis.del(totalBytesKey())
         }
         return deleted
     }
 
-    override fun deleteAllComputations(): Long {
+    /**
+     * Iterates all result keys with `SCAN` and deletes the jobs created by
+     * the given instance before the given time, so neither the Redis server
+     * nor other instances sharing it are blocked.  Results without a job and
+     * results of jobs whose time to live expired before the given time are
+     * deleted, too, but results whose job could not be read are kept.  The
+     * connection is only held for a single `SCAN` call, since fetching and
+     * deleting the jobs of a page require connections of their own.
+     */
+    override fun deleteComputations(instance: String?, createdBefore: LocalDateTime, progress: CleanupProgress): Long {
         var deleted = 0L
+        val checkedJobs = HashSet<String>()
+        val params = ScanParams().match(allResultKey(ANY)).count(SCAN_COUNT)
+        var cursor = ScanParams.SCAN_POINTER_START
+        do {
+            val page = pool.resource.use { it.scan(cursor, params) }
+            val jobIds = page.result.map { it.split(':')[1] }.filter { it != INDEX && checkedJobs.add(it) }
+            jobIds.forEach { jobId ->
+                progress.scannedJobs.incrementAndGet()
+                val deletable = fetchJobInfo(jobId).fold(
+                    { job ->
+                        job.createdAt.isBefore(createdBefore) &&
+                                (job.createdBy == instance || isExpired(job, createdBefore))
+                    },
+                    { it is PersistenceNotFoundException }
+                )
+                if (deletable) {
+                    val entries = deleteComputation(jobId)
+                    deleted += entries
+                    progress.deletedJobs.incrementAndGet()
+                    progress.deletedEntries.addAndGet(entries)
+                }
+            }
+            cursor = page.cursor
+        } while (cursor != ScanParams.SCAN_POINTER_START)
+        return deleted
+    }
+
+    private fun isExpired(job: Job, now: LocalDateTime): Boolean {
+        val ttl = retention.ttl(job.type)
+        return ttl.isPositive() && job.createdAt.isBefore(now.minus(ttl.toJavaDuration()))
+    }
+
+    override fun storedBytes(): Map<String, Long> = pool.resource.use { jedis ->
+        jedis.fetchStoredJobs().values.groupBy({ it.first }, { it.second }).mapValues { it.value.sum() }
+    }
+
+    /**
+     * Evicts the least recently used jobs until the stored data do not exceed
+     * the maximum size of the retention.  The given job is never evicted.
+     *
+     * Nothing is scanned as long as the running total does not exceed the
+     * maximum size.  Otherwise, the least recently used jobs are fetched in
+     * batches and deleted until the running total is small enough.  If all
+     * jobs but the given one were evicted and the total still exceeds the
+     * maximum, e.g. because of concurrent deletions of the same job, the
+     * total is recomputed.
+     */
+    internal fun evictLeastRecentlyUsed(keepJobId: String) {
+        if (retention.maxSize <= 0) return
         pool.resource.use { jedis ->
-            jedis.keys(allStatusKey()).forEach { deleted += deleteComputation(extractIdFromStatusKey(it)) }
+            var kept = 0L
+            while (jedis.totalBytes() > retention.maxSize) {
+                val candidates = jedis.zrange(usageKey(), kept, kept + EVICTION_BATCH_SIZE - 1)
+                if (candidates.isEmpty()) {
+                    jedis.recomputeTotalBytes()
+                    return
+                }
+                for (jobId in candidates) {
+                    if (jobId == keepJobId) {
+                        kept++
+                    } else if (jedis.totalBytes() > retention.maxSize) {
+                        logger.info("Evicting job $jobId to keep the stored results below ${retention.maxSize} bytes")
+                        jedis.deleteComputation(jobId)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun Jedis.deleteComputation(jobId: String): Long {
+        val keys = if (isLegacy(jobId)) {
+            scanKeys(allResultKey(jobId))
+        } else {
+            smembers(keyIndexKey(jobId)) + keyIndexKey(jobId)
         }
+        // UNLINK frees the memory in the background, so large jobs do not block the Redis server
+        val deleted = (listOf(requestKey(jobId), jobKey(jobId)) + keys).chunked(DELETE_BATCH_SIZE)
+            .sumOf { unlink(*it.toTypedArray()) }
+        removeFromGlobalIndices(jobId)
         return deleted
     }
+
+    private fun Jedis.totalBytes() = get(totalBytesKey())?.toLong() ?: 0L
+
+    private fun Jedis.recomputeTotalBytes() {
+        set(totalBytesKey(), fetchStoredJobs().values.sumOf { it.second }.toString())
+    }
+
+    /**
+     * Returns the computation type and the stored bytes of all jobs.  Jobs
+     * whose data expired are removed from the global indices.
+     */
+    private fun Jedis.fetchStoredJobs(): Map<String, Pair<String, Long>> {
+        val fields = hgetAll(bytesIndexKey())
+        val jobIds = fields.keys.map { it.substringBeforeLast(':') }.distinct()
+        val exists = pipelined().use { pipeline ->
+            val responses = jobIds.map { pipeline.exists(keyIndexKey(it)) }
+            pipeline.sync()
+            responses.map { it.get() }
+        }
+        val jobs = mutableMapOf<String, Pair<String, Long>>()
+        jobIds.zip(exists).forEach { (jobId, exists) ->
+            if (exists) {
+                val type = fields[bytesField(jobId, TYPE)] ?: UNKNOWN_TYPE
+                val bytes = listOf(RESULT, DETAIL, SLICE).sumOf { fields[bytesField(jobId, it)]?.toLong() ?: 0L }
+                jobs[jobId] = Pair(type, bytes)
+            } else {
+                removeFromGlobalIndices(jobId)
+            }
+        }
+        return jobs
+    }
 }
 
 internal class BooleRulesRedisPersistence<
@@ -329,6 +570,9 @@ internal class BooleRulesRedisPersistence<
     inputSerializer: (REQUEST) -> ByteArray,
     inputDeserializer: (ByteArray) -> REQUEST,
     private val computationType: ComputationType<REQUEST, *, MAIN, *, ELEMENT>,
+    private val encoding: PersistenceEncoding,
+    private val retention: RetentionConfig,
+    private val evict: (String) -> Unit,
     configuration: RedisConfig
 ) : RedisDataPersistence<REQUEST, RESULT>(
     pool,
@@ -342,20 +586,35 @@ internal class BooleRulesRedisPersistence<
 
     override suspend fun <T> dataTransaction(
         block: suspend DataTransactionalPersistence<REQUEST, RESULT>.() -> T
-    ): PersistenceAccessResult<T> =
-        pool.resource.use { jedis ->
+    ): PersistenceAccessResult<T> {
+        val storedJobs = mutableListOf<String>()
+        val result = pool.resource.use { jedis ->
             jedis.multi().run {
                 runCatching {
                     BooleRulesRedisDataTransactionalPersistence<MAIN, REQUEST, RESULT>(
                         this@run,
                         inputSerializer,
+                        PersistenceSerialization.of(computationType),
+                        encoding,
+                        computationType.path,
+                        retention,
                         config
-                    )
-                        .run { block() }
-                        .also { exec() }
+                    ).run {
+                        block().also {
+                            exec()
+                            // the size of a replaced result was added to the running total again
+                            val replacedBytes = formerResultBytes.sumOf { it.get()?.toLong() ?: 0L }
+                            if (replacedBytes > 0) jedis.decrBy(totalBytesKey(), replacedBytes)
+                            storedJobs.addAll(persistedJobs)
+                        }
+                    }
                 }.getOrElse { exception -> return handleTransactionException(exception) }
             }
-        }.let { Either.Right(it) }
+        }
+        // the eviction uses its own connection, so the connection of the transaction is returned first
+        storedJobs.forEach(evict)
+        return Either.Right(result)
+    }
 
     @Suppress("UNCHECKED_CAST")
     override suspend fun fetchResult(uuid: String): PersistenceAccessResult<RESULT> {
@@ -383,37 +642,82 @@ internal class BooleRulesRedisPersistence<
 internal class BooleRulesRedisDataTransactionalPersistence<MAIN, REQUEST, RESULT : ComputationResponse<MAIN>>(
     transaction: Transaction,
     inputSerializer: (REQUEST) -> ByteArray,
+    private val serializers: ComputationSerializers,
+    private val encoding: PersistenceEncoding,
+    private val computationType: String,
+    private val retention: RetentionConfig,
     config: RedisConfig
 ) : RedisDataTransactionalPersistence<REQUEST, RESULT>(transaction, inputSerializer, { error("never call") }, config) {
-    private val serializer = jacksonObjectMapper().registerModule(JavaTimeModule())::writeValueAsBytes
+    private val statusCodec = PersistenceSerialization.status
+
+    /**
+     * The IDs of all jobs whose result was stored in this transaction.
+     */
+    val persistedJobs = mutableListOf<String>()
+
+    /**
+     * The sizes of the results replaced in this transaction, available after
+     * the transaction was executed.
+     */
+    val formerResultBytes = mutableListOf<Response<String>>()
 
     override suspend fun persistOrUpdateResult(job: Job, result: RESULT): PersistenceAccessResult<Unit> {
+        val jobId = job.uuid
+        val keys = mutableListOf(statusKey(jobId))
+        var bytes = 0L
         when (result) {
             is SingleComputationResponse<*> -> {
-                transaction.set(statusKey(job.uuid).toByteArray(), serializer(result.status))
+                val status = statusCodec.write(result.status, encoding)
+                transaction.set(statusKey(jobId).toByteArray(), status)
+                bytes += status.size
+                keys.add(singleIndexKey(jobId))
                 result.results.forEach {
-                    transaction.set(
-                        singleResultKey(job.uuid, it.id).toByteArray(),
-                        serializer(it)
-                    )
+                    val main = serializers.main.write(it, encoding)
+                    transaction.set(singleResultKey(jobId, it.id).toByteArray(), main)
+                    transaction.zadd(singleIndexKey(jobId), it.id.toDouble(), it.id.toString())
+                    keys.add(singleResultKey(jobId, it.id))
+                    bytes += main.size
                 }
             }
             is ListComputationResponse<*, *> -> {
-                transaction.set(statusKey(job.uuid).toByteArray(), serializer(result.status))
+                val status = statusCodec.write(result.status, encoding)
+                transaction.set(statusKey(jobId).toByteArray(), status)
+                bytes += status.size
+                val fields = HashMap<ByteArray, ByteArray>()
                 result.results.forEach { elementResult ->
-                    transaction.set(
-                        elementKey(job.uuid, elementResult.element.id).toByteArray(),
-                        serializer(elementResult.element)
-                    )
+                    val elementId = elementResult.element.id
+                    fields[elementField(elementId).toByteArray()] =
+                        serializers.element.write(elementResult.element, encoding)
                     elementResult.results.forEach {
-                        transaction.set(
-                            listResultKey(job.uuid, elementResult.element.id, it.id).toByteArray(),
-                            serializer(it)
-                        )
+                        fields[listResultField(elementId, it.id).toByteArray()] = serializers.main.write(it, encoding)
                     }
+                    // the result IDs allow to fetch a page of elements without reading the whole list
+                    fields[resultIdsField(elementId).toByteArray()] =
+                        elementResult.results.joinToString(",") { it.id.toString() }.toByteArray()
                 }
+                // an update replaces all elements and results of the job
+                transaction.del(listKey(jobId))
+                if (fields.isNotEmpty()) transaction.hset(listKey(jobId).toByteArray(), fields)
+                keys.add(listKey(jobId))
+                bytes += fields.byteSize()
             }
         }
+        transaction.sadd(keyIndexKey(jobId), *keys.toTypedArray())
+        transaction.sadd(jobIndexKey(), jobId)
+        formerResultBytes.add(transaction.hget(bytesIndexKey(), bytesField(jobId, RESULT)))
+        transaction.hset(
+            bytesIndexKey(),
+            mapOf(bytesField(jobId, RESULT) to bytes.toString(), bytesField(jobId, TYPE) to computationType)
+        )
+        transaction.incrBy(totalBytesKey(), bytes)
+        transaction.zadd(usageKey(), System.currentTimeMillis().toDouble(), jobId)
+        val ttl = retention.ttl(computationType)
+        if (ttl.isPositive()) {
+            // details and slice groups are stored before the result, so their expiration is renewed, too
+            (keys + listOf(detailKey(jobId), sliceIndexKey(jobId), keyIndexKey(jobId)))
+                .forEach { transaction.pexpire(it, ttl.inWholeMilliseconds) }
+        }
+        persistedJobs.add(jobId)
         return PersistenceAccessResult.success
     }
 }
@@ -429,7 +733,21 @@ private const val ELEMENT = "element"
 private const val SLICE = "slice"
 private const val DETAIL = "detail"
 private const val JOB = "job"
+private const val INDEX = "index"
+private const val KEYS = "keys"
+private const val JOBS = "jobs"
+private const val BYTES = "bytes"
+private const val USED = "used"
+private const val TOTAL = "total"
+private const val TYPE = "type"
+private const val IDS = "ids"
 private const val ANY = "*"
+private const val SCAN_COUNT = 1000
+private const val DELETE_BATCH_SIZE = 1000
+private const val EVICTION_BATCH_SIZE = 100
+private const val FETCH_BATCH_SIZE = 1000
+private const val ELEMENT_FIELD_PREFIX = "$ELEMENT:"
+private const val RESULT_IDS_FIELD_PREFIX = "$IDS:"
 
 private fun statusKey(jobId: String) = "$RESULT:$jobId:$STATUS"
 private fun requestKey(jobId: String) = "$INPUT:$jobId"
@@ -437,17 +755,111 @@ private fun requestKey(jobId: String) = "$INPUT:$jobId"
 private fun singleResultKey(jobId: String, id: Int) = "$RESULT:$jobId:$SINGLE:$id"
 private fun allSingleResultsKey(jobId: String) = "$RESULT:$jobId:$SINGLE:$ANY"
 
-private fun listResultKey(jobId: String, elementId: Int, id: Int) = "$RESULT:$jobId:$LIST:$elementId:$id"
-private fun elementKey(jobId: String, elementId: Int) = "$RESULT:$jobId:$ELEMENT:$elementId"
-private fun allElementsKey(jobId: String) = "$RESULT:$jobId:$ELEMENT:$ANY"
-private fun allResultsForElementKey(jobId: String, elementId: Int) = "$RESULT:$jobId:$LIST:$elementId:$ANY"
+private fun listKey(jobId: String) = "$RESULT:$jobId:$LIST"
+private fun elementField(elementId: Int) = "$ELEMENT_FIELD_PREFIX$elementId"
+private fun listResultField(elementId: Int, id: Int) = "$elementId:$id"
+private fun resultIdsField(elementId: Int) = "$RESULT_IDS_FIELD_PREFIX$elementId"
+
+private fun detailKey(jobId: String) = "$RESULT:$jobId:$DETAIL"
+private fun detailField(sliceGroupId: Int, elementId: Int?) =
+    "$sliceGroupId${if (elementId != null) ":$elementId" else ""}"
+
+// keys of jobs stored by an older version with one key per element, result, and detail
+private fun legacyListResultKey(jobId: String, elementId: Int, id: Int) =
+    "$RESULT:$jobId:$LIST:${listResultField(elementId, id)}"
+private fun legacyElementKey(jobId: String, elementId: Int) = "$RESULT:$jobId:${elementField(elementId)}"
+private fun legacyDetailKey(jobId: String, sliceGroupId: Int, elementId: Int?) =
+    "$RESULT:$jobId:$DETAIL:${detailField(sliceGroupId, elementId)}"
+private fun allLegacyElementsKey(jobId: String) = "$RESULT:$jobId:$ELEMENT:$ANY"
+private fun allLegacyListResultsKey(jobId: String) = "$RESULT:$jobId:$LIST:$ANY"
 
 private fun sliceSearchKey(jobId: String, slice: SliceDO) = "$RESULT:$jobId:$SLICE:${slice.searchKey()}"
-private fun sliceKey(jobId: String, slice: SliceDO) = "$RESULT:$jobId:$SLICE:${slice.uniqueKey()}"
-private fun detailKey(jobId: String, sliceGroupId: Int, elementId: Int?) =
-    "$RESULT:$jobId:$DETAIL:$sliceGroupId${if (elementId != null) ":$elementId" else ""}"
+
+private fun keyIndexKey(jobId: String) = "$RESULT:$jobId:$INDEX:$KEYS"
+private fun singleIndexKey(jobId: String) = "$RESULT:$jobId:$INDEX:$SINGLE"
+private fun sliceIndexKey(jobId: String) = "$RESULT:$jobId:$INDEX:$SLICE"
+private fun jobIndexKey() = "$RESULT:$INDEX:$JOBS"
+private fun bytesIndexKey() = "$RESULT:$INDEX:$BYTES"
+private fun bytesField(jobId: String, part: String) = "$jobId:$part"
+private fun totalBytesKey() = "$RESULT:$INDEX:$BYTES:$TOTAL"
+private fun usageKey() = "$RESULT:$INDEX:$USED"
 
 private fun jobKey(jobId: String) = "$JOB:$jobId"
 private fun allResultKey(jobId: String) = "$RESULT:$jobId:$ANY"
 private fun allStatusKey() = "$RESULT:$ANY:$STATUS"
 private fun extractIdFromStatusKey(key: String) = key.substring(RESULT.length + 1, key.length - STATUS.length - 1)
+
+/**
+ * Returns whether the given job was stored by an older version without its
+ * index structures.  The status is always stored together with the index,
+ * so a status without an index is the evidence of such a job.  Unknown
+ * jobs, running jobs, and expired jobs are not legacy jobs, so they are
+ * never searched with `SCAN`.
+ */
+private fun Jedis.isLegacy(jobId: String) = !exists(keyIndexKey(jobId)) && exists(statusKey(jobId))
+
+/**
+ * Removes the given job from the job index, the size index, and the usage
+ * index and subtracts its size from the running total.  The total is removed
+ * if no data are left.
+ */
+private fun Jedis.removeFromGlobalIndices(jobId: String) {
+    srem(jobIndexKey(), jobId)
+    val sizeFields = listOf(RESULT, DETAIL, SLICE).map { bytesField(jobId, it) }
+    val bytes = hmget(bytesIndexKey(), *sizeFields.toTypedArray()).sumOf { it?.toLong() ?: 0L }
+    hdel(bytesIndexKey(), *(sizeFields + bytesField(jobId, TYPE)).toTypedArray())
+    if (bytes > 0 && decrBy(totalBytesKey(), bytes) <= 0) del(totalBytesKey())
+    zrem(usageKey(), jobId)
+}
+
+private fun Map<ByteArray, ByteArray>.byteSize() = entries.sumOf { it.key.size + it.value.size }.toLong()
+
+/**
+ * Returns the elements and results of a list computation stored by an older
+ * version in the same format as the fields of the list hash.  The values of
+ * all keys are fetched in a single pipeline.
+ */
+private fun Jedis.fetchLegacyListFields(jobId: String): Map<String, ByteArray> {
+    val elementKeys = scanKeys(allLegacyElementsKey(jobId))
+    val resultKeys = scanKeys(allLegacyListResultsKey(jobId))
+    val fields = elementKeys.map { it.removePrefix("$RESULT:$jobId:") } +
+            resultKeys.map { it.removePrefix("$RESULT:$jobId:$LIST:") }
+    val values = pipelined().use { pipeline ->
+        val responses = (elementKeys + resultKeys).chunked(FETCH_BATCH_SIZE)
+            .map { keys -> pipeline.mget(*keys.map { it.toByteArray() }.toTypedArray()) }
+        pipeline.sync()
+        responses.flatMap { it.get() }
+    }
+    return fields.zip(values).filter { it.second != null }.toMap()
+}
+
+/**
+ * Returns all keys matching the given pattern.  In contrast to `KEYS`, this
+ * iterates the key space with `SCAN` and does not block the Redis server.
+ */
+internal fun Jedis.scanKeys(pattern: String): List<String> {
+    val params = ScanParams().match(pattern).count(SCAN_COUNT)
+    val keys = LinkedHashSet<String>()
+    var cursor = ScanParams.SCAN_POINTER_START
+    do {
+        val result = scan(cursor, params)
+        keys.addAll(result.result)
+        cursor = result.cursor
+    } while (cursor != ScanParams.SCAN_POINTER_START)
+    return keys.toList()
+}
+
+/**
+ * Returns all fields of the given hash matching the given pattern.
+ */
+private fun Jedis.hscanFields(key: String, pattern: String): List<String> {
+    val params = ScanParams().match(pattern).count(SCAN_COUNT)
+    val fields = LinkedHashSet<String>()
+    var cursor = ScanParams.SCAN_POINTER_START
+    do {
+        val result = hscan(key, cursor, params)
+        result.result.forEach { fields.add(it.key) }
+        cursor = result.cursor
+    } while (cursor != ScanParams.SCAN_POINTER_START)
+    return fields.toList()
+}
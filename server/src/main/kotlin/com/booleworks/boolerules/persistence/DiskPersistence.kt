@@ -0,0 +1,66 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.rulefile.UploadSummaryDO
+import java.io.InputStream
+import java.nio.ByteBuffer
+
+private const val RULEFILE_PREFIX = "rulefile:"
+private const val SUMMARY_PREFIX = "summary:"
+
+/**
+ * The persistence for rule files on local disk.  Rule files and their
+ * summaries are stored in the given segment store and therefore survive
+ * restarts of the service.  Computations are not stored on disk, the disk
+ * persistence type keeps them in memory.
+ */
+class DiskRulefilePersistence(private val store: SegmentStore) : RulefilePersistence {
+
+    override fun storeRuleFile(ruleFileId: String, bytes: ByteArray, uploadSummary: UploadSummaryDO) {
+        // the summary is written last, so a rule file is only listed if its content was stored
+        store.put(RULEFILE_PREFIX + ruleFileId, bytes)
+        store.put(SUMMARY_PREFIX + ruleFileId, PersistenceSerialization.summaryWriter.writeValueAsBytes(uploadSummary))
+    }
+
+    override fun getBinaryRuleFile(ruleFileId: String): Result<ByteArray> =
+        store.getBytes(RULEFILE_PREFIX + ruleFileId)?.let { Result.success(it) }
+            ?: Result.failure(PersistenceNotFoundException("No rule file for ID $ruleFileId"))
+
+    override fun openBinaryRuleFile(ruleFileId: String): Result<InputStream> =
+        store[RULEFILE_PREFIX + ruleFileId]?.let { Result.success(ByteBufferInputStream(it)) }
+            ?: Result.failure(PersistenceNotFoundException("No rule file for ID $ruleFileId"))
+
+    override fun getSummary(ruleFileId: String): Result<UploadSummaryDO> =
+        store.getBytes(SUMMARY_PREFIX + ruleFileId)
+            ?.let { Result.success(PersistenceSerialization.summaryReader.readValue<UploadSummaryDO>(it)) }
+            ?: Result.failure(PersistenceNotFoundException("No rule file summary for ID $ruleFileId"))
+
+    override fun deleteRuleFile(ruleFileId: String): Boolean {
+        val deleted = store.delete(SUMMARY_PREFIX + ruleFileId)
+        return store.delete(RULEFILE_PREFIX + ruleFileId) || deleted
+    }
+
+    override fun getAllSummaries() = store.keys(SUMMARY_PREFIX).mapNotNull { key ->
+        store.getBytes(key)?.let { PersistenceSerialization.summaryReader.readValue<UploadSummaryDO>(it) }
+    }
+}
+
+/**
+ * An input stream on a byte buffer, which reads the mapped segment file
+ * directly instead of copying it into a byte array first.
+ */
+private class ByteBufferInputStream(private val buffer: ByteBuffer) : InputStream() {
+    override fun read() = if (buffer.hasRemaining()) buffer.get().toInt() and 0xFF else -1
+
+    override fun read(bytes: ByteArray, offset: Int, length: Int): Int {
+        if (length == 0) return 0
+        if (!buffer.hasRemaining()) return -1
+        val count = minOf(length, buffer.remaining())
+        buffer.get(bytes, offset, count)
+        return count
+    }
+
+    override fun available() = buffer.remaining()
+}
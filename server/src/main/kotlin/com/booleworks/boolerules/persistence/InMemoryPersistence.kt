@@ -0,0 +1,525 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.computations.ComputationType
+import com.booleworks.boolerules.computations.generic.ComputationDetail
+import com.booleworks.boolerules.computations.generic.ComputationElement
+import com.booleworks.boolerules.computations.generic.ComputationElementResult
+import com.booleworks.boolerules.computations.generic.ComputationRequest
+import com.booleworks.boolerules.computations.generic.ComputationResponse
+import com.booleworks.boolerules.computations.generic.ComputationStatus
+import com.booleworks.boolerules.computations.generic.ComputationVariant
+import com.booleworks.boolerules.computations.generic.ListComputationResponse
+import com.booleworks.boolerules.computations.generic.SingleComputationResponse
+import com.booleworks.boolerules.computations.generic.SliceComputationResult
+import com.booleworks.boolerules.computations.generic.SliceDO
+import com.booleworks.boolerules.computations.generic.SplitComputationDetail
+import com.booleworks.boolerules.rulefile.UploadSummaryDO
+import com.booleworks.kjobs.api.persistence.DataPersistence
+import com.booleworks.kjobs.api.persistence.DataTransactionalPersistence
+import com.booleworks.kjobs.api.persistence.hashmap.HashMapDataPersistence
+import com.booleworks.kjobs.api.persistence.hashmap.HashMapJobPersistence
+import com.booleworks.kjobs.common.getOrElse
+import com.booleworks.kjobs.data.Job
+import com.booleworks.kjobs.data.PersistenceAccessResult
+import com.booleworks.kjobs.data.notFound
+import com.booleworks.kjobs.data.result
+import com.booleworks.kjobs.data.success
+import kotlinx.coroutines.runBlocking
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.math.BigInteger
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The in-memory persistence for rule files.  Rule files are kept until they
+ * are deleted, they are neither expired nor evicted.
+ */
+class InMemoryRulefilePersistence : RulefilePersistence {
+    private val ruleFiles = ConcurrentHashMap<String, Pair<ByteArray, UploadSummaryDO>>()
+
+    override fun storeRuleFile(ruleFileId: String, bytes: ByteArray, uploadSummary: UploadSummaryDO) {
+        ruleFiles[ruleFileId] = Pair(bytes, uploadSummary)
+    }
+
+    override fun getBinaryRuleFile(ruleFileId: String): Result<ByteArray> =
+        ruleFiles[ruleFileId]?.let { Result.success(it.first) }
+            ?: Result.failure(PersistenceNotFoundException("No rule file for ID $ruleFileId"))
+
+    override fun getSummary(ruleFileId: String): Result<UploadSummaryDO> =
+        ruleFiles[ruleFileId]?.let { Result.success(it.second) }
+            ?: Result.failure(PersistenceNotFoundException("No rule file summary for ID $ruleFileId"))
+
+    override fun deleteRuleFile(ruleFileId: String) = ruleFiles.remove(ruleFileId) != null
+
+    override fun getAllSummaries() = ruleFiles.values.map { it.second }
+}
+
+/**
+ * The in-memory persistence for computations of a single-node deployment.
+ *
+ * The results, details, and slice groups of each job are stored as objects,
+ * so neither network round trips nor deserialization is required.  Jobs and
+ * requests are stored by the kjobs hash map persistence given as [jobs].
+ *
+ * The computation data of a job expire after the time to live of its
+ * computation type given by the [retention].  If the estimated size of all
+ * stored computations exceeds the maximum size of the [retention], the
+ * oldest jobs are evicted.  The size of a computation is estimated by
+ * the structure of its results, details, and slice groups.  Expired
+ * and evicted jobs are deleted from the kjobs persistence as well, but since
+ * the data are usually stored within a kjobs transaction, these deletions are
+ * deferred until the next call of [expire].
+ */
+class InMemoryComputationPersistence(
+    private val jobs: HashMapJobPersistence,
+    retention: RetentionConfig = RetentionConfig(),
+    clock: () -> Long = System::currentTimeMillis
+) : ComputationPersistence {
+    private val removedJobs = ConcurrentLinkedQueue<String>()
+    private val computations = ExpiringStore<StoredComputation>(retention, clock, removedJobs::add)
+    private val dataPersistences = ConcurrentHashMap<ComputationType<*, *, *, *, *>, InMemoryDataPersistence<*, *>>()
+
+    override fun fetchJobInfo(jobId: String): Result<Job> {
+        val job = runBlocking { jobs.fetchJob(jobId) }.getOrElse {
+            return Result.failure(PersistenceNotFoundException("No Job for job ID $jobId"))
+        }
+        return Result.success(job)
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun <REQUEST : ComputationRequest, RESPONSE, MAIN, ELEMENT> dataPersistence(
+        computationType: ComputationType<REQUEST, RESPONSE, MAIN, *, ELEMENT>
+    ): DataPersistence<REQUEST, ComputationResponse<MAIN>> = dataPersistences.computeIfAbsent(computationType) {
+        val delegate = HashMapDataPersistence<REQUEST, ComputationResponse<MAIN>>(jobs)
+        InMemoryDataPersistence(delegate, computationType.path, this)
+    } as DataPersistence<REQUEST, ComputationResponse<MAIN>>
+
+    override fun <DETAIL : ComputationDetail> storeDetails(
+        jobId: String,
+        details: Map<Int, List<SplitComputationDetail<DETAIL>>>,
+        sliceMap: Map<SliceDO, Int>,
+        elementId: Int?
+    ) {
+        val computation = computation(jobId)
+        var sizeChange = 0L
+        details.forEach { (id, ds) ->
+            ds.forEach { d ->
+                d.resultId = id
+                d.elementId = elementId
+                val key = Pair(sliceMap[d.slice] ?: 0, elementId)
+                computation.details[key] = d
+                sizeChange += computation.resize(key, estimatedSize(d))
+            }
+        }
+        computations.addSize(jobId, sizeChange)
+    }
+
+    override fun fetchStatus(jobId: String): Result<ComputationStatus> =
+        computations[jobId]?.status?.let { Result.success(it) }
+            ?: Result.failure(PersistenceNotFoundException("No status for job ID $jobId"))
+
+    @Suppress("UNCHECKED_CAST")
+    override fun <DETAIL : ComputationDetail> fetchDetail(
+        jobId: String,
+        slice: SliceDO,
+        elementId: Int?,
+        computationType: ComputationType<*, *, *, DETAIL, *>
+    ): Result<SplitComputationDetail<DETAIL>> {
+        val sliceGroup = fetchSliceGroup(jobId, slice).getOrElse { return Result.failure(it) }
+        val detail = computations[jobId]?.details?.get(Pair(sliceGroup, elementId))
+            ?: return Result.failure(
+                PersistenceNotFoundException("No detail for job ID $jobId, slice $slice, and element ID $elementId")
+            )
+        return Result.success(detail as SplitComputationDetail<DETAIL>)
+    }
+
+    override fun <REQUEST : ComputationRequest> fetchConstraints(
+        jobId: String,
+        computationType: ComputationType<REQUEST, *, *, *, *>
+    ): Result<REQUEST> {
+        val request = runBlocking { dataPersistence(computationType).fetchInput(jobId) }.getOrElse {
+            return Result.failure(PersistenceNotFoundException("No request for job ID $jobId"))
+        }
+        return Result.success(request)
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun <MAIN> fetchMainResult(
+        jobId: String,
+        resultId: Int,
+        elementId: Int?,
+        computationType: ComputationType<*, *, MAIN, *, *>
+    ): Result<SliceComputationResult<MAIN>> {
+        val computation = computations[jobId]
+        val result = if (elementId == null) {
+            computation?.singleResults?.find { it.id == resultId }
+        } else {
+            computation?.listResults?.find { it.element.id == elementId }?.results?.find { it.id == resultId }
+        } ?: return Result.failure(
+            PersistenceNotFoundException("No detail for job ID $jobId, result ID $resultId, and element ID $elementId")
+        )
+        return Result.success(result as SliceComputationResult<MAIN>)
+    }
+
+    override fun <MAIN> fetchSingleResponse(
+        jobId: String,
+        computationType: ComputationType<*, *, MAIN, *, *>
+    ): Result<SingleComputationResponse<MAIN>> {
+        val status = fetchStatus(jobId).getOrElse { return Result.failure(it) }
+        return Result.success(SingleComputationResponse(status, fetchSingleResults(jobId, computationType)))
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun <MAIN> fetchSingleResults(
+        jobId: String,
+        computationType: ComputationType<*, *, MAIN, *, *>
+    ): List<SliceComputationResult<MAIN>> =
+        (computations[jobId]?.singleResults ?: listOf()) as List<SliceComputationResult<MAIN>>
+
+    @Suppress("UNCHECKED_CAST")
+    override fun <MAIN, ELEMENT> fetchListResults(
+        jobId: String,
+        computationType: ComputationType<*, *, MAIN, *, ELEMENT>
+    ): List<ComputationElementResult<MAIN, ELEMENT>> =
+        (computations[jobId]?.listResults ?: listOf()) as List<ComputationElementResult<MAIN, ELEMENT>>
+
+    override fun <MAIN, ELEMENT> fetchListResponse(
+        jobId: String,
+        computationType: ComputationType<*, *, MAIN, *, ELEMENT>
+    ): Result<ListComputationResponse<MAIN, ELEMENT>> {
+        val status = fetchStatus(jobId).getOrElse { return Result.failure(it) }
+        return Result.success(ListComputationResponse(status, fetchListResults(jobId, computationType)))
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun <ELEMENT> fetchElement(
+        jobId: String,
+        elementId: Int,
+        computationType: ComputationType<*, *, *, *, ELEMENT>
+    ): Result<ComputationElement<ELEMENT>> =
+        computations[jobId]?.listResults?.find { it.element.id == elementId }
+            ?.let { Result.success(it.element as ComputationElement<ELEMENT>) }
+            ?: Result.failure(PersistenceNotFoundException("No element for job ID $jobId and element ID $elementId"))
+
+    override fun storeSliceGroups(jobId: String, sliceSets: List<List<SliceDO>>): Map<SliceDO, Int> {
+        val computation = computation(jobId)
+        val sliceMap = mutableMapOf<SliceDO, Int>()
+        var sizeChange = 0L
+        sliceSets.forEachIndexed { index, set ->
+            val sliceGroupId = index + 1
+            set.forEach { slice ->
+                val key = slice.uniqueKey()
+                computation.sliceGroups[key] = Pair(slice.propertyKeys(), sliceGroupId)
+                sliceMap[slice] = sliceGroupId
+                sizeChange += computation.resize(key, estimatedSize(slice))
+            }
+        }
+        computations.addSize(jobId, sizeChange)
+        return sliceMap
+    }
+
+    override fun fetchSliceGroup(jobId: String, slice: SliceDO): Result<Int> {
+        val sliceGroups = computations[jobId]?.sliceGroups
+        // like in the Redis persistence, the first slice containing all requested properties is used
+        // if there is no slice with exactly the requested properties
+        val sliceGroup = sliceGroups?.get(slice.uniqueKey())?.second ?: sliceGroups?.let { groups ->
+            val properties = slice.propertyKeys()
+            groups.filter { it.value.first.containsAll(properties) }.minByOrNull { it.key }?.value?.second
+        }
+        return sliceGroup?.let { Result.success(it) } ?: Result.failure(
+            PersistenceNotFoundException("No slice group for job ID $jobId and slice $slice")
+        )
+    }
+
+    override fun deleteComputation(jobId: String): Long {
+        deleteJob(jobId)
+        return if (computations.remove(jobId) != null) 1L else 0L
+    }
+
+    override fun deleteAllComputations(): Long {
+        val deleted = computations.clear()
+        deleted.forEach(::deleteJob)
+        return deleted.size.toLong()
+    }
+
+    override fun storedBytes() = computations.sizesByType()
+
+    /**
+     * Removes the expired computations and deletes the jobs of all expired
+     * and evicted computations from the kjobs persistence.  This is called
+     * periodically, so that computations expire even if they are never
+     * accessed again.
+     */
+    fun expire() {
+        computations.expire()
+        while (true) {
+            deleteJob(removedJobs.poll() ?: break)
+        }
+    }
+
+    private fun deleteJob(jobId: String) {
+        val persistencesPerType = dataPersistences.entries.associate { (type, persistence) ->
+            type.path to persistence.delegate
+        }
+        runBlocking { jobs.transaction { deleteForUuid(jobId, persistencesPerType) } }
+    }
+
+    /**
+     * Returns the stored computation for the given job ID.  A new computation
+     * expires after the time to live of the given computation type or of the
+     * type of its job if no type is given.
+     */
+    private fun computation(jobId: String, type: String? = null) = computations.getOrPut(
+        jobId,
+        { type ?: fetchJobInfo(jobId).getOrNull()?.type }
+    ) { StoredComputation() }
+
+    /**
+     * Stores the result of a computation of the given type.  An update
+     * replaces all former results of the job.  The results are stored sorted
+     * by their IDs.
+     */
+    internal fun storeResult(jobId: String, type: String, result: ComputationResponse<*>) {
+        val computation = computation(jobId, type)
+        var size = estimatedSize(result.status)
+        when (result) {
+            is SingleComputationResponse<*> -> {
+                computation.status = result.status
+                computation.singleResults = result.results.sortedBy { it.id }
+                size += result.results.sumOf { estimatedSize(it) }
+            }
+            is ListComputationResponse<*, *> -> {
+                computation.status = result.status
+                computation.listResults = result.results.sortedBy { it.element.id }
+                    .map { ComputationElementResult(it.element, it.results.sortedBy { r -> r.id }) }
+                size += result.results.sumOf { element ->
+                    estimatedSize(element.element) + element.results.sumOf { estimatedSize(it) }
+                }
+            }
+        }
+        computations.addSize(jobId, computation.resize(RESULT_PART, size))
+    }
+
+    /**
+     * Returns the result of a computation or `null` if there is no such
+     * result.
+     */
+    internal fun fetchResult(jobId: String): ComputationResponse<*>? {
+        val computation = computations[jobId] ?: return null
+        val status = computation.status ?: return null
+        return if (status.computationVariant == ComputationVariant.SINGLE) {
+            SingleComputationResponse(status, computation.singleResults)
+        } else {
+            ListComputationResponse(status, computation.listResults)
+        }
+    }
+
+    /**
+     * Returns the estimated size of all stored computations in bytes.
+     */
+    fun size() = computations.size()
+}
+
+/**
+ * The kjobs data persistence of a single computation type for the in-memory
+ * persistence.  Jobs and requests are stored by the given kjobs persistence,
+ * results are stored in the given computation persistence.
+ */
+internal class InMemoryDataPersistence<REQUEST : ComputationRequest, MAIN>(
+    internal val delegate: DataPersistence<REQUEST, ComputationResponse<MAIN>>,
+    private val computationType: String,
+    private val computations: InMemoryComputationPersistence
+) : DataPersistence<REQUEST, ComputationResponse<MAIN>> by delegate {
+
+    override suspend fun <T> dataTransaction(
+        block: suspend DataTransactionalPersistence<REQUEST, ComputationResponse<MAIN>>.() -> T
+    ): PersistenceAccessResult<T> =
+        delegate.dataTransaction {
+            InMemoryDataTransactionalPersistence(this, computationType, computations).block()
+        }
+
+    @Suppress("UNCHECKED_CAST")
+    override suspend fun fetchResult(uuid: String): PersistenceAccessResult<ComputationResponse<MAIN>> =
+        computations.fetchResult(uuid)?.let { PersistenceAccessResult.result(it as ComputationResponse<MAIN>) }
+            ?: PersistenceAccessResult.notFound()
+}
+
+private class InMemoryDataTransactionalPersistence<REQUEST, MAIN>(
+    delegate: DataTransactionalPersistence<REQUEST, ComputationResponse<MAIN>>,
+    private val computationType: String,
+    private val computations: InMemoryComputationPersistence
+) : DataTransactionalPersistence<REQUEST, ComputationResponse<MAIN>> by delegate {
+
+    override suspend fun persistOrUpdateResult(
+        job: Job,
+        result: ComputationResponse<MAIN>
+    ): PersistenceAccessResult<Unit> {
+        computations.storeResult(job.uuid, computationType, result)
+        return PersistenceAccessResult.success
+    }
+}
+
+/**
+ * The computation data of a single job.
+ */
+private class StoredComputation {
+    @Volatile
+    var status: ComputationStatus? = null
+
+    @Volatile
+    var singleResults: List<SliceComputationResult<*>> = listOf()
+
+    @Volatile
+    var listResults: List<ComputationElementResult<*, *>> = listOf()
+
+    val details = ConcurrentHashMap<Pair<Int, Int?>, SplitComputationDetail<*>>()
+
+    // the unique key of a slice to its property keys and its slice group
+    val sliceGroups = ConcurrentHashMap<String, Pair<Set<String>, Int>>()
+
+    // the estimated sizes of the result, the details, and the slice groups by their keys
+    private val sizes = ConcurrentHashMap<Any, Long>()
+
+    /**
+     * Sets the estimated size of the part with the given key, which replaces
+     * a former part with this key, and returns the change of the total size.
+     */
+    fun resize(key: Any, size: Long): Long = size - (sizes.put(key, size) ?: 0L)
+}
+
+private const val RESULT_PART = "@result"
+
+/**
+ * A thread-safe map whose entries expire after the time to live of their
+ * computation type and whose total size is bounded, both given by the
+ * [retention].  The size of an entry is provided by the caller and can
+ * change over the lifetime of the entry.  If the total size exceeds the
+ * maximum size, the oldest entries are evicted, except for the entry whose
+ * size was just changed.  The keys of expired and evicted entries are passed
+ * to [onRemoval].
+ */
+internal class ExpiringStore<V : Any>(
+    private val retention: RetentionConfig,
+    private val clock: () -> Long,
+    private val onRemoval: (String) -> Unit = {}
+) {
+    private class Entry<V>(val value: V, val createdAt: Long, val type: String?) {
+        val size = AtomicLong()
+    }
+
+    private val entries = ConcurrentHashMap<String, Entry<V>>()
+    private val totalSize = AtomicLong()
+
+    operator fun get(key: String): V? {
+        val entry = entries[key] ?: return null
+        if (isExpired(entry, clock())) {
+            remove(key)?.let { onRemoval(key) }
+            return null
+        }
+        return entry.value
+    }
+
+    /**
+     * Returns the value for the given key or stores a new value of the given
+     * computation type.  The type is only computed for a new value.
+     */
+    fun getOrPut(key: String, type: () -> String?, create: () -> V): V {
+        get(key)?.let { return it }
+        val newType = type()
+        return entries.computeIfAbsent(key) { Entry(create(), clock(), newType) }.value
+    }
+
+    /**
+     * Adds the given size to the entry with the given key and evicts expired
+     * and old entries if necessary.
+     */
+    fun addSize(key: String, size: Long) {
+        val entry = entries[key] ?: return
+        entry.size.addAndGet(size)
+        totalSize.addAndGet(size)
+        evict(key)
+    }
+
+    fun remove(key: String): V? = entries.remove(key)?.also { totalSize.addAndGet(-it.size.get()) }?.value
+
+    /**
+     * Removes all entries and returns the keys of the removed entries.
+     */
+    fun clear(): List<String> = entries.keys.filter { remove(it) != null }
+
+    fun size() = totalSize.get()
+
+    /**
+     * Returns the total size of the entries per computation type.
+     */
+    fun sizesByType(): Map<String, Long> =
+        entries.values.groupBy({ it.type ?: UNKNOWN_TYPE }, { it.size.get() }).mapValues { it.value.sum() }
+
+    /**
+     * Removes all expired entries.
+     */
+    @Synchronized
+    fun expire() {
+        val now = clock()
+        entries.filter { isExpired(it.value, now) }.keys.forEach { key -> remove(key)?.let { onRemoval(key) } }
+    }
+
+    @Synchronized
+    private fun evict(keep: String) {
+        expire()
+        val max = retention.maxSize
+        if (max > 0 && totalSize.get() > max) {
+            val oldest = entries.entries.filter { it.key != keep }.sortedBy { it.value.createdAt }.iterator()
+            while (totalSize.get() > max && oldest.hasNext()) {
+                val key = oldest.next().key
+                remove(key)?.let { onRemoval(key) }
+            }
+        }
+    }
+
+    private fun isExpired(entry: Entry<V>, now: Long): Boolean {
+        val ttl = retention.ttl(entry.type)
+        return ttl.isPositive() && now - entry.createdAt > ttl.inWholeMilliseconds
+    }
+}
+
+private const val OBJECT_SIZE = 16L
+private const val REFERENCE_SIZE = 8L
+private const val MAX_DEPTH = 16
+
+/**
+ * Returns a cheap estimate of the heap size of the given value in bytes.
+ * The estimate walks the strings, collections, and maps of the value and
+ * the fields of its other objects without serializing it.  Enums and other
+ * objects of the JDK are counted with a constant size.
+ */
+internal fun estimatedSize(value: Any?, depth: Int = 0): Long = when {
+    value == null -> 0L
+    depth > MAX_DEPTH -> OBJECT_SIZE
+    value is CharSequence -> OBJECT_SIZE + 2L * value.length
+    value is Collection<*> -> OBJECT_SIZE + value.sumOf { REFERENCE_SIZE + estimatedSize(it, depth + 1) }
+    value is Map<*, *> -> OBJECT_SIZE + value.entries.sumOf {
+        OBJECT_SIZE + estimatedSize(it.key, depth + 1) + estimatedSize(it.value, depth + 1)
+    }
+    value is Array<*> -> OBJECT_SIZE + value.sumOf { REFERENCE_SIZE + estimatedSize(it, depth + 1) }
+    value is BigInteger -> OBJECT_SIZE + value.bitLength() / Byte.SIZE_BITS
+    value is Enum<*> || value.javaClass.name.startsWith("java.") -> OBJECT_SIZE
+    else -> OBJECT_SIZE + objectFields.get(value.javaClass).sumOf {
+        REFERENCE_SIZE + if (it.type.isPrimitive) 0L else estimatedSize(it.get(value), depth + 1)
+    }
+}
+
+private val objectFields = object : ClassValue<List<Field>>() {
+    override fun computeValue(type: Class<*>) = generateSequence(type) { it.superclass }
+        .flatMap { it.declaredFields.asSequence() }
+        .filterNot { Modifier.isStatic(it.modifiers) }
+        .onEach { it.isAccessible = true }
+        .toList()
+}
+
+private fun SliceDO.propertyKeys() = content.map { "${it.name}:${it.range.key()}" }.toSet()
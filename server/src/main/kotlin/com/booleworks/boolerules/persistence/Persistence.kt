@@ -15,20 +15,61 @@ import com.booleworks.boolerules.computations.generic.SingleComputationResponse
 import com.booleworks.boolerules.computations.generic.SliceComputationResult
 import com.booleworks.boolerules.computations.generic.SliceDO
 import com.booleworks.boolerules.computations.generic.SplitComputationDetail
+import com.booleworks.boolerules.persistence.PersistenceType.DISK
+import com.booleworks.boolerules.persistence.PersistenceType.IN_MEMORY
 import com.booleworks.boolerules.persistence.PersistenceType.REDIS
 import com.booleworks.boolerules.rulefile.UploadSummaryDO
 import com.booleworks.boolerules.service.ServiceEnv
 import com.booleworks.kjobs.api.persistence.DataPersistence
 import com.booleworks.kjobs.api.persistence.JobPersistence
+import com.booleworks.kjobs.api.persistence.hashmap.HashMapJobPersistence
 import com.booleworks.kjobs.api.persistence.redis.RedisJobPersistence
 import com.booleworks.kjobs.data.Job
 import redis.clients.jedis.JedisPool
 import redis.clients.jedis.JedisPoolConfig
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.nio.file.Path
+import java.time.LocalDateTime
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.minutes
+
+private const val BYTES_PER_MB = 1024L * 1024L
+private const val IN_MEMORY_TTL = 60L
+private const val IN_MEMORY_MAX_SIZE = 512L
+
+/**
+ * The type of stored data whose computation type is not known.
+ */
+internal const val UNKNOWN_TYPE = "unknown"
 
 /**
  * Different persistent implementations.
  */
-enum class PersistenceType { REDIS }
+enum class PersistenceType { REDIS, IN_MEMORY, DISK }
+
+/**
+ * Different encodings for stored computation results, details, and statuses.
+ */
+enum class PersistenceEncoding { JSON, SMILE }
+
+/**
+ * The retention of stored computation data.  The data of a job expires after
+ * the time to live of its computation type in [ttls] or after [defaultTtl] if
+ * there is no time to live for its type.  If the stored data of all jobs
+ * exceed [maxSize] bytes, the least recently used jobs are evicted.  A time
+ * to live or maximum size of 0 disables the respective limit.
+ */
+data class RetentionConfig(
+    val defaultTtl: Duration = Duration.ZERO,
+    val ttls: Map<String, Duration> = mapOf(),
+    val maxSize: Long = 0L
+) {
+    /**
+     * Returns the time to live for the given computation type.
+     */
+    fun ttl(computationType: String?) = ttls[computationType] ?: defaultTtl
+}
 
 data class PersistenceNotFoundException(override val message: String) : Exception(message)
 
@@ -46,6 +87,19 @@ interface RulefilePersistence {
      */
     fun getBinaryRuleFile(ruleFileId: String): Result<ByteArray>
 
+    /**
+     * Opens a stream on the binary rulefile for the given ID.  Persistence
+     * implementations which can read the rulefile without copying it into a
+     * byte array override this method.
+     */
+    fun openBinaryRuleFile(ruleFileId: String): Result<InputStream> =
+        getBinaryRuleFile(ruleFileId).map { ByteArrayInputStream(it) }
+
+    /**
+     * Retrieves the summary of the rulefile for the given ID.
+     */
+    fun getSummary(ruleFileId: String): Result<UploadSummaryDO>
+
     /**
      * Deletes the rulefile and summary for the given ID.
      */
@@ -174,6 +228,19 @@ interface ComputationPersistence {
         computationType: ComputationType<*, *, MAIN, *, ELEMENT>
     ): List<ComputationElementResult<MAIN, ELEMENT>>
 
+    /**
+     * Returns the results for at most `limit` elements of a given list
+     * computation job, starting with the first element after the element
+     * with ID `afterElementId`.
+     */
+    fun <MAIN, ELEMENT> fetchListResultPage(
+        jobId: String,
+        afterElementId: Int,
+        limit: Int,
+        computationType: ComputationType<*, *, MAIN, *, ELEMENT>
+    ): List<ComputationElementResult<MAIN, ELEMENT>> =
+        fetchListResults(jobId, computationType).filter { it.element.id > afterElementId }.take(limit)
+
     /**
      * Returns the element for a given computation job and element ID.
      */
@@ -205,6 +272,27 @@ interface ComputationPersistence {
      * the number of deleted entries.
      */
     fun deleteAllComputations(): Long
+
+    /**
+     * Deletes all stored information for the computations created by the
+     * given instance before the given time and returns the number of deleted
+     * entries.  Computations without a job and computations whose time to
+     * live expired before the given time are deleted for any instance, so if
+     * no instance is given, only these computations are deleted.  The given
+     * progress is updated while deleting.
+     *
+     * Persistence implementations which do not keep computations across
+     * restarts delete all computations of a given instance.
+     */
+    fun deleteComputations(instance: String?, createdBefore: LocalDateTime, progress: CleanupProgress): Long =
+        if (instance == null) 0L else deleteAllComputations().also { progress.deletedEntries.addAndGet(it) }
+
+    /**
+     * Returns the number of stored bytes per computation type.  Persistence
+     * implementations which do not track the size of their data return an
+     * empty map.
+     */
+    fun storedBytes(): Map<String, Long> = mapOf()
 }
 
 object Persistence {
@@ -219,9 +307,35 @@ object Persistence {
         val persistenceType = env.persistenceType ?: "redis"
         when (PersistenceType.valueOf(persistenceType.uppercase())) {
             REDIS -> initRedis(env)
+            IN_MEMORY -> initInMemory(env)
+            DISK -> initDisk(env)
         }
     }
 
+    private fun initInMemory(env: ServiceEnv) {
+        // the former settings for the in-memory persistence are still used as defaults
+        val retention = retention(
+            env,
+            env.inMemoryTtl?.toLong() ?: IN_MEMORY_TTL,
+            env.inMemoryMaxSize?.toLong() ?: IN_MEMORY_MAX_SIZE
+        )
+        val jobPersistence = HashMapJobPersistence()
+
+        rulefile = InMemoryRulefilePersistence()
+        computation = InMemoryComputationPersistence(jobPersistence, retention)
+        jobs = jobPersistence
+    }
+
+    /**
+     * Rule files are stored on disk and survive restarts, whereas jobs and
+     * computation results are kept in memory like for [IN_MEMORY].
+     */
+    private fun initDisk(env: ServiceEnv) {
+        check(env.diskPath != null) { "Disk path must be provided for disk persistence type" }
+        initInMemory(env)
+        rulefile = DiskRulefilePersistence(SegmentStore(Path.of(env.diskPath, "rulefiles")))
+    }
+
     private fun initRedis(env: ServiceEnv) {
         check(env.redisUrl != null) { "Redis URL must be provided for Redis persistence type" }
         val redisMaxWait = env.redisMaxWait?.toLong() ?: 10L
@@ -229,8 +343,29 @@ object Persistence {
             setMaxWait(java.time.Duration.ofSeconds(redisMaxWait))
         }
 
+        val encoding = PersistenceEncoding.valueOf((env.persistenceEncoding ?: "json").uppercase())
         rulefile = RedisRulefilePersistence(pool)
-        computation = RedisComputationPersistence(pool)
+        computation = RedisComputationPersistence(pool, encoding, retention(env, 0L, 0L))
         jobs = RedisJobPersistence(pool)
     }
+
+    /**
+     * Returns the retention of computation results for all persistence types.
+     * The given defaults in minutes and MB are used if no time to live or
+     * maximum size is configured.
+     */
+    private fun retention(env: ServiceEnv, defaultTtl: Long, defaultMaxSize: Long) = RetentionConfig(
+        (env.resultTtl?.toLong() ?: defaultTtl).minutes,
+        parseTtls(env.resultTtls),
+        (env.resultMaxSize?.toLong() ?: defaultMaxSize) * BYTES_PER_MB
+    )
+
+    /**
+     * Parses times to live per computation type in minutes given as
+     * `type=minutes` separated by commas, e.g. `backbone=60,modelcount=10`.
+     */
+    private fun parseTtls(ttls: String?) = ttls?.split(',')?.filter { it.isNotBlank() }?.associate { entry ->
+        val (type, minutes) = entry.split('=').map { it.trim() }
+        type to minutes.toLong().minutes
+    } ?: mapOf()
 }
@@ -0,0 +1,102 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.computations.ComputationType
+import com.booleworks.boolerules.computations.generic.ComputationElement
+import com.booleworks.boolerules.computations.generic.ComputationStatus
+import com.booleworks.boolerules.computations.generic.SliceComputationResult
+import com.booleworks.boolerules.computations.generic.SplitComputationDetail
+import com.booleworks.boolerules.persistence.PersistenceEncoding.JSON
+import com.booleworks.boolerules.persistence.PersistenceEncoding.SMILE
+import com.booleworks.boolerules.rulefile.UploadSummaryDO
+import com.fasterxml.jackson.databind.JavaType
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.ObjectReader
+import com.fasterxml.jackson.databind.ObjectWriter
+import com.fasterxml.jackson.dataformat.smile.SmileConstants
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import com.fasterxml.jackson.module.kotlin.registerKotlinModule
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The serialization shared by all persistence implementations.
+ *
+ * Creating an object mapper is expensive and each mapper builds its own
+ * serializer and deserializer caches.  Therefore, a single configured mapper
+ * per encoding is used and the readers and writers of all stored types are
+ * created once.  Readers and writers are immutable and thread-safe.
+ */
+internal object PersistenceSerialization {
+    val mapper: ObjectMapper = jacksonObjectMapper().registerModule(JavaTimeModule())
+    val smileMapper: ObjectMapper = ObjectMapper(SmileFactory()).registerKotlinModule().registerModule(JavaTimeModule())
+
+    /**
+     * The codec for values whose type is only known at runtime, e.g. details.
+     */
+    val any = PersistenceCodec(mapper, smileMapper, mapper.constructType(Any::class.java))
+
+    val status = PersistenceCodec(mapper, smileMapper, mapper.constructType(ComputationStatus::class.java))
+    val summaryReader: ObjectReader = mapper.readerFor(UploadSummaryDO::class.java)
+    val summaryWriter: ObjectWriter = mapper.writerFor(UploadSummaryDO::class.java)
+
+    private val serializers = ConcurrentHashMap<ComputationType<*, *, *, *, *>, ComputationSerializers>()
+
+    /**
+     * Returns the readers and writers for the given computation type.
+     */
+    fun of(computationType: ComputationType<*, *, *, *, *>): ComputationSerializers =
+        serializers.computeIfAbsent(computationType) { ComputationSerializers(mapper, smileMapper, it) }
+}
+
+/**
+ * The readers and writers for the request, main results, details, and
+ * elements of a single computation type.  Requests are always stored as JSON.
+ */
+internal class ComputationSerializers(
+    mapper: ObjectMapper,
+    smileMapper: ObjectMapper,
+    computationType: ComputationType<*, *, *, *, *>
+) {
+    private val mainType =
+        mapper.typeFactory.constructParametricType(SliceComputationResult::class.java, computationType.main)
+    private val detailType =
+        mapper.typeFactory.constructParametricType(SplitComputationDetail::class.java, computationType.detail)
+    private val elementType =
+        mapper.typeFactory.constructParametricType(ComputationElement::class.java, computationType.element)
+
+    val requestReader: ObjectReader = mapper.readerFor(computationType.request)
+    val requestWriter: ObjectWriter = mapper.writerFor(computationType.request)
+    val main = PersistenceCodec(mapper, smileMapper, mainType)
+    val detail = PersistenceCodec(mapper, smileMapper, detailType)
+    val element = PersistenceCodec(mapper, smileMapper, elementType)
+}
+
+/**
+ * Reads and writes values of a single type in one of the persistence
+ * encodings.  Values are always read in the encoding they were written in:
+ * Smile data starts with the Smile header which is never the start of a JSON
+ * document, so values written as JSON remain readable after switching the
+ * encoding and vice versa.
+ */
+internal class PersistenceCodec(mapper: ObjectMapper, smileMapper: ObjectMapper, type: JavaType) {
+    private val jsonReader = mapper.readerFor(type)
+    private val jsonWriter = mapper.writerFor(type)
+    private val smileReader = smileMapper.readerFor(type)
+    private val smileWriter = smileMapper.writerFor(type)
+
+    fun write(value: Any?, encoding: PersistenceEncoding): ByteArray = when (encoding) {
+        JSON -> jsonWriter.writeValueAsBytes(value)
+        SMILE -> smileWriter.writeValueAsBytes(value)
+    }
+
+    fun <T> read(bytes: ByteArray): T = (if (isSmile(bytes)) smileReader else jsonReader).readValue(bytes)
+
+    private fun isSmile(bytes: ByteArray) = bytes.size >= 3 &&
+            bytes[0] == SmileConstants.HEADER_BYTE_1 &&
+            bytes[1] == SmileConstants.HEADER_BYTE_2 &&
+            bytes[2] == SmileConstants.HEADER_BYTE_3
+}
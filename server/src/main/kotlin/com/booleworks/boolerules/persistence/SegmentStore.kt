@@ -0,0 +1,219 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.persistence
+
+import java.io.Closeable
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.CREATE
+import java.nio.file.StandardOpenOption.READ
+import java.nio.file.StandardOpenOption.WRITE
+import kotlin.io.path.deleteIfExists
+import kotlin.io.path.listDirectoryEntries
+import kotlin.io.path.name
+
+private const val SEGMENT_PREFIX = "segment-"
+private const val SEGMENT_SUFFIX = ".log"
+private const val HEADER_SIZE = 8
+private const val TOMBSTONE = -1
+private const val DEFAULT_SEGMENT_SIZE = 256L * 1024L * 1024L
+
+/**
+ * An embedded key-value store on local disk.
+ *
+ * All writes are appended to segment files in the given directory.  A record
+ * consists of the length of its key, the length of its value (or -1 for a
+ * deleted key), the key, and the value.  The location of the current value
+ * of each key is kept in memory and rebuilt by reading all segments when the
+ * store is opened.  An incomplete record at the end of the last segment (e.g.
+ * after a crash) is discarded.
+ *
+ * Values are read from memory-mapped segments, so [get] returns a read-only
+ * view on the mapped file without copying the value.  Space of overwritten
+ * and deleted values is reclaimed by [compact], which is also called when
+ * opening a store with more garbage than live data.
+ *
+ * This class is thread-safe.
+ *
+ * @param directory the directory of the segment files
+ * @param maxSegmentSize the size in bytes after which a new segment is started
+ */
+class SegmentStore(
+    private val directory: Path,
+    private val maxSegmentSize: Long = DEFAULT_SEGMENT_SIZE
+) : Closeable {
+    private class Segment(val id: Int, val path: Path, val channel: FileChannel) {
+        var size = channel.size()
+        var mapped: MappedByteBuffer? = null
+    }
+
+    private data class Location(val segment: Segment, val offset: Long, val length: Int, val recordSize: Long)
+
+    private val segments = mutableListOf<Segment>()
+    private val index = HashMap<String, Location>()
+    private var liveBytes = 0L
+    private var totalBytes = 0L
+
+    init {
+        Files.createDirectories(directory)
+        directory.listDirectoryEntries("$SEGMENT_PREFIX*$SEGMENT_SUFFIX")
+            .sortedBy { segmentId(it) }
+            .forEach { load(openSegment(segmentId(it))) }
+        if (segments.isEmpty()) segments.add(openSegment(1))
+        if (totalBytes - liveBytes > liveBytes) compact()
+    }
+
+    /**
+     * Returns a read-only view on the value for the given key or `null` if
+     * there is no such key.  The view is backed by the mapped segment file.
+     */
+    @Synchronized
+    operator fun get(key: String): ByteBuffer? {
+        val location = index[key] ?: return null
+        val segment = location.segment
+        val mapped = segment.mapped?.takeIf { it.capacity() >= location.offset + location.length }
+            ?: segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size).also { segment.mapped = it }
+        return mapped.slice(location.offset.toInt(), location.length).asReadOnlyBuffer()
+    }
+
+    /**
+     * Returns a copy of the value for the given key or `null` if there is no
+     * such key.
+     */
+    fun getBytes(key: String): ByteArray? =
+        get(key)?.let { buffer -> ByteArray(buffer.remaining()).also { buffer.get(it) } }
+
+    /**
+     * Stores the given value for the given key.
+     */
+    @Synchronized
+    fun put(key: String, value: ByteArray) {
+        remove(index[key])
+        val keyBytes = key.toByteArray()
+        val location = append(keyBytes, value)
+        index[key] = location
+        liveBytes += location.recordSize
+    }
+
+    /**
+     * Deletes the given key and returns whether there was a value for it.
+     */
+    @Synchronized
+    fun delete(key: String): Boolean {
+        val location = index.remove(key) ?: return false
+        remove(location)
+        append(key.toByteArray(), null)
+        return true
+    }
+
+    /**
+     * Returns all keys starting with the given prefix.
+     */
+    @Synchronized
+    fun keys(prefix: String = "") = index.keys.filter { it.startsWith(prefix) }
+
+    /**
+     * Returns the total size of all segments and the size of all live records
+     * in bytes.
+     */
+    @Synchronized
+    fun size() = Pair(totalBytes, liveBytes)
+
+    /**
+     * Rewrites all live records to new segments and deletes the old segments.
+     */
+    @Synchronized
+    fun compact() {
+        val oldSegments = segments.toList()
+        val live = index.entries.map { (key, location) -> key to readValue(location) }
+        segments.add(openSegment(oldSegments.last().id + 1))
+        index.clear()
+        liveBytes = 0
+        totalBytes = 0
+        live.forEach { (key, value) ->
+            val location = append(key.toByteArray(), value)
+            index[key] = location
+            liveBytes += location.recordSize
+        }
+        oldSegments.forEach {
+            segments.remove(it)
+            it.channel.close()
+            it.path.deleteIfExists()
+        }
+    }
+
+    @Synchronized
+    override fun close() = segments.forEach { it.channel.close() }
+
+    private fun append(key: ByteArray, value: ByteArray?): Location {
+        var segment = segments.last()
+        val recordSize = HEADER_SIZE.toLong() + key.size + (value?.size ?: 0)
+        if (segment.size > 0 && segment.size + recordSize > maxSegmentSize) {
+            segment = openSegment(segment.id + 1).also { segments.add(it) }
+        }
+        val buffer = ByteBuffer.allocate(recordSize.toInt())
+            .putInt(key.size)
+            .putInt(value?.size ?: TOMBSTONE)
+            .put(key)
+        value?.let { buffer.put(it) }
+        buffer.flip()
+        var position = segment.size
+        while (buffer.hasRemaining()) position += segment.channel.write(buffer, position)
+        val location = Location(segment, segment.size + HEADER_SIZE + key.size, value?.size ?: 0, recordSize)
+        segment.size += recordSize
+        totalBytes += recordSize
+        return location
+    }
+
+    private fun remove(location: Location?) {
+        if (location != null) liveBytes -= location.recordSize
+    }
+
+    private fun readValue(location: Location): ByteArray {
+        val buffer = ByteBuffer.allocate(location.length)
+        var position = location.offset
+        while (buffer.hasRemaining()) position += location.segment.channel.read(buffer, position)
+        return buffer.array()
+    }
+
+    private fun load(segment: Segment) {
+        segments.add(segment)
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+        var position = 0L
+        while (position + HEADER_SIZE <= segment.size) {
+            header.clear()
+            segment.channel.read(header, position)
+            header.flip()
+            val keyLength = header.getInt()
+            val valueLength = header.getInt()
+            val recordSize = HEADER_SIZE.toLong() + keyLength + maxOf(valueLength, 0)
+            if (keyLength < 0 || position + recordSize > segment.size) break
+            val keyBuffer = ByteBuffer.allocate(keyLength)
+            segment.channel.read(keyBuffer, position + HEADER_SIZE)
+            val key = String(keyBuffer.array())
+            remove(index.remove(key))
+            if (valueLength != TOMBSTONE) {
+                index[key] = Location(segment, position + HEADER_SIZE + keyLength, valueLength, recordSize)
+                liveBytes += recordSize
+            }
+            position += recordSize
+        }
+        if (position < segment.size) {
+            // discard an incomplete record at the end of the segment
+            segment.channel.truncate(position)
+            segment.size = position
+        }
+        totalBytes += segment.size
+    }
+
+    private fun openSegment(id: Int): Segment {
+        val path = directory.resolve("$SEGMENT_PREFIX${id.toString().padStart(6, '0')}$SEGMENT_SUFFIX")
+        return Segment(id, path, FileChannel.open(path, CREATE, READ, WRITE))
+    }
+
+    private fun segmentId(path: Path) = path.name.removePrefix(SEGMENT_PREFIX).removeSuffix(SEGMENT_SUFFIX).toInt()
+}
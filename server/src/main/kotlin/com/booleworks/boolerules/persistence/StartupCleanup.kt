@@ -0,0 +1,94 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.config.ApplicationConfig.DEFAULT_INSTANCE
+import io.swagger.v3.oas.annotations.media.Schema
+import org.slf4j.LoggerFactory
+import java.time.LocalDateTime
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.time.measureTime
+
+/**
+ * The deletion of the computations left by a former run of this instance.
+ *
+ * The cleanup runs in the background after the application started, so the
+ * service is available immediately.  Computations created by this instance
+ * before the start are deleted, computations of other instances sharing the
+ * persistence are kept unless they have no job or their time to live has
+ * expired.  If no instance name was configured, only these orphaned and
+ * expired computations are deleted, since all instances would share the
+ * default name.
+ */
+object StartupCleanup {
+    private val logger = LoggerFactory.getLogger(StartupCleanup::class.java)
+
+    private val progress = CleanupProgress()
+
+    @Volatile
+    private var state = CleanupState.PENDING
+
+    /**
+     * Deletes all computations of the given persistence which were created
+     * by the given instance before the given time as well as all orphaned
+     * and expired computations.  This method blocks until the cleanup is
+     * finished.
+     */
+    fun run(persistence: ComputationPersistence, instance: String, createdBefore: LocalDateTime) {
+        val owner = instance.takeUnless { it.isBlank() || it == DEFAULT_INSTANCE }
+        if (owner == null) {
+            logger.warn(
+                "No instance name is configured (INSTANCE), so the computations of a former run are kept and " +
+                        "only computations without a job or with an expired time to live are deleted"
+            )
+        }
+        state = CleanupState.RUNNING
+        try {
+            val duration = measureTime { persistence.deleteComputations(owner, createdBefore, progress) }
+            state = CleanupState.FINISHED
+            logger.info(
+                "Deleted ${progress.deletedJobs.get()} computations with ${progress.deletedEntries.get()} " +
+                        "entries of instance ${owner ?: "(none)"} in $duration"
+            )
+        } catch (e: Exception) {
+            state = CleanupState.FAILED
+            logger.error("Cleanup of the computations of instance ${owner ?: "(none)"} failed", e)
+        }
+    }
+
+    fun statistics() = CleanupStatistics(
+        state,
+        progress.scannedJobs.get(),
+        progress.deletedJobs.get(),
+        progress.deletedEntries.get()
+    )
+}
+
+/**
+ * The progress of a running cleanup, updated by the persistence.
+ */
+class CleanupProgress {
+    val scannedJobs = AtomicLong()
+    val deletedJobs = AtomicLong()
+    val deletedEntries = AtomicLong()
+}
+
+@Schema(description = "The state of the cleanup")
+enum class CleanupState { PENDING, RUNNING, FINISHED, FAILED }
+
+@Schema(description = "The statistics of the cleanup of former computations at startup")
+data class CleanupStatistics(
+
+    @field:Schema(description = "The state of the cleanup")
+    val state: CleanupState,
+
+    @field:Schema(description = "The number of jobs checked so far")
+    val scannedJobs: Long,
+
+    @field:Schema(description = "The number of jobs deleted so far")
+    val deletedJobs: Long,
+
+    @field:Schema(description = "The number of entries deleted so far")
+    val deletedEntries: Long
+)
@@ -22,6 +22,8 @@ import kotlin.time.measureTimedValue
 
 val logger: Logger = LoggerFactory.getLogger("rulefile")
 
+private const val BYTES_PER_MB = 1024L * 1024L
+
 fun Route.rulefileRoute() {
     get("", {
         summary = "Get all stored rule files"
@@ -104,7 +106,12 @@ fun Route.rulefileRoute() {
             var summary: UploadSummaryDO? = null
             multipartData.forEachPart { part ->
                 if (summary == null && part is PartData.FileItem) {
-                    val us = storeRuleFile(part.originalFileName as String, part.streamProvider().readBytes())
+                    val fileName = part.originalFileName as String
+                    val (us, allocated) = measureAllocatedBytes {
+                        part.streamProvider().use { storeRuleFile(fileName, it) }
+                    }
+                    val allocatedMb = if (allocated < 0) "unavailable" else "${allocated / BYTES_PER_MB} MB"
+                    logger.info("Heap allocated while storing PRL file '$fileName': $allocatedMb")
                     call.respond(if (us.hasErrors()) HttpStatusCode.BadRequest else HttpStatusCode.OK, us)
                     summary = us
                 }
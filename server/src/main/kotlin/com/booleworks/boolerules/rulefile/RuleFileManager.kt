@@ -3,6 +3,9 @@
 
 package com.booleworks.boolerules.rulefile
 
+import com.booleworks.boolerules.cache.CompilationCache
+import com.booleworks.boolerules.cache.ModelCache
+import com.booleworks.boolerules.cache.TranslationCache
 import com.booleworks.boolerules.persistence.Persistence
 import com.booleworks.boolerules.rulefile.PropertyTypeDO.BOOLEAN
 import com.booleworks.boolerules.rulefile.PropertyTypeDO.DATE
@@ -16,17 +19,58 @@ import com.booleworks.prl.model.SlicingEnumPropertyDefinition
 import com.booleworks.prl.model.SlicingIntPropertyDefinition
 import com.booleworks.prl.model.serialize
 import com.booleworks.prl.parser.parseRuleFile
+import com.sun.management.ThreadMXBean
 import org.antlr.v4.runtime.misc.ParseCancellationException
-import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
+import java.io.InputStream
 import java.io.InputStreamReader
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.DigestInputStream
+import java.security.MessageDigest
 import java.time.LocalDateTime
 import java.util.UUID
 import java.util.zip.GZIPOutputStream
 
-internal fun storeRuleFile(fileName: String, bytes: ByteArray): UploadSummaryDO {
+private const val BUFFER_SIZE = 64 * 1024
+
+/**
+ * Parses, compiles, and stores the rule file read from the given stream and
+ * returns its upload summary.
+ *
+ * Rule files are stored under an ID derived from their content.  If the same
+ * content was uploaded before, the summary of the stored rule file is returned
+ * without parsing and compiling the rule file again.  So all uploads of the
+ * same content share the same ID and the caches for this ID.  Consequently,
+ * deleting such a rule file deletes it for all uploads.
+ *
+ * The upload is copied to a temporary file while its hash is computed, so
+ * an upload which was stored before is neither buffered in memory nor
+ * parsed again.  For a new rule file, the parser still holds the whole text
+ * in memory (ANTLR keeps the code points of its input), and the compressed
+ * model is held as a byte array until it is stored.
+ */
+internal fun storeRuleFile(fileName: String, input: InputStream): UploadSummaryDO {
+    val file = Files.createTempFile("rulefile-", ".prl")
+    try {
+        val digest = MessageDigest.getInstance("SHA-256")
+        DigestInputStream(input, digest).use { Files.copy(it, file, StandardCopyOption.REPLACE_EXISTING) }
+        return storeRuleFile(fileName, file, contentId(digest))
+    } finally {
+        Files.deleteIfExists(file)
+    }
+}
+
+private fun storeRuleFile(fileName: String, file: Path, ruleFileId: String): UploadSummaryDO {
+    Persistence.rulefile.getSummary(ruleFileId).onSuccess {
+        logger.info("Rule file '$fileName' was already uploaded as '${it.fileName}' with ID $ruleFileId")
+        return it
+    }
     val prlRuleFile = try {
-        parseRuleFile(InputStreamReader(ByteArrayInputStream(bytes)), fileName)
+        InputStreamReader(Files.newInputStream(file)).buffered(BUFFER_SIZE).use { parseRuleFile(it, fileName) }
     } catch (e: ParseCancellationException) {
         return parseError(fileName, e.toString())
     } catch (e: RuntimeException) {
@@ -36,27 +80,60 @@ internal fun storeRuleFile(fileName: String, bytes: ByteArray): UploadSummaryDO
     val compiler = PrlCompiler()
     val model = compiler.compile(prlRuleFile)
     return if (!compiler.hasErrors()) {
-        val bin = serialize(model)
-        ByteArrayOutputStream().use {
-            val output = GZIPOutputStream(it)
-            bin.writeTo(output)
-            output.close()
-            val uuid = UUID.randomUUID().toString()
-            val byteArray = it.toByteArray()
-            val uploadSummary = generateUploadSummary(uuid, fileName, byteArray.size, model, compiler)
-            Persistence.rulefile.storeRuleFile(uuid, byteArray, uploadSummary)
-            uploadSummary
-        }
+        val output = ByteArrayOutputStream()
+        GZIPOutputStream(output, BUFFER_SIZE).use { serialize(model).writeTo(it) }
+        val byteArray = output.toByteArray()
+        val uploadSummary = generateUploadSummary(ruleFileId, fileName, byteArray.size, model, compiler)
+        Persistence.rulefile.storeRuleFile(ruleFileId, byteArray, uploadSummary)
+        uploadSummary
     } else {
         compilerError(fileName, compiler)
     }
 }
 
+/**
+ * Returns the ID of a rule file with the given content.  The ID is a UUID
+ * (version 8) built from the first 128 bits of the SHA-256 hash of the
+ * content.
+ */
+internal fun contentId(bytes: ByteArray) = contentId(MessageDigest.getInstance("SHA-256").apply { update(bytes) })
+
+private fun contentId(digest: MessageDigest): String {
+    val hash = digest.digest()
+    hash[6] = (hash[6].toInt() and 0x0f or 0x80).toByte()
+    hash[8] = (hash[8].toInt() and 0x3f or 0x80).toByte()
+    val buffer = ByteBuffer.wrap(hash)
+    return UUID(buffer.getLong(), buffer.getLong()).toString()
+}
+
+/**
+ * Executes the given block and returns its result and the number of bytes
+ * allocated on the heap by the current thread during its execution, or -1 if
+ * the JVM does not measure the allocations of threads.  Allocations of other
+ * threads, e.g. concurrent uploads, are not included.  Since memory may be
+ * collected during the execution, this is an upper bound of the heap the
+ * block occupied at once, not its peak usage.
+ */
+internal inline fun <T> measureAllocatedBytes(block: () -> T): Pair<T, Long> {
+    val threads = ManagementFactory.getThreadMXBean() as? ThreadMXBean
+    if (threads == null || !threads.isThreadAllocatedMemorySupported || !threads.isThreadAllocatedMemoryEnabled) {
+        return Pair(block(), -1L)
+    }
+    val before = threads.currentThreadAllocatedBytes
+    val result = block()
+    return Pair(result, threads.currentThreadAllocatedBytes - before)
+}
+
 internal fun getAllSummaries(): List<UploadSummaryDO> = Persistence.rulefile.getAllSummaries()
 internal fun getRuleFile(ruleFileId: String): ByteArray? =
     Persistence.rulefile.getBinaryRuleFile(ruleFileId).getOrNull()
 
-internal fun deleteRuleFile(ruleFileId: String): Boolean = Persistence.rulefile.deleteRuleFile(ruleFileId)
+internal fun deleteRuleFile(ruleFileId: String): Boolean {
+    ModelCache.invalidate(ruleFileId)
+    TranslationCache.invalidate(ruleFileId)
+    CompilationCache.invalidate(ruleFileId)
+    return Persistence.rulefile.deleteRuleFile(ruleFileId)
+}
 
 private fun generateUploadSummary(uuid: String, fileName: String, size: Int, model: PrlModel, compiler: PrlCompiler) =
     UploadSummaryDO(
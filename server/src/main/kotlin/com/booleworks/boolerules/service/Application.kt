@@ -11,6 +11,7 @@ import com.booleworks.boolerules.computations.coverage.COVERAGE
 import com.booleworks.boolerules.computations.coverage.coverageGraphRoute
 import com.booleworks.boolerules.computations.details.detailsRoute
 import com.booleworks.boolerules.computations.generic.addComputationApi
+import com.booleworks.boolerules.computations.generic.resultPageRoute
 import com.booleworks.boolerules.computations.minmaxconfig.MINMAXCONFIG
 import com.booleworks.boolerules.computations.modelcount.MODELCOUNT
 import com.booleworks.boolerules.computations.modelenumeration.MODELENUMERATION
@@ -21,7 +22,9 @@ import com.booleworks.boolerules.computations.visualization.VISUALIZATION
 import com.booleworks.boolerules.config.ApplicationConfig
 import com.booleworks.boolerules.config.ComputationConfig
 import com.booleworks.boolerules.export.exportRoute
+import com.booleworks.boolerules.persistence.InMemoryComputationPersistence
 import com.booleworks.boolerules.persistence.Persistence
+import com.booleworks.boolerules.persistence.StartupCleanup
 import com.booleworks.boolerules.rulefile.rulefileRoute
 import com.booleworks.kjobs.api.JobFramework
 import com.fasterxml.jackson.databind.SerializationFeature
@@ -43,15 +46,24 @@ import io.ktor.server.plugins.cors.routing.CORS
 import io.ktor.server.response.respond
 import io.ktor.server.routing.route
 import io.ktor.server.routing.routing
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
 import org.slf4j.event.Level
+import java.time.LocalDateTime
 import kotlin.time.Duration.Companion.milliseconds
+import kotlin.time.Duration.Companion.minutes
 
 const val PATH_VERSION: String = "version"
 const val PATH_HEALTH: String = "healthz"
+const val PATH_METRICS: String = "metrics"
 const val PATH_RULEFILE: String = "rulefile"
 const val PATH_EXPORT: String = "export"
 const val PATH_COMPUTATION: String = "computation"
 
+private val IN_MEMORY_EXPIRATION_INTERVAL = 1.minutes
+
 fun main(args: Array<String>) {
     EngineMain.main(args)
 }
@@ -87,9 +99,22 @@ fun Application.module() {
         ComputationConfig.setFromEnvironment(it)
         Persistence.setFromEnvironment(it)
     }
-    // Delete all existing computation info from persistence when
-    // starting the application
-    Persistence.computation.deleteAllComputations()
+    // Delete the computation info of a former run of this instance in the
+    // background, so the application is available immediately
+    val startedAt = LocalDateTime.now()
+    launch(Dispatchers.IO) {
+        StartupCleanup.run(Persistence.computation, ApplicationConfig.instance, startedAt)
+    }
+    // In-memory computations are not expired by a store like Redis, so they
+    // are checked periodically
+    (Persistence.computation as? InMemoryComputationPersistence)?.let { persistence ->
+        launch(Dispatchers.IO) {
+            while (isActive) {
+                delay(IN_MEMORY_EXPIRATION_INTERVAL)
+                persistence.expire()
+            }
+        }
+    }
 
     log.info("Application Config: $ApplicationConfig")
     log.info("Computation Config: $ComputationConfig")
@@ -105,7 +130,9 @@ fun Application.module() {
             route(PATH_COMPUTATION) { detailsRoute(CONSISTENCY) }
 
             route(PATH_COMPUTATION) { addComputationApi(MODELCOUNT, this@route) }
+            route(PATH_COMPUTATION) { detailsRoute(MODELCOUNT) }
             route(PATH_COMPUTATION) { addComputationApi(MODELENUMERATION, this@route) }
+            route(PATH_COMPUTATION) { resultPageRoute(MODELENUMERATION) }
             route(PATH_COMPUTATION) { addComputationApi(BACKBONE, this@route) }
 
             route(PATH_COMPUTATION) { addComputationApi(MINMAXCONFIG, this@route) }
@@ -139,6 +166,20 @@ fun Application.module() {
             get(PATH_HEALTH, { tags = listOf("Health") }) {
                 call.respond(HttpStatusCode.OK, "Healthy")
             }
+
+            get(PATH_METRICS, {
+                summary = "Get the runtime metrics"
+                description = "Return the runtime metrics of this instance, e.g. the statistics of the caches"
+                tags = listOf("Health")
+                response {
+                    HttpStatusCode.OK to {
+                        description = "Successful Request"
+                        body<ApplicationMetrics> { description = "The runtime metrics" }
+                    }
+                }
+            }) {
+                call.respond(HttpStatusCode.OK, ApplicationMetrics.get())
+            }
         }
     }
 }
@@ -0,0 +1,45 @@
+// SPDX-License-Identifier: MIT
+// Copyright 2023 BooleWorks GmbH
+
+package com.booleworks.boolerules.service
+
+import com.booleworks.boolerules.cache.CacheStatistics
+import com.booleworks.boolerules.cache.CompilationCache
+import com.booleworks.boolerules.cache.ModelCache
+import com.booleworks.boolerules.cache.TranslationCache
+import com.booleworks.boolerules.computations.generic.ComputationScheduler
+import com.booleworks.boolerules.computations.generic.SchedulerStatistics
+import com.booleworks.boolerules.computations.modelcount.ProjectedModelCounter
+import com.booleworks.boolerules.persistence.CleanupStatistics
+import com.booleworks.boolerules.persistence.Persistence
+import com.booleworks.boolerules.persistence.StartupCleanup
+import io.swagger.v3.oas.annotations.media.Schema
+
+@Schema(description = "The runtime metrics of the current instance")
+data class ApplicationMetrics(
+    @field:Schema(description = "The statistics of the in-process caches")
+    val caches: List<CacheStatistics>,
+
+    @field:Schema(description = "The statistics of the computation scheduler")
+    val scheduler: SchedulerStatistics,
+
+    @field:Schema(description = "The number of stored bytes of computation data per computation type")
+    val storedBytes: Map<String, Long>,
+
+    @field:Schema(description = "The statistics of the cleanup of former computations at startup")
+    val cleanup: CleanupStatistics,
+) {
+    companion object {
+        fun get() = ApplicationMetrics(
+            listOf(
+                ModelCache.statistics(),
+                TranslationCache.statistics(),
+                CompilationCache.statistics(),
+                ProjectedModelCounter.statistics()
+            ),
+            ComputationScheduler.statistics(),
+            Persistence.computation.storedBytes(),
+            StartupCleanup.statistics()
+        )
+    }
+}
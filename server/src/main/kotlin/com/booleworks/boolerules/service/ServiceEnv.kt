@@ -18,9 +18,22 @@ data class ServiceEnv(
     val persistenceType: String?,
     val redisUrl: String?,
     val redisMaxWait: String?,
+    val persistenceEncoding: String?,
+    val inMemoryTtl: String?,
+    val inMemoryMaxSize: String?,
+    val diskPath: String?,
+    val resultTtl: String?,
+    val resultTtls: String?,
+    val resultMaxSize: String?,
 
     // Computation config
     val numThreads: String?,
+    val schedulerThreads: String?,
+    val translationCacheSize: String?,
+    val modelCacheSize: String?,
+    val maxNumberOfSlices: String?,
+    val maxNumberOfModels: String?,
+    val compilationCacheSize: String?,
 ) {
     companion object {
         fun read(propertyProvider: (String) -> String?) = ServiceEnv(
@@ -34,8 +47,21 @@ data class ServiceEnv(
             propertyProvider("persistenceType"),
             propertyProvider("redisUrl"),
             propertyProvider("redisMaxWait"),
+            propertyProvider("persistenceEncoding"),
+            propertyProvider("inMemoryTtl"),
+            propertyProvider("inMemoryMaxSize"),
+            propertyProvider("diskPath"),
+            propertyProvider("resultTtl"),
+            propertyProvider("resultTtls"),
+            propertyProvider("resultMaxSize"),
 
-            propertyProvider("numThreads")
+            propertyProvider("numThreads"),
+            propertyProvider("schedulerThreads"),
+            propertyProvider("translationCacheSize"),
+            propertyProvider("modelCacheSize"),
+            propertyProvider("maxNumberOfSlices"),
+            propertyProvider("maxNumberOfModels"),
+            propertyProvider("compilationCacheSize")
         )
     }
 }
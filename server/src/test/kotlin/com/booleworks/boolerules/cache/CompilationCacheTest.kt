@@ -0,0 +1,97 @@
+package com.booleworks.boolerules.cache
+
+import com.booleworks.boolerules.computations.backbone.BackboneComputation
+import com.booleworks.boolerules.computations.backbone.BackboneRequest
+import com.booleworks.boolerules.computations.generic.ComputationStatusBuilder
+import com.booleworks.boolerules.computations.generic.ComputationVariant.LIST
+import com.booleworks.boolerules.computations.generic.ComputationVariant.SINGLE
+import com.booleworks.boolerules.computations.modelcount.ModelCountComputation
+import com.booleworks.boolerules.computations.modelcount.ModelCountRequest
+import com.booleworks.boolerules.config.ComputationConfig
+import com.booleworks.logicng.csp.CspFactory
+import com.booleworks.logicng.formulas.FormulaFactory
+import com.booleworks.prl.compiler.PrlCompiler
+import com.booleworks.prl.parser.parseRuleFile
+import com.booleworks.prl.transpiler.transpileModel
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.math.BigInteger
+
+internal class CompilationCacheTest {
+
+    private val model = PrlCompiler().compile(parseRuleFile("../test-files/prl/transpiler/merge3.prl"))
+
+    @BeforeEach
+    fun enableCache() {
+        CompilationCache.invalidateAll()
+        ComputationConfig.setFromValues(compilationCacheSize = 1_000_000L)
+    }
+
+    @AfterEach
+    fun disableCache() {
+        ComputationConfig.setFromValues(compilationCacheSize = 0L)
+        CompilationCache.invalidateAll()
+    }
+
+    @Test
+    fun testModelCount() {
+        assertThat(modelCounts(listOf())).containsExactly(2L, 4L, 3L, 6L)
+        assertThat(CompilationCache.statistics().entries).isEqualTo(4)
+        assertThat(modelCounts(listOf("[c = \"c1\"]"))).containsExactly(1L, 2L, 1L, 2L)
+        assertThat(CompilationCache.statistics().entries).isEqualTo(4)
+    }
+
+    @Test
+    fun testBackboneIsEqualToSatBackbone() {
+        val compiled = backbones(listOf("[c = \"c1\"]"))
+        assertThat(CompilationCache.statistics().entries).isEqualTo(4)
+        ComputationConfig.setFromValues(compilationCacheSize = 0L)
+        assertThat(compiled).isEqualTo(backbones(listOf("[c = \"c1\"]")))
+    }
+
+    @Test
+    fun testNodeLimitFallsBackToSolver() {
+        ComputationConfig.setFromValues(compilationCacheSize = 100L)
+        assertThat(modelCounts(listOf())).containsExactly(2L, 4L, 3L, 6L)
+        assertThat(CompilationCache.statistics().entries).isEqualTo(0)
+    }
+
+    @Test
+    fun testWeightIsBoundedAfterQueries() {
+        ComputationConfig.setFromValues(compilationCacheSize = 25_000L)
+        repeat(3) { assertThat(modelCounts(listOf("[c = \"c1\"]"))).containsExactly(1L, 2L, 1L, 2L) }
+        assertThat(CompilationCache.statistics().weight).isLessThanOrEqualTo(25_000L)
+    }
+
+    @Test
+    fun testInvalidate() {
+        modelCounts(listOf())
+        CompilationCache.invalidate("other")
+        assertThat(CompilationCache.statistics().entries).isEqualTo(4)
+        CompilationCache.invalidate("fileId")
+        assertThat(CompilationCache.statistics().entries).isEqualTo(0)
+    }
+
+    private fun modelCounts(additionalConstraints: List<String>): List<Long> {
+        val cf = CspFactory(FormulaFactory.nonCaching())
+        val modelTranslation = transpileModel(cf, model, listOf(), additionalConstraints = additionalConstraints)
+        val request = ModelCountRequest("fileId", mutableListOf(), additionalConstraints)
+        return modelTranslation.computations.map {
+            val status = ComputationStatusBuilder("fileId", "jobId", SINGLE)
+            ModelCountComputation.computeForSlice(request, it.sliceSet.slices.first(), it.info, model, cf, status).count
+        }.map(BigInteger::toLong)
+    }
+
+    private fun backbones(additionalConstraints: List<String>) =
+        CspFactory(FormulaFactory.nonCaching()).let { cf ->
+            val modelTranslation = transpileModel(cf, model, listOf(), additionalConstraints = additionalConstraints)
+            val request = BackboneRequest("fileId", mutableListOf(), additionalConstraints, listOf())
+            modelTranslation.computations.map {
+                val status = ComputationStatusBuilder("fileId", "jobId", LIST)
+                val slice = it.sliceSet.slices.first()
+                BackboneComputation.computeForSlice(request, slice, it.info, model, cf, status).backbone
+            }
+        }
+}
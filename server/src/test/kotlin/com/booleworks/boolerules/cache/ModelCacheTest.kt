@@ -0,0 +1,77 @@
+package com.booleworks.boolerules.cache
+
+import com.booleworks.boolerules.config.ComputationConfig
+import com.booleworks.boolerules.persistence.Persistence
+import com.booleworks.boolerules.rulefile.deleteRuleFile
+import com.booleworks.boolerules.rulefile.storeRuleFile
+import com.booleworks.boolerules.service.ServiceEnv
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.io.File
+import java.util.concurrent.CompletableFuture
+
+internal class ModelCacheTest {
+
+    private lateinit var id1: String
+    private lateinit var id2: String
+
+    @BeforeEach
+    fun setUp() {
+        val env = mapOf("instance" to "test", "persistenceType" to "in_memory")
+        Persistence.setFromEnvironment(ServiceEnv.read { env[it] })
+        ModelCache.invalidateAll()
+        id1 = store("../test-files/prl/transpiler/merge3.prl")
+        id2 = store("../test-files/prl/transpiler/merge4.prl")
+    }
+
+    @AfterEach
+    fun tearDown() {
+        ComputationConfig.setFromValues(modelCacheSize = 16L)
+        ModelCache.invalidateAll()
+    }
+
+    @Test
+    fun testHit() {
+        val before = ModelCache.statistics()
+        val model = ModelCache.getOrLoad(id1).getOrThrow()
+        assertThat(ModelCache.getOrLoad(id1).getOrThrow()).isSameAs(model)
+        val after = ModelCache.statistics()
+        assertThat(after.entries).isEqualTo(1)
+        assertThat(after.misses - before.misses).isEqualTo(1)
+        assertThat(after.hits - before.hits).isEqualTo(1)
+    }
+
+    @Test
+    fun testConcurrentLoadsLoadOnce() {
+        val before = ModelCache.statistics()
+        val models = (1..8).map { CompletableFuture.supplyAsync { ModelCache.getOrLoad(id1).getOrThrow() } }
+            .map { it.join() }
+        assertThat(models).allSatisfy { assertThat(it).isSameAs(models[0]) }
+        val after = ModelCache.statistics()
+        assertThat(after.misses - before.misses).isEqualTo(1)
+        assertThat(after.hits - before.hits).isEqualTo(7)
+    }
+
+    @Test
+    fun testEviction() {
+        ComputationConfig.setFromValues(modelCacheSize = 1L)
+        val model1 = ModelCache.getOrLoad(id1).getOrThrow()
+        ModelCache.getOrLoad(id2).getOrThrow()
+        assertThat(ModelCache.statistics().entries).isEqualTo(1)
+        assertThat(ModelCache.getOrLoad(id1).getOrThrow()).isNotSameAs(model1)
+    }
+
+    @Test
+    fun testInvalidationOnDelete() {
+        ModelCache.getOrLoad(id1).getOrThrow()
+        ModelCache.getOrLoad(id2).getOrThrow()
+        assertThat(deleteRuleFile(id1)).isTrue()
+        assertThat(ModelCache.statistics().entries).isEqualTo(1)
+        assertThat(ModelCache.getOrLoad(id1).isFailure).isTrue()
+        assertThat(ModelCache.getOrLoad(id2).isSuccess).isTrue()
+    }
+
+    private fun store(path: String) = File(path).inputStream().use { storeRuleFile(File(path).name, it).id }
+}
@@ -0,0 +1,101 @@
+package com.booleworks.boolerules.cache
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.concurrent.thread
+
+internal class WeightedLruCacheTest {
+
+    @Test
+    fun testHitsAndMisses() {
+        val cache = WeightedLruCache<String, String>("test", { 100 }, { it.length.toLong() })
+        assertThat(cache["a"]).isNull()
+        assertThat(cache.getOrLoad("a") { "value" }).isEqualTo("value")
+        assertThat(cache.getOrLoad("a") { "other" }).isEqualTo("value")
+        assertThat(cache["a"]).isEqualTo("value")
+        assertThat(cache.statistics()).isEqualTo(CacheStatistics("test", 1, 5, 100, 2, 2, 0))
+    }
+
+    @Test
+    fun testEviction() {
+        val cache = WeightedLruCache<String, String>("test", { 10 }, { it.length.toLong() })
+        cache.putIfAbsent("a", "aaaa")
+        cache.putIfAbsent("b", "bbbb")
+        assertThat(cache["a"]).isEqualTo("aaaa")
+        cache.putIfAbsent("c", "cccc")
+        assertThat(cache["a"]).isEqualTo("aaaa")
+        assertThat(cache["b"]).isNull()
+        assertThat(cache["c"]).isEqualTo("cccc")
+        assertThat(cache.statistics().weight).isEqualTo(8)
+        assertThat(cache.statistics().evictions).isEqualTo(1)
+    }
+
+    @Test
+    fun testTooHeavyValues() {
+        val cache = WeightedLruCache<String, String>("test", { 3 }, { it.length.toLong() })
+        assertThat(cache.putIfAbsent("a", "aaaa")).isNull()
+        assertThat(cache["a"]).isNull()
+        val disabled = WeightedLruCache<String, String>("test", { 0 }, { it.length.toLong() })
+        assertThat(disabled.getOrLoad("a") { "a" }).isEqualTo("a")
+        assertThat(disabled.statistics().entries).isEqualTo(0)
+    }
+
+    @Test
+    fun testConcurrentMissesLoadOnce() {
+        val cache = WeightedLruCache<String, String>("test", { 100 }, { it.length.toLong() })
+        val loads = AtomicInteger()
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val loader = thread {
+            cache.getOrLoad("a") {
+                started.countDown()
+                release.await()
+                loads.incrementAndGet()
+                "value"
+            }
+        }
+        started.await()
+        val waited = AtomicReference<String>()
+        val waiter = thread { waited.set(cache.getOrLoad("a") { loads.incrementAndGet().toString() }) }
+        Thread.sleep(20)
+        release.countDown()
+        loader.join()
+        waiter.join()
+        assertThat(loads.get()).isEqualTo(1)
+        assertThat(waited.get()).isEqualTo("value")
+        assertThat(cache["a"]).isEqualTo("value")
+        assertThat(cache.statistics().misses).isEqualTo(1)
+    }
+
+    @Test
+    fun testReweigh() {
+        val values = mapOf("a" to StringBuilder("aaa"), "b" to StringBuilder("bbb"))
+        val cache = WeightedLruCache<String, StringBuilder>("test", { 10 }, { it.length.toLong() })
+        values.forEach { (key, value) -> cache.putIfAbsent(key, value) }
+        values["a"]!!.append("aaaaa")
+        cache.reweigh("a", values["a"]!!)
+        assertThat(cache["b"]).isNull()
+        assertThat(cache.statistics().weight).isEqualTo(8)
+        values["a"]!!.append("aaaaa")
+        cache.reweigh("a", values["a"]!!)
+        assertThat(cache["a"]).isNull()
+        assertThat(cache.statistics().weight).isEqualTo(0)
+    }
+
+    @Test
+    fun testInvalidation() {
+        val cache = WeightedLruCache<String, String>("test", { 100 }, { it.length.toLong() })
+        cache.putIfAbsent("file1:a", "a")
+        cache.putIfAbsent("file1:b", "bb")
+        cache.putIfAbsent("file2:a", "ccc")
+        assertThat(cache.invalidateIf { it.startsWith("file1") }).isEqualTo(2)
+        assertThat(cache.statistics().entries).isEqualTo(1)
+        assertThat(cache.statistics().weight).isEqualTo(3)
+        cache.invalidateAll()
+        assertThat(cache.statistics().entries).isEqualTo(0)
+        assertThat(cache.statistics().weight).isEqualTo(0)
+    }
+}
@@ -0,0 +1,90 @@
+package com.booleworks.boolerules.computations.generic
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.concurrent.thread
+
+class ComputationSchedulerTest {
+
+    @Test
+    fun testAllTasksAreRun() {
+        val results = ConcurrentLinkedQueue<Int>()
+        ComputationScheduler.runAll((1..100).map<Int, () -> Unit> { i -> { results.add(i) } }, 4)
+        assertThat(results).containsExactlyInAnyOrderElementsOf(1..100)
+    }
+
+    @Test
+    fun testParallelismLimit() {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val tasks = (1..50).map<Int, () -> Unit> {
+            {
+                maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> maxOf(a, b) }
+                Thread.sleep(2)
+                running.decrementAndGet()
+            }
+        }
+        ComputationScheduler.runAll(tasks, 2)
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2)
+    }
+
+    @Test
+    fun testNestedTasks() {
+        val count = AtomicInteger()
+        val inner = { (1..10).map<Int, () -> Unit> { { count.incrementAndGet() } } }
+        ComputationScheduler.runAll((1..20).map { { ComputationScheduler.runAll(inner(), 2) } }, 20)
+        assertThat(count.get()).isEqualTo(200)
+    }
+
+    @Test
+    fun testNestedTasksRespectParallelism() {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val inner = (1..20).map<Int, () -> Unit> {
+            {
+                maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> maxOf(a, b) }
+                Thread.sleep(2)
+                running.decrementAndGet()
+            }
+        }
+        ComputationScheduler.runAll(listOf { ComputationScheduler.runAll(inner, 1) }, 1)
+        assertThat(maxRunning.get()).isEqualTo(1)
+    }
+
+    @Test
+    fun testInterruptionSkipsPendingTasks() {
+        val started = CountDownLatch(1)
+        val count = AtomicInteger()
+        val tasks = (1..100).map<Int, () -> Unit> {
+            {
+                started.countDown()
+                count.incrementAndGet()
+                Thread.sleep(10)
+            }
+        }
+        val failure = AtomicReference<Throwable>()
+        val caller = thread { runCatching { ComputationScheduler.runAll(tasks, 1) }.onFailure(failure::set) }
+        started.await()
+        caller.interrupt()
+        caller.join()
+        assertThat(failure.get()).isInstanceOf(InterruptedException::class.java)
+        Thread.sleep(50)
+        assertThat(count.get()).isLessThan(100)
+        assertThat(ComputationScheduler.statistics().activeJobs).isEqualTo(0)
+        assertThat(ComputationScheduler.statistics().queuedTasks).isEqualTo(0)
+    }
+
+    @Test
+    fun testFailure() {
+        val tasks = listOf({ }, { error("Task failed") }, { })
+        assertThatThrownBy { ComputationScheduler.runAll(tasks, 1) }
+            .isInstanceOf(IllegalStateException::class.java)
+            .hasMessage("Task failed")
+        assertThat(ComputationScheduler.statistics().runningTasks).isEqualTo(0)
+    }
+}
@@ -0,0 +1,44 @@
+package com.booleworks.boolerules.computations.generic
+
+import com.booleworks.logicng.csp.CspFactory
+import com.booleworks.logicng.formulas.FormulaFactory
+import com.booleworks.logicng.solvers.SatSolver
+import com.booleworks.prl.compiler.PrlCompiler
+import com.booleworks.prl.parser.parseRuleFile
+import com.booleworks.prl.transpiler.transpileModel
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class IncrementalSliceSolverTest {
+
+    private val model = PrlCompiler().compile(parseRuleFile("../test-files/prl/transpiler/merge3.prl"))
+
+    @Test
+    fun testCommonFormulas() {
+        val cf = CspFactory(FormulaFactory.caching())
+        val modelTranslation = transpileModel(cf, model, listOf())
+        val common = IncrementalSliceSolver.commonFormulas(modelTranslation)
+        assertThat(common).isNotEmpty
+        modelTranslation.computations.forEach { comp ->
+            assertThat(comp.info.propositions.map { it.formula }).containsAll(common)
+        }
+    }
+
+    @Test
+    fun testSameResultAsSingleSolvers() {
+        val cf = CspFactory(FormulaFactory.caching())
+        val modelTranslation = transpileModel(cf, model, listOf(), additionalConstraints = listOf("[b = \"b2\"]"))
+        val f = cf.formulaFactory
+        val sliceSolver = IncrementalSliceSolver(f, NON_PT_CONFIG, IncrementalSliceSolver.commonFormulas(modelTranslation))
+        val results = modelTranslation.computations.map { comp ->
+            val expected = SatSolver.newSolver(f).apply { addPropositions(comp.info.propositions) }.sat()
+            assertThat(sliceSolver.sat(comp.info)).isEqualTo(expected)
+            expected
+        }
+        assertThat(results).contains(true, false)
+        // solving the slices a second time must not change the results
+        modelTranslation.computations.zip(results).reversed().forEach { (comp, expected) ->
+            assertThat(sliceSolver.sat(comp.info)).isEqualTo(expected)
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.booleworks.boolerules.computations.generic
+
+import com.booleworks.boolerules.computations.consistency.ConsistencyComputation.ConsistencyInternalResult
+import com.booleworks.boolerules.computations.consistency.ConsistencyRequest
+import com.booleworks.boolerules.rulefile.PropertyRangeDO
+import com.booleworks.boolerules.rulefile.PropertyTypeDO
+import com.booleworks.boolerules.rulefile.SlicingPropertyDO
+import com.booleworks.prl.model.EnumProperty
+import com.booleworks.prl.model.IntProperty
+import com.booleworks.prl.model.slices.Slice
+import com.booleworks.prl.model.slices.SliceType
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.Timeout
+import java.util.TreeMap
+import java.util.concurrent.TimeUnit
+
+class SliceMergerTest {
+
+    private val versionSelection = PropertySelectionDO(
+        "version",
+        PropertyTypeDO.INT,
+        PropertyRangeDO(intMin = 1, intMax = 100_000),
+        SliceTypeDO.SPLIT
+    )
+    private val seriesSelection = PropertySelectionDO(
+        "series",
+        PropertyTypeDO.ENUM,
+        PropertyRangeDO(enumValues = setOf("S1", "S2")),
+        SliceTypeDO.SPLIT
+    )
+
+    @Test
+    fun testContinuousWindows() {
+        val result = TreeMap<Slice, ConsistencyInternalResult>()
+        listOf(1, 2, 3, 4, 5, 6).forEach {
+            val slice = Slice.of(IntProperty("version", it), SliceType.SPLIT)
+            result[slice] = ConsistencyInternalResult(slice, it != 4, null, null)
+        }
+        val merged = mergeMainResults(ConsistencyRequest("", mutableListOf(versionSelection), listOf()), result)
+
+        assertThat(merged.merge).hasSize(2)
+        assertThat(merged.merge[0].result).isTrue()
+        assertThat(merged.merge[0].slices).containsExactly(versionSlice(1, 3), versionSlice(5, 6))
+        assertThat(merged.merge[1].result).isFalse()
+        assertThat(merged.merge[1].slices).containsExactly(versionSlice(4, 4))
+        assertThat(merged.detailMap[1]!!.map { it.slice.content[0].range.intValues })
+            .containsExactly(setOf(1), setOf(2), setOf(3), setOf(5), setOf(6))
+        assertThat(merged.detailMap[2]!!.map { it.slice.content[0].range.intValues }).containsExactly(setOf(4))
+    }
+
+    @Test
+    fun testDiscreteAndContinuous() {
+        val result = TreeMap<Slice, ConsistencyInternalResult>()
+        listOf("S1", "S2").forEach { series ->
+            listOf(1, 2, 3).forEach {
+                val slice = Slice.of(
+                    mapOf(
+                        Pair(EnumProperty("series", series), SliceType.SPLIT),
+                        Pair(IntProperty("version", it), SliceType.SPLIT)
+                    )
+                )
+                result[slice] = ConsistencyInternalResult(slice, series == "S1" || it != 2, null, null)
+            }
+        }
+        val request = ConsistencyRequest("", mutableListOf(seriesSelection, versionSelection), listOf())
+        val merged = mergeMainResults(request, result)
+
+        assertThat(merged.merge).hasSize(2)
+        assertThat(merged.merge[0].slices).containsExactly(
+            SliceDO(listOf(seriesProperty("S1", "S2"), versionProperty(1, 1))),
+            SliceDO(listOf(seriesProperty("S1", "S2"), versionProperty(3, 3))),
+            SliceDO(listOf(seriesProperty("S1"), versionProperty(2, 2)))
+        )
+        assertThat(merged.merge[1].slices).containsExactly(SliceDO(listOf(seriesProperty("S2"), versionProperty(2, 2))))
+        assertThat(merged.detailMap[1]).hasSize(5)
+        assertThat(merged.detailMap[2]).hasSize(1)
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    fun testLargeNumberOfSlices() {
+        val numberOfVersions = 50_000
+        val result = TreeMap<Slice, ConsistencyInternalResult>()
+        listOf("S1", "S2").forEach { series ->
+            (1..numberOfVersions).forEach {
+                val slice = Slice.of(
+                    mapOf(
+                        Pair(EnumProperty("series", series), SliceType.SPLIT),
+                        Pair(IntProperty("version", it), SliceType.SPLIT)
+                    )
+                )
+                result[slice] = ConsistencyInternalResult(slice, it % 1000 != 0, null, null)
+            }
+        }
+        val request = ConsistencyRequest("", mutableListOf(seriesSelection, versionSelection), listOf())
+        val merged = mergeMainResults(request, result)
+
+        assertThat(merged.merge).hasSize(2)
+        assertThat(merged.merge[0].slices).hasSize(numberOfVersions / 1000)
+        assertThat(merged.merge[1].slices).hasSize(numberOfVersions / 1000)
+        assertThat(merged.detailMap[1]!!.size + merged.detailMap[2]!!.size).isEqualTo(2 * numberOfVersions)
+    }
+
+    private fun versionProperty(min: Int, max: Int) =
+        SlicingPropertyDO("version", PropertyTypeDO.INT, PropertyRangeDO(intMin = min, intMax = max))
+
+    private fun seriesProperty(vararg values: String) =
+        SlicingPropertyDO("series", PropertyTypeDO.ENUM, PropertyRangeDO(enumValues = values.toSet()))
+
+    private fun versionSlice(min: Int, max: Int) = SliceDO(listOf(versionProperty(min, max)))
+}
@@ -0,0 +1,52 @@
+package com.booleworks.boolerules.computations.generic
+
+import com.booleworks.logicng.csp.CspFactory
+import com.booleworks.logicng.formulas.FormulaFactory
+import com.booleworks.prl.compiler.PrlCompiler
+import com.booleworks.prl.model.slices.Slice
+import com.booleworks.prl.parser.parseRuleFile
+import com.booleworks.prl.transpiler.transpileModel
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class SliceSetResultsTest {
+
+    private val model = PrlCompiler().compile(parseRuleFile("../test-files/prl/transpiler/merge3.prl"))
+
+    @Test
+    fun testEachSliceSetIsComputedOnce() {
+        val modelTranslation = transpileModel(CspFactory(FormulaFactory.caching()), model, listOf())
+        val sliceMap = modelTranslation.sliceMap()
+        val results = SliceSetResults<Pair<Slice, Int>>(modelTranslation)
+        val status = ComputationStatusBuilder("fileId", "jobId", ComputationVariant.LIST)
+        var numComputations = 0
+        modelTranslation.allSlices.forEach { slice ->
+            val translation = sliceMap[slice]!!
+            val result = results.getOrCompute(listOf(translation), slice, status, { r, s -> r.copy(first = s) }) {
+                Pair(slice, modelTranslation.computations.indexOf(translation)).also { numComputations++ }
+            }
+            assertThat(result.first).isEqualTo(slice)
+            assertThat(result.second).isEqualTo(modelTranslation.computations.indexOf(translation))
+        }
+        assertThat(numComputations).isEqualTo(modelTranslation.computations.size)
+        assertThat(results.numberOfReusedResults())
+            .isEqualTo(modelTranslation.allSlices.size - modelTranslation.computations.size)
+    }
+
+    @Test
+    fun testWarningsAreReissuedForReusedResults() {
+        val modelTranslation = transpileModel(CspFactory(FormulaFactory.caching()), model, listOf())
+        val sliceMap = modelTranslation.sliceMap()
+        val results = SliceSetResults<Slice>(modelTranslation)
+        val status = ComputationStatusBuilder("fileId", "jobId", ComputationVariant.LIST)
+        modelTranslation.allSlices.forEach { slice ->
+            results.getOrCompute(listOf(sliceMap[slice]!!), slice, status, { _, s -> s }) { sliceStatus ->
+                sliceStatus.addWarning("warning for slice $slice")
+                slice
+            }
+        }
+        assertThat(modelTranslation.allSlices.size).isGreaterThan(modelTranslation.computations.size)
+        assertThat(status.build().warnings)
+            .containsExactlyInAnyOrderElementsOf(modelTranslation.allSlices.map { "warning for slice $it" })
+    }
+}
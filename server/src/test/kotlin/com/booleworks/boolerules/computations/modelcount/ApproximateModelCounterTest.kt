@@ -0,0 +1,44 @@
+package com.booleworks.boolerules.computations.modelcount
+
+import com.booleworks.logicng.formulas.FormulaFactory
+import com.booleworks.logicng.solvers.SatSolver
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.math.BigInteger
+import kotlin.random.Random
+import kotlin.time.TimeSource
+
+internal class ApproximateModelCounterTest {
+
+    private val f = FormulaFactory.caching()
+    private val vars = (0 until 12).map { f.variable("v$it") }
+
+    @Test
+    fun testSmallCountIsExact() {
+        val solver = SatSolver.newSolver(f).apply { add(f.or(vars[0], vars[1])) }
+        val count = ApproximateModelCounter(solver, vars.take(3), 0.1, 0.9, null, Random(1)).count()!!
+        assertThat(count.estimate).isEqualTo(BigInteger.valueOf(6))
+        assertThat(count.lowerBound).isEqualTo(count.estimate)
+        assertThat(count.upperBound).isEqualTo(count.estimate)
+        assertThat(count.isExact).isTrue()
+    }
+
+    @Test
+    fun testApproximateCount() {
+        // 3 * 2^10 = 3072 models, far more than the threshold of 32 models for a tolerance of 3
+        val solver = SatSolver.newSolver(f).apply { add(f.or(vars[0], vars[1])) }
+        val count = ApproximateModelCounter(solver, vars, 3.0, 0.5, null, Random(1)).count()!!
+        assertThat(count.isExact).isFalse()
+        assertThat(count.confidence).isEqualTo(0.5)
+        assertThat(count.estimate).isBetween(BigInteger.valueOf(3072 / 4), BigInteger.valueOf(3072 * 4))
+        assertThat(count.lowerBound).isLessThanOrEqualTo(count.estimate)
+        assertThat(count.upperBound).isGreaterThanOrEqualTo(count.estimate)
+    }
+
+    @Test
+    fun testExhaustedTimeBudget() {
+        val solver = SatSolver.newSolver(f).apply { add(f.or(vars[0], vars[1])) }
+        val deadline = TimeSource.Monotonic.markNow()
+        assertThat(ApproximateModelCounter(solver, vars, 3.0, 0.5, deadline, Random(1)).count()).isNull()
+    }
+}
@@ -3,6 +3,8 @@ package com.booleworks.boolerules.computations.modelcount
 import com.booleworks.boolerules.TestWithConfig
 import com.booleworks.boolerules.computations.generic.ComputationStatusBuilder
 import com.booleworks.boolerules.computations.generic.ComputationVariant
+import com.booleworks.boolerules.computations.modelenumeration.ModelEnumerationComputation
+import com.booleworks.boolerules.computations.modelenumeration.ModelEnumerationRequest
 import com.booleworks.logicng.csp.CspFactory
 import com.booleworks.logicng.formulas.FormulaFactory
 import com.booleworks.prl.compiler.PrlCompiler
@@ -159,4 +161,59 @@ internal class ModelCountIntTest : TestWithConfig() {
         Assertions.assertThat(result5.count).isEqualTo(BigInteger.valueOf(0))
         Assertions.assertThat(result6.count).isEqualTo(BigInteger.valueOf(2))
     }
+
+    @Test
+    fun testComputeForSliceWithFeatures() {
+        val f = FormulaFactory.nonCaching()
+        val cf = CspFactory(f)
+        val modelTranslation = transpileModel(cf, model, listOf())
+
+        val info1 = modelTranslation[0].info
+        val resultA = cut.computeForSlice(
+            ModelCountRequest("any", mutableListOf(), listOf(), listOf("a")),
+            Slice.empty(),
+            info1,
+            model,
+            cf,
+            ComputationStatusBuilder("fileId", "jobId", ComputationVariant.SINGLE)
+        )
+        val resultC = cut.computeForSlice(
+            ModelCountRequest("any", mutableListOf(), listOf(), listOf("c")),
+            Slice.empty(),
+            info1,
+            model,
+            cf,
+            ComputationStatusBuilder("fileId", "jobId", ComputationVariant.SINGLE)
+        )
+
+        Assertions.assertThat(resultA.count).isEqualTo(BigInteger.valueOf(5))
+        Assertions.assertThat(resultC.count).isEqualTo(BigInteger.valueOf(9))
+    }
+
+    @Test
+    fun testCountEqualsNumberOfModels() {
+        val cf = CspFactory(FormulaFactory.nonCaching())
+        val modelTranslation = transpileModel(cf, model, listOf())
+        val countRequest = ModelCountRequest("any", mutableListOf(), listOf())
+        val enumerationRequest = ModelEnumerationRequest("any", mutableListOf(), listOf(), listOf())
+        modelTranslation.computations.forEach {
+            val count = cut.computeForSlice(
+                countRequest,
+                Slice.empty(),
+                it.info,
+                model,
+                cf,
+                ComputationStatusBuilder("fileId", "jobId", ComputationVariant.SINGLE)
+            ).count
+            val models = ModelEnumerationComputation.computeForSlice(
+                enumerationRequest,
+                Slice.empty(),
+                it.info,
+                model,
+                cf,
+                ComputationStatusBuilder("fileId", "jobId", ComputationVariant.LIST)
+            ).models
+            Assertions.assertThat(count).isEqualTo(BigInteger.valueOf(models.size.toLong()))
+        }
+    }
 }
@@ -2,7 +2,10 @@ package com.booleworks.boolerules.computations.modelcount
 
 import com.booleworks.boolerules.TestWithConfig
 import com.booleworks.boolerules.computations.generic.ComputationStatusBuilder
+import com.booleworks.boolerules.computations.generic.ComputationVariant.LIST
 import com.booleworks.boolerules.computations.generic.ComputationVariant.SINGLE
+import com.booleworks.boolerules.computations.modelenumeration.ModelEnumerationComputation
+import com.booleworks.boolerules.computations.modelenumeration.ModelEnumerationRequest
 import com.booleworks.logicng.csp.CspFactory
 import com.booleworks.logicng.formulas.FormulaFactory
 import com.booleworks.prl.compiler.PrlCompiler
@@ -120,4 +123,105 @@ internal class ModelCountTest : TestWithConfig() {
         assertThat(result3.count).isEqualTo(BigInteger.valueOf(1))
         assertThat(result4.count).isEqualTo(BigInteger.valueOf(2))
     }
+
+    @Test
+    fun testComputeForSliceWithFeatures() {
+        assertThat(projectedCounts(listOf("c"))).containsExactly(2L, 2L, 3L, 3L)
+        assertThat(projectedCounts(listOf("q"))).containsExactly(1L, 2L, 1L, 2L)
+        assertThat(projectedCounts(listOf("c", "q"))).containsExactly(2L, 4L, 3L, 6L)
+        assertThat(projectedCounts(listOf("a", "b"))).containsExactly(1L, 1L, 1L, 1L)
+    }
+
+    @Test
+    fun testProjectedCount() {
+        val f = FormulaFactory.caching()
+        val (a, b, aux) = f.variables("a", "b", "aux")
+        val formulas = listOf(f.or(a, b), f.equivalence(aux, a))
+        val variables = sortedSetOf(a, b, aux)
+        val features = setOf(a, b)
+        assertThat(ProjectedModelCounter.count(f, formulas, variables, features, features))
+            .isEqualTo(BigInteger.valueOf(3))
+        assertThat(ProjectedModelCounter.count(f, formulas, variables, setOf(a), features)).isEqualTo(BigInteger.TWO)
+        assertThat(ProjectedModelCounter.count(f, formulas, variables, setOf(a), features, maxNodes = 1)).isNull()
+    }
+
+    @Test
+    fun testProjectedCountWithUndeterminedAuxiliary() {
+        val f = FormulaFactory.caching()
+        val (a, b, aux) = f.variables("a", "b", "aux")
+        val formulas = listOf(f.or(a, b), f.implication(aux, a))
+        val variables = sortedSetOf(a, b, aux)
+        val features = setOf(a, b)
+        assertThat(ProjectedModelCounter.count(f, formulas, variables, features, features))
+            .isEqualTo(BigInteger.valueOf(3))
+    }
+
+    @Test
+    fun testCountOfVersionedModelEqualsNumberOfModels() {
+        val versionModel = PrlCompiler().compile(parseRuleFile("../test-files/prl/transpiler/version-small.prl"))
+        val cf = CspFactory(FormulaFactory.nonCaching())
+        val modelTranslation = transpileModel(cf, versionModel, listOf())
+        val countRequest = ModelCountRequest("any", mutableListOf(), listOf())
+        val enumerationRequest = ModelEnumerationRequest("any", mutableListOf(), listOf(), listOf())
+        modelTranslation.computations.forEach {
+            val countStatus = ComputationStatusBuilder("fileId", "jobId", SINGLE)
+            val enumerationStatus = ComputationStatusBuilder("fileId", "jobId", LIST)
+            val count = cut.computeForSlice(countRequest, Slice.empty(), it.info, versionModel, cf, countStatus).count
+            val models = ModelEnumerationComputation.computeForSlice(
+                enumerationRequest, Slice.empty(), it.info, versionModel, cf, enumerationStatus
+            ).models
+            assertThat(count).isEqualTo(BigInteger.valueOf(models.size.toLong()))
+        }
+    }
+
+    @Test
+    fun testComputeForSliceApproximated() {
+        val cf = CspFactory(FormulaFactory.nonCaching())
+        val modelTranslation = transpileModel(cf, model, listOf())
+        val request = ModelCountRequest("any", mutableListOf(), listOf(), approximate = true)
+        val results = modelTranslation.computations.map {
+            val status = ComputationStatusBuilder("fileId", "jobId", SINGLE)
+            cut.computeForSlice(request, Slice.empty(), it.info, model, cf, status)
+        }
+
+        // the counts are below the threshold of the approximation and therefore exact
+        assertThat(results.map { it.count.toLong() }).containsExactly(2L, 4L, 3L, 6L)
+        assertThat(results.map { it.detail.approximate }).containsOnly(false)
+        assertThat(results.map { it.detail.upperBound }).isEqualTo(results.map { it.count })
+    }
+
+    @Test
+    fun testTimeBudgetStartsWithComputation() {
+        val request = ModelCountRequest("any", mutableListOf(), listOf(), approximate = true, timeBudget = 1)
+        Thread.sleep(1_100)
+        val status = ComputationStatusBuilder("fileId", "jobId", SINGLE)
+        val result = cut.computeForModel(request, model, status)
+        assertThat(status.successful()).isTrue()
+        assertThat(result).isNotEmpty()
+    }
+
+    @Test
+    fun testExhaustedTimeBudget() {
+        val cf = CspFactory(FormulaFactory.nonCaching())
+        val modelTranslation = transpileModel(cf, model, listOf())
+        val request = ModelCountRequest("any", mutableListOf(), listOf(), approximate = true, timeBudget = 0)
+        val status = ComputationStatusBuilder("fileId", "jobId", SINGLE)
+        val result = cut.computeForSlice(request, Slice.empty(), modelTranslation[0].info, model, cf, status)
+        assertThat(status.successful()).isTrue()
+        assertThat(status.build().warnings).hasSize(1)
+        assertThat(result.detail.approximate).isTrue()
+        assertThat(result.detail.lowerBound).isEqualTo(BigInteger.ZERO)
+        assertThat(result.detail.upperBound).isGreaterThanOrEqualTo(BigInteger.TWO)
+        assertThat(result.detail.confidence).isEqualTo(0.0)
+    }
+
+    private fun projectedCounts(features: List<String>): List<Long> {
+        val cf = CspFactory(FormulaFactory.nonCaching())
+        val modelTranslation = transpileModel(cf, model, listOf())
+        val request = ModelCountRequest("any", mutableListOf(), listOf(), features)
+        return modelTranslation.computations.map {
+            val status = ComputationStatusBuilder("fileId", "jobId", SINGLE)
+            cut.computeForSlice(request, Slice.empty(), it.info, model, cf, status).count.toLong()
+        }
+    }
 }
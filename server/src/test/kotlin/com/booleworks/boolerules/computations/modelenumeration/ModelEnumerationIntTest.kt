@@ -161,7 +161,7 @@ internal class ModelEnumerationIntTest : TestWithConfig() {
 
         Assertions.assertThat(result1.slice).isEqualTo(Slice.empty())
         Assertions.assertThat(result1.models.size).isEqualTo(5)
-        Assertions.assertThat(result1.models).containsExactlyEntriesOf(
+        Assertions.assertThat(result1.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
@@ -211,7 +211,7 @@ internal class ModelEnumerationIntTest : TestWithConfig() {
             )
         )
         Assertions.assertThat(result2.models.size).isEqualTo(1)
-        Assertions.assertThat(result2.models).containsExactlyEntriesOf(
+        Assertions.assertThat(result2.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
@@ -225,7 +225,7 @@ internal class ModelEnumerationIntTest : TestWithConfig() {
             )
         )
         Assertions.assertThat(result3.models.size).isEqualTo(3)
-        Assertions.assertThat(result3.models).containsExactlyEntriesOf(
+        Assertions.assertThat(result3.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
@@ -257,7 +257,7 @@ internal class ModelEnumerationIntTest : TestWithConfig() {
             )
         )
         Assertions.assertThat(result4.models.size).isEqualTo(3)
-        Assertions.assertThat(result4.models).containsExactlyEntriesOf(
+        Assertions.assertThat(result4.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
@@ -289,11 +289,11 @@ internal class ModelEnumerationIntTest : TestWithConfig() {
             )
         )
         Assertions.assertThat(result5.models.size).isEqualTo(0)
-        Assertions.assertThat(result5.models).containsExactlyEntriesOf(
+        Assertions.assertThat(result5.featureModels()).containsExactlyEntriesOf(
             mutableMapOf()
         )
         Assertions.assertThat(result6.models.size).isEqualTo(2)
-        Assertions.assertThat(result6.models).containsExactlyEntriesOf(
+        Assertions.assertThat(result6.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
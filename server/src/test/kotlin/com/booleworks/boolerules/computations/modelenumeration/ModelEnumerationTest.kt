@@ -91,6 +91,32 @@ internal class ModelEnumerationTest : TestWithConfig() {
         }
     }
 
+    @Test
+    fun testComputeForSliceWithMaxModels() {
+        val f = FormulaFactory.nonCaching()
+        val cf = CspFactory(f)
+        val info = transpileModel(cf, model, listOf())[3].info
+
+        val limitedStatus = ComputationStatusBuilder("fileId", "jobId", LIST)
+        val limitedRequest = ModelEnumerationRequest("any", mutableListOf(), listOf(), listOf(), maxModels = 4)
+        val limited = cut.computeForSlice(limitedRequest, Slice.empty(), info, model, cf, limitedStatus)
+        assertThat(limited.models).hasSize(4)
+        assertThat(limitedStatus.build().warnings).hasSize(1)
+
+        val status = ComputationStatusBuilder("fileId", "jobId", LIST)
+        val request = ModelEnumerationRequest("any", mutableListOf(), listOf(), listOf(), maxModels = 6)
+        val result = cut.computeForSlice(request, Slice.empty(), info, model, cf, status)
+        assertThat(result.models).hasSize(6)
+        assertThat(status.build().warnings).isEmpty()
+
+        // a model which was not enumerated is only reported as missing for a complete slice
+        assertThat(limited.complete).isFalse()
+        assertThat(result.complete).isTrue()
+        val element = result.models.keys.first()
+        assertThat(cut.extractInternalResult(element, limited.copy(models = mutableMapOf()))).isNull()
+        assertThat(cut.extractInternalResult(element, result.copy(models = mutableMapOf()))?.isModel).isFalse()
+    }
+
     @ParameterizedTest
     @MethodSource("configs")
     fun testComputeAllSplit(tc: TestConfig) {
@@ -119,6 +145,24 @@ internal class ModelEnumerationTest : TestWithConfig() {
         }
     }
 
+    @Test
+    fun testMaxModelsOverAllSlices() {
+        val sliceSelection = mutableListOf(
+            PropertySelectionDO(
+                "series",
+                PropertyTypeDO.ENUM,
+                PropertyRangeDO(enumValues = setOf("S1", "S2")),
+                SliceTypeDO.SPLIT
+            )
+        )
+        val request = ModelEnumerationRequest("any", sliceSelection, listOf(), listOf(), maxModels = 5)
+        val status = ComputationStatusBuilder("fileId", "jobId", LIST)
+        val response = cut.computeResponse(request, model, status)
+
+        assertThat(response).hasSize(5)
+        assertThat(status.build().warnings).isNotEmpty()
+    }
+
     @ParameterizedTest
     @MethodSource("configs")
     fun testComputeForSliceWithAdditionalConstraints(tc: TestConfig) {
@@ -168,7 +212,7 @@ internal class ModelEnumerationTest : TestWithConfig() {
 
         assertThat(result1.slice).isEqualTo(Slice.empty())
         assertThat(result1.models.size).isEqualTo(1)
-        assertThat(result1.models).containsExactlyEntriesOf(
+        assertThat(result1.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
@@ -183,7 +227,7 @@ internal class ModelEnumerationTest : TestWithConfig() {
             )
         )
         assertThat(result2.models.size).isEqualTo(2)
-        assertThat(result2.models).containsExactlyEntriesOf(
+        assertThat(result2.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
@@ -210,7 +254,7 @@ internal class ModelEnumerationTest : TestWithConfig() {
             )
         )
         assertThat(result3.models.size).isEqualTo(1)
-        assertThat(result3.models).containsExactlyEntriesOf(
+        assertThat(result3.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
@@ -225,7 +269,7 @@ internal class ModelEnumerationTest : TestWithConfig() {
             )
         )
         assertThat(result4.models.size).isEqualTo(2)
-        assertThat(result4.models).containsExactlyEntriesOf(
+        assertThat(result4.featureModels()).containsExactlyEntriesOf(
             mutableMapOf(
                 Pair(
                     FeatureModelDO(
@@ -267,3 +311,6 @@ internal class ModelEnumerationTest : TestWithConfig() {
         }
     }
 }
+
+internal fun ModelEnumerationComputation.ModelEnumerationInternalResult.featureModels() =
+    models.mapKeys { it.key.toFeatureModel() }
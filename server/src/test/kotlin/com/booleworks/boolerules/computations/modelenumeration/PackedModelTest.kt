@@ -0,0 +1,76 @@
+package com.booleworks.boolerules.computations.modelenumeration
+
+import com.booleworks.boolerules.computations.generic.FeatureDO
+import com.booleworks.boolerules.computations.generic.FeatureModelDO
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.util.BitSet
+
+class PackedModelTest {
+
+    private val index = FeatureIndex()
+
+    @Test
+    fun testExpand() {
+        val model = pack(FeatureDO.int("i", -3), FeatureDO.enum("e", "v2"), FeatureDO.boolean("b", true))
+        assertThat(model.toFeatureModel()).isEqualTo(
+            FeatureModelDO(listOf(FeatureDO.boolean("b", true), FeatureDO.enum("e", "v2"), FeatureDO.int("i", -3)))
+        )
+        assertThat(pack().toFeatureModel()).isEqualTo(FeatureModelDO(listOf()))
+    }
+
+    @Test
+    fun testEquality() {
+        val model1 = pack(FeatureDO.boolean("b", true), FeatureDO.int("i", 2))
+        val model2 = pack(FeatureDO.int("i", 2), FeatureDO.boolean("b", true))
+        assertThat(model1).isEqualTo(model2).hasSameHashCodeAs(model2)
+        assertThat(model1).isNotEqualTo(pack(FeatureDO.boolean("b", true), FeatureDO.int("i", 3)))
+        assertThat(model1).isNotEqualTo(pack(FeatureDO.boolean("b", true)))
+    }
+
+    @Test
+    fun testOrderIsIndependentOfIndex() {
+        // the features are added to the index in another order than their natural order
+        val models = listOf(
+            listOf(FeatureDO.boolean("z", true)),
+            listOf(FeatureDO.enum("e", "v2"), FeatureDO.int("i", 1)),
+            listOf(FeatureDO.enum("e", "v1"), FeatureDO.int("i", 10)),
+            listOf(FeatureDO.enum("e", "v1"), FeatureDO.int("i", -10)),
+            listOf(FeatureDO.enum("e", "v1")),
+            listOf(FeatureDO.boolean("a", true), FeatureDO.boolean("z", true)),
+            listOf(FeatureDO.boolean("a", true)),
+            listOf(),
+        )
+        val packed = models.map { pack(*it.toTypedArray()) }
+        val expected = models.sortedWith { m1, m2 -> compareFeatureLists(m1.sorted(), m2.sorted()) }
+        assertThat(packed.sorted().map { it.toFeatureModel().features }).isEqualTo(expected.map { it.sorted() })
+    }
+
+    @Test
+    fun testOrderMatchesFeatureModels() {
+        val packed = listOf(
+            pack(FeatureDO.boolean("b", true), FeatureDO.int("i", 2)),
+            pack(FeatureDO.int("i", 2)),
+            pack(FeatureDO.enum("e", "v1"), FeatureDO.boolean("b", true)),
+            pack(FeatureDO.boolean("b", true)),
+            pack(FeatureDO.enum("e", "v10")),
+        )
+        assertThat(packed.sorted().map { it.toFeatureModel() })
+            .isEqualTo(packed.map { it.toFeatureModel() }.sorted())
+    }
+
+    private fun compareFeatureLists(list1: List<FeatureDO>, list2: List<FeatureDO>): Int {
+        list1.zip(list2).forEach { (f1, f2) -> f1.compareTo(f2).let { if (it != 0) return it } }
+        return list1.size.compareTo(list2.size)
+    }
+
+    private fun pack(vararg features: FeatureDO): PackedModel {
+        val bits = BitSet()
+        val ints = sortedMapOf<Int, Int>()
+        features.forEach {
+            val value = it.intValue
+            if (value != null) ints[index.intSlot(it.code)] = value else bits.set(index.atom(it))
+        }
+        return PackedModel(index, bits.toLongArray(), ints.flatMap { listOf(it.key, it.value) }.toIntArray())
+    }
+}
@@ -0,0 +1,240 @@
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.computations.backbone.BACKBONE
+import com.booleworks.boolerules.computations.backbone.BackboneType
+import com.booleworks.boolerules.computations.consistency.CONSISTENCY
+import com.booleworks.boolerules.computations.generic.ComputationElement
+import com.booleworks.boolerules.computations.generic.ComputationElementResult
+import com.booleworks.boolerules.computations.generic.ComputationStatistics
+import com.booleworks.boolerules.computations.generic.ComputationStatus
+import com.booleworks.boolerules.computations.generic.ComputationVariant
+import com.booleworks.boolerules.computations.generic.ComputationVariant.LIST
+import com.booleworks.boolerules.computations.generic.ComputationVariant.SINGLE
+import com.booleworks.boolerules.computations.generic.FeatureDO
+import com.booleworks.boolerules.computations.generic.FeatureTypeDO
+import com.booleworks.boolerules.computations.generic.ListComputationResponse
+import com.booleworks.boolerules.computations.generic.SingleComputationResponse
+import com.booleworks.boolerules.computations.generic.SliceComputationResult
+import com.booleworks.boolerules.computations.generic.SliceDO
+import com.booleworks.boolerules.rulefile.PropertyRangeDO
+import com.booleworks.boolerules.rulefile.PropertyTypeDO
+import com.booleworks.boolerules.rulefile.SlicingPropertyDO
+import com.booleworks.kjobs.api.persistence.hashmap.HashMapJobPersistence
+import com.booleworks.kjobs.data.Job
+import com.booleworks.kjobs.data.JobStatus
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.time.LocalDateTime
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.minutes
+
+class InMemoryComputationPersistenceTest {
+    private var now = 0L
+
+    private val s1 = slice(enum("series", "S1"), int("version", 1))
+    private val s2 = slice(enum("series", "S1"), int("version", 2))
+    private val s3 = slice(enum("series", "S2"), int("version", 1))
+
+    @Test
+    fun testSliceGroups() {
+        val persistence = persistence()
+        val sliceMap = persistence.storeSliceGroups("job1", listOf(listOf(s1, s2), listOf(s3)))
+        assertThat(sliceMap).containsExactlyInAnyOrderEntriesOf(mapOf(s1 to 1, s2 to 1, s3 to 2))
+
+        assertThat(persistence.fetchSliceGroup("job1", s1).getOrThrow()).isEqualTo(1)
+        assertThat(persistence.fetchSliceGroup("job1", s3).getOrThrow()).isEqualTo(2)
+        assertThat(persistence.fetchSliceGroup("job1", slice(int("version", 2))).getOrThrow()).isEqualTo(1)
+        assertThat(persistence.fetchSliceGroup("job1", slice(enum("series", "S3"))).isFailure).isTrue()
+        assertThat(persistence.fetchSliceGroup("job2", s1).isFailure).isTrue()
+    }
+
+    @Test
+    fun testListResults() {
+        val persistence = persistence()
+        val resultA = SliceComputationResult(1, BackboneType.OPTIONAL, listOf(s1))
+        val resultB1 = SliceComputationResult(1, BackboneType.MANDATORY, listOf(s2, s3))
+        val resultB2 = SliceComputationResult(2, BackboneType.FORBIDDEN, listOf(s1))
+        val response = ListComputationResponse(
+            status(LIST),
+            listOf(
+                ComputationElementResult(ComputationElement(2, feature("b")), listOf(resultB2, resultB1)),
+                ComputationElementResult(ComputationElement(1, feature("a")), listOf(resultA))
+            )
+        )
+        runBlocking {
+            persistence.dataPersistence(BACKBONE).dataTransaction { persistOrUpdateResult(job("job1"), response) }
+        }
+
+        val results = persistence.fetchListResults("job1", BACKBONE)
+        assertThat(results.map { it.element.id }).containsExactly(1, 2)
+        assertThat(results[1].results).containsExactly(resultB1, resultB2)
+        assertThat(persistence.fetchElement("job1", 2, BACKBONE).getOrThrow().content).isEqualTo(feature("b"))
+        assertThat(persistence.fetchMainResult("job1", 2, 2, BACKBONE).getOrThrow()).isEqualTo(resultB2)
+        assertThat(persistence.fetchStatus("job1").getOrThrow().computationVariant).isEqualTo(LIST)
+    }
+
+    @Test
+    fun testExpiration() {
+        val persistence = persistence(ttl = 10.minutes)
+        storeSingleResult(persistence, "job1")
+        now += 5.minutes.inWholeMilliseconds
+        assertThat(persistence.fetchStatus("job1").isSuccess).isTrue()
+        now += 6.minutes.inWholeMilliseconds
+        assertThat(persistence.fetchStatus("job1").isFailure).isTrue()
+        assertThat(persistence.fetchSingleResults("job1", CONSISTENCY)).isEmpty()
+        assertThat(persistence.size()).isZero()
+    }
+
+    @Test
+    fun testExpirationPerType() {
+        val persistence = persistence(ttl = 10.minutes, ttls = mapOf(CONSISTENCY.path to 2.minutes))
+        storeSingleResult(persistence, "job1")
+        persistence.storeSliceGroups("job2", listOf(listOf(s1)))
+        now += 3.minutes.inWholeMilliseconds
+        assertThat(persistence.fetchStatus("job1").isFailure).isTrue()
+        assertThat(persistence.fetchSliceGroup("job2", s1).isSuccess).isTrue()
+    }
+
+    @Test
+    fun testStoredBytesPerType() {
+        val persistence = persistence()
+        storeSingleResult(persistence, "job1")
+        persistence.storeSliceGroups("job2", listOf(listOf(s1)))
+        val bytes = persistence.storedBytes()
+        assertThat(bytes.keys).containsExactlyInAnyOrder(CONSISTENCY.path, UNKNOWN_TYPE)
+        assertThat(bytes.values.sum()).isEqualTo(persistence.size())
+    }
+
+    @Test
+    fun testExpirationWithoutAccess() {
+        val jobs = HashMapJobPersistence()
+        val persistence = persistence(jobs, ttl = 10.minutes)
+        storeSingleResult(persistence, "job1", jobs)
+        now += 11.minutes.inWholeMilliseconds
+        persistence.expire()
+        assertThat(persistence.size()).isZero()
+        assertThat(persistence.fetchJobInfo("job1").isFailure).isTrue()
+    }
+
+    @Test
+    fun testMemoryCap() {
+        val maxSize = 5 * jobSize() / 2
+        val jobs = HashMapJobPersistence()
+        val persistence = persistence(jobs, maxSize = maxSize)
+        storeSingleResult(persistence, "job1", jobs)
+        now++
+        storeSingleResult(persistence, "job2", jobs)
+        now++
+        storeSingleResult(persistence, "job3", jobs)
+
+        assertThat(persistence.size()).isLessThanOrEqualTo(maxSize)
+        assertThat(persistence.fetchStatus("job1").isFailure).isTrue()
+        assertThat(persistence.fetchStatus("job2").isSuccess).isTrue()
+        assertThat(persistence.fetchStatus("job3").isSuccess).isTrue()
+        persistence.expire()
+        assertThat(persistence.fetchJobInfo("job1").isFailure).isTrue()
+        assertThat(persistence.fetchJobInfo("job2").isSuccess).isTrue()
+    }
+
+    @Test
+    fun testWrittenJobIsNotEvicted() {
+        val persistence = persistence(maxSize = jobSize() / 2)
+        storeSingleResult(persistence, "job1")
+        now++
+        storeSingleResult(persistence, "job2")
+        assertThat(persistence.fetchStatus("job1").isFailure).isTrue()
+        assertThat(persistence.fetchStatus("job2").isSuccess).isTrue()
+    }
+
+    @Test
+    fun testPayloadIsEstimated() {
+        val persistence = persistence()
+        val payload = "x".repeat(100_000)
+        val response = SingleComputationResponse(status(SINGLE), listOf(SliceComputationResult(1, payload, listOf(s1))))
+        runBlocking {
+            persistence.dataPersistence(CONSISTENCY).dataTransaction {
+                @Suppress("UNCHECKED_CAST")
+                persistOrUpdateResult(job("job1"), response as SingleComputationResponse<Boolean>)
+            }
+        }
+        assertThat(persistence.size()).isGreaterThan(payload.length.toLong())
+    }
+
+    @Test
+    fun testUpdatedResultReplacesSize() {
+        val persistence = persistence()
+        storeSingleResult(persistence, "job1")
+        persistence.storeSliceGroups("job1", listOf(listOf(s1)))
+        val size = persistence.size()
+        storeSingleResult(persistence, "job1")
+        persistence.storeSliceGroups("job1", listOf(listOf(s1)))
+        assertThat(persistence.size()).isEqualTo(size)
+    }
+
+    @Test
+    fun testDeleteComputation() {
+        val persistence = persistence()
+        storeSingleResult(persistence, "job1")
+        persistence.storeSliceGroups("job2", listOf(listOf(s1)))
+
+        assertThat(persistence.deleteComputation("job1")).isEqualTo(1)
+        assertThat(persistence.fetchStatus("job1").isFailure).isTrue()
+        assertThat(persistence.fetchSliceGroup("job2", s1).getOrThrow()).isEqualTo(1)
+        assertThat(persistence.deleteAllComputations()).isEqualTo(1)
+        assertThat(persistence.size()).isZero()
+    }
+
+    private fun persistence(
+        jobs: HashMapJobPersistence = HashMapJobPersistence(),
+        ttl: Duration = Duration.ZERO,
+        maxSize: Long = 0,
+        ttls: Map<String, Duration> = mapOf()
+    ) = InMemoryComputationPersistence(jobs, RetentionConfig(ttl, ttls, maxSize), { now })
+
+    private fun jobSize() = persistence().also { storeSingleResult(it, "job") }.size()
+
+    private fun storeSingleResult(
+        persistence: InMemoryComputationPersistence,
+        jobId: String,
+        jobs: HashMapJobPersistence? = null
+    ) {
+        val results = (1..5).map { SliceComputationResult(it, true, listOf(s1, s2, s3)) }
+        val response = SingleComputationResponse(status(SINGLE, jobId), results)
+        runBlocking {
+            jobs?.transaction { persistJob(job(jobId)) }
+            persistence.dataPersistence(CONSISTENCY).dataTransaction {
+                persistOrUpdateResult(job(jobId), response)
+            }
+        }
+    }
+
+    private fun status(variant: ComputationVariant, jobId: String = "job1") =
+        ComputationStatus(true, jobId, "rf", ComputationStatistics(0, 3, 3, 0, 0), variant, listOf())
+
+    private fun job(jobId: String) = Job(
+        jobId,
+        "backbone",
+        listOf(),
+        null,
+        0,
+        "br-node-1",
+        LocalDateTime.now(),
+        JobStatus.SUCCESS,
+        startedAt = LocalDateTime.now(),
+        executingInstance = "br-node-1",
+        finishedAt = LocalDateTime.now(),
+        null,
+        0
+    )
+
+    private fun feature(code: String) = FeatureDO(code, FeatureTypeDO.BOOLEAN)
+
+    private fun slice(vararg properties: SlicingPropertyDO) = SliceDO(properties.toList())
+
+    private fun enum(name: String, value: String) =
+        SlicingPropertyDO(name, PropertyTypeDO.ENUM, PropertyRangeDO(enumValues = setOf(value)))
+
+    private fun int(name: String, value: Int) =
+        SlicingPropertyDO(name, PropertyTypeDO.INT, PropertyRangeDO(intValues = setOf(value)))
+}
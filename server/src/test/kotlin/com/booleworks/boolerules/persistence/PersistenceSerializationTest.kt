@@ -0,0 +1,52 @@
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.computations.backbone.BACKBONE
+import com.booleworks.boolerules.computations.backbone.BackboneType
+import com.booleworks.boolerules.computations.consistency.CONSISTENCY
+import com.booleworks.boolerules.computations.generic.ComputationElement
+import com.booleworks.boolerules.computations.generic.FeatureDO
+import com.booleworks.boolerules.computations.generic.FeatureTypeDO
+import com.booleworks.boolerules.computations.generic.SliceComputationResult
+import com.booleworks.boolerules.computations.generic.SliceDO
+import com.booleworks.boolerules.rulefile.PropertyRangeDO
+import com.booleworks.boolerules.rulefile.PropertyTypeDO
+import com.booleworks.boolerules.rulefile.SlicingPropertyDO
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class PersistenceSerializationTest {
+
+    private val slice = SliceDO(
+        listOf(SlicingPropertyDO("version", PropertyTypeDO.INT, PropertyRangeDO(intMin = 1, intMax = 7)))
+    )
+    private val result = SliceComputationResult(1, BackboneType.MANDATORY, listOf(slice))
+
+    @Test
+    fun testSerializersAreShared() {
+        assertThat(PersistenceSerialization.of(BACKBONE)).isSameAs(PersistenceSerialization.of(BACKBONE))
+        assertThat(PersistenceSerialization.of(BACKBONE)).isNotSameAs(PersistenceSerialization.of(CONSISTENCY))
+    }
+
+    @Test
+    fun testRoundTrip() {
+        val serializers = PersistenceSerialization.of(BACKBONE)
+        val element = ComputationElement(3, FeatureDO("a", FeatureTypeDO.BOOLEAN))
+
+        PersistenceEncoding.entries.forEach { encoding ->
+            val main: SliceComputationResult<BackboneType> =
+                serializers.main.read(serializers.main.write(result, encoding))
+            val readElement: ComputationElement<FeatureDO> =
+                serializers.element.read(serializers.element.write(element, encoding))
+
+            assertThat(main).isEqualTo(result)
+            assertThat(readElement).isEqualTo(element)
+        }
+    }
+
+    @Test
+    fun testSmileIsSmaller() {
+        val main = PersistenceSerialization.of(BACKBONE).main
+        assertThat(main.write(result, PersistenceEncoding.SMILE).size)
+            .isLessThan(main.write(result, PersistenceEncoding.JSON).size)
+    }
+}
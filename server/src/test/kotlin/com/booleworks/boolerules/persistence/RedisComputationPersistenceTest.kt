@@ -0,0 +1,376 @@
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.computations.backbone.BACKBONE
+import com.booleworks.boolerules.computations.backbone.BackboneType
+import com.booleworks.boolerules.computations.generic.ComputationElement
+import com.booleworks.boolerules.computations.generic.ComputationElementResult
+import com.booleworks.boolerules.computations.generic.ComputationStatistics
+import com.booleworks.boolerules.computations.generic.ComputationStatus
+import com.booleworks.boolerules.computations.generic.ComputationVariant.LIST
+import com.booleworks.boolerules.computations.generic.FeatureDO
+import com.booleworks.boolerules.computations.generic.FeatureTypeDO
+import com.booleworks.boolerules.computations.generic.ListComputationResponse
+import com.booleworks.boolerules.computations.generic.SliceComputationResult
+import com.booleworks.boolerules.computations.generic.SliceDO
+import com.booleworks.boolerules.config.ApplicationConfig
+import com.booleworks.boolerules.rulefile.PropertyRangeDO
+import com.booleworks.boolerules.rulefile.PropertyTypeDO
+import com.booleworks.boolerules.rulefile.SlicingPropertyDO
+import com.booleworks.kjobs.api.persistence.redis.RedisJobPersistence
+import com.booleworks.kjobs.data.Job
+import com.booleworks.kjobs.data.JobStatus
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import com.github.fppt.jedismock.RedisServer
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import redis.clients.jedis.JedisPool
+import java.time.LocalDateTime
+import kotlin.time.Duration.Companion.minutes
+
+class RedisComputationPersistenceTest {
+    private lateinit var server: RedisServer
+    private lateinit var pool: JedisPool
+    private lateinit var persistence: RedisComputationPersistence
+
+    private val s1 = slice(enum("series", "S1"), int("version", 1))
+    private val s2 = slice(enum("series", "S1"), int("version", 2))
+    private val s3 = slice(enum("series", "S2"), int("version", 1))
+
+    private val job = job("job1")
+
+    private fun job(
+        jobId: String,
+        createdBy: String = "br-node-1",
+        createdAt: LocalDateTime = LocalDateTime.now()
+    ) = Job(
+        jobId,
+        "backbone",
+        listOf(),
+        null,
+        0,
+        createdBy,
+        createdAt,
+        JobStatus.SUCCESS,
+        startedAt = LocalDateTime.now(),
+        executingInstance = "br-node-1",
+        finishedAt = LocalDateTime.now(),
+        null,
+        0
+    )
+
+    private val status = status("job1")
+
+    private fun status(jobId: String) =
+        ComputationStatus(true, jobId, "rf", ComputationStatistics(0, 3, 3, 0, 0), LIST, listOf())
+
+    @BeforeEach
+    fun setUp() {
+        server = RedisServer.newRedisServer().start()
+        pool = JedisPool(server.host, server.bindPort)
+        persistence = RedisComputationPersistence(pool)
+    }
+
+    @AfterEach
+    fun tearDown() {
+        pool.close()
+        server.stop()
+    }
+
+    @Test
+    fun testSliceGroups() {
+        val sliceMap = persistence.storeSliceGroups("job1", listOf(listOf(s1, s2), listOf(s3)))
+        assertThat(sliceMap).containsExactlyInAnyOrderEntriesOf(mapOf(s1 to 1, s2 to 1, s3 to 2))
+
+        assertThat(persistence.fetchSliceGroup("job1", s1).getOrThrow()).isEqualTo(1)
+        assertThat(persistence.fetchSliceGroup("job1", s3).getOrThrow()).isEqualTo(2)
+        assertThat(persistence.fetchSliceGroup("job1", slice(int("version", 2))).getOrThrow()).isEqualTo(1)
+        assertThat(persistence.fetchSliceGroup("job1", slice(enum("series", "S3"))).isFailure).isTrue()
+        assertThat(persistence.fetchSliceGroup("job2", s1).isFailure).isTrue()
+    }
+
+    @Test
+    fun testDeleteComputation() {
+        persistence.storeSliceGroups("job1", listOf(listOf(s1, s2), listOf(s3)))
+        persistence.storeSliceGroups("job2", listOf(listOf(s1)))
+
+        assertThat(persistence.deleteComputation("job1")).isEqualTo(2)
+        assertThat(persistence.fetchSliceGroup("job1", s1).isFailure).isTrue()
+        assertThat(persistence.fetchSliceGroup("job2", s1).getOrThrow()).isEqualTo(1)
+    }
+
+    @Test
+    fun testLegacyKeys() {
+        pool.resource.use { jedis ->
+            jedis.set("result:old:status", "{}")
+            jedis.set("result:old:slice:${s2.uniqueKey()}", "3")
+            jedis.set("input:old", "{}")
+        }
+        assertThat(persistence.fetchSliceGroup("old", s2).getOrThrow()).isEqualTo(3)
+
+        assertThat(persistence.deleteAllComputations()).isEqualTo(3)
+        pool.resource.use { jedis -> assertThat(jedis.dbSize()).isZero() }
+    }
+
+    @Test
+    fun testOnlyLegacyJobsAreScanned() {
+        pool.resource.use { jedis -> jedis.set("result:partial:slice:${s2.uniqueKey()}", "3") }
+        assertThat(persistence.fetchSliceGroup("partial", s2).isFailure).isTrue()
+        assertThat(persistence.fetchListResults("unknown", BACKBONE)).isEmpty()
+        assertThat(persistence.deleteComputation("partial")).isZero()
+        pool.resource.use { jedis -> assertThat(jedis.exists("result:partial:slice:${s2.uniqueKey()}")).isTrue() }
+    }
+
+    @Test
+    fun testListResults() {
+        val resultA = SliceComputationResult(1, BackboneType.OPTIONAL, listOf(s1))
+        val resultB1 = SliceComputationResult(1, BackboneType.MANDATORY, listOf(s2, s3))
+        val resultB2 = SliceComputationResult(2, BackboneType.FORBIDDEN, listOf(s1))
+        val response = ListComputationResponse(
+            status,
+            listOf(
+                ComputationElementResult(ComputationElement(2, feature("b")), listOf(resultB2, resultB1)),
+                ComputationElementResult(ComputationElement(1, feature("a")), listOf(resultA))
+            )
+        )
+        runBlocking { persistence.dataPersistence(BACKBONE).dataTransaction { persistOrUpdateResult(job, response) } }
+
+        val results = persistence.fetchListResults("job1", BACKBONE)
+        assertThat(results.map { it.element })
+            .containsExactly(ComputationElement(1, feature("a")), ComputationElement(2, feature("b")))
+        assertThat(results[0].results).containsExactly(resultA)
+        assertThat(results[1].results).containsExactly(resultB1, resultB2)
+        assertThat(persistence.fetchElement("job1", 2, BACKBONE).getOrThrow().content).isEqualTo(feature("b"))
+        assertThat(persistence.fetchMainResult("job1", 2, 2, BACKBONE).getOrThrow()).isEqualTo(resultB2)
+        assertThat(persistence.fetchMainResult("job1", 3, 2, BACKBONE).isFailure).isTrue()
+    }
+
+    @Test
+    fun testListResultPage() {
+        val response = ListComputationResponse(
+            status,
+            (1..5).map { id ->
+                val results = (1..id).map { SliceComputationResult(it, BackboneType.MANDATORY, listOf(s1)) }
+                ComputationElementResult(ComputationElement(id, feature("f$id")), results)
+            }
+        )
+        runBlocking { persistence.dataPersistence(BACKBONE).dataTransaction { persistOrUpdateResult(job, response) } }
+
+        assertThat(persistence.fetchListResultPage("job1", 0, 2, BACKBONE)).isEqualTo(response.results.subList(0, 2))
+        assertThat(persistence.fetchListResultPage("job1", 2, 2, BACKBONE)).isEqualTo(response.results.subList(2, 4))
+        assertThat(persistence.fetchListResultPage("job1", 4, 2, BACKBONE)).isEqualTo(response.results.subList(4, 5))
+        assertThat(persistence.fetchListResultPage("job1", 5, 2, BACKBONE)).isEmpty()
+        assertThat(persistence.fetchListResults("job1", BACKBONE)).isEqualTo(response.results)
+    }
+
+    @Test
+    fun testSmileEncoding() {
+        val smilePersistence = RedisComputationPersistence(pool, PersistenceEncoding.SMILE)
+        val result = SliceComputationResult(1, BackboneType.MANDATORY, listOf(s1, s2))
+        val response = ListComputationResponse(
+            status,
+            listOf(ComputationElementResult(ComputationElement(1, feature("a")), listOf(result)))
+        )
+        runBlocking {
+            smilePersistence.dataPersistence(BACKBONE).dataTransaction { persistOrUpdateResult(job, response) }
+        }
+
+        pool.resource.use { jedis ->
+            assertThat(jedis.hget("result:job1:list".toByteArray(), "1:1".toByteArray()))
+                .startsWith(':'.code.toByte(), ')'.code.toByte(), '\n'.code.toByte())
+        }
+        assertThat(smilePersistence.fetchListResults("job1", BACKBONE)).isEqualTo(response.results)
+        assertThat(persistence.fetchListResults("job1", BACKBONE)).isEqualTo(response.results)
+        assertThat(persistence.fetchStatus("job1").getOrThrow().jobId).isEqualTo("job1")
+    }
+
+    @Test
+    fun testLegacyListResults() {
+        val mapper = jacksonObjectMapper()
+        val result = SliceComputationResult(1, BackboneType.MANDATORY, listOf(s1))
+        pool.resource.use { jedis ->
+            jedis.set("result:old:status", "{}")
+            jedis.set("result:old:element:1", mapper.writeValueAsString(ComputationElement(1, feature("a"))))
+            jedis.set("result:old:element:2", mapper.writeValueAsString(ComputationElement(2, feature("b"))))
+            jedis.set("result:old:list:1:1", mapper.writeValueAsString(result))
+        }
+        val results = persistence.fetchListResults("old", BACKBONE)
+        assertThat(results.map { it.element.id }).containsExactly(1, 2)
+        assertThat(results[0].results).containsExactly(result)
+        assertThat(results[1].results).isEmpty()
+        assertThat(persistence.fetchMainResult("old", 1, 1, BACKBONE).getOrThrow()).isEqualTo(result)
+        assertThat(persistence.fetchElement("old", 2, BACKBONE).getOrThrow().content).isEqualTo(feature("b"))
+        assertThat(persistence.fetchListResultPage("old", 1, 10, BACKBONE).map { it.element.id }).containsExactly(2)
+    }
+
+    @Test
+    fun testTtl() {
+        val retention = RetentionConfig(ttls = mapOf(BACKBONE.path to 10.minutes))
+        val ttlPersistence = RedisComputationPersistence(pool, retention = retention)
+        ttlPersistence.storeSliceGroups("job1", listOf(listOf(s1)))
+        pool.resource.use { jedis -> assertThat(jedis.pttl("result:job1:index:slice")).isEqualTo(-1) }
+
+        storeListResult(ttlPersistence, "job1")
+        pool.resource.use { jedis ->
+            listOf("result:job1:status", "result:job1:list", "result:job1:index:slice", "result:job1:index:keys")
+                .forEach { assertThat(jedis.pttl(it)).isBetween(1, 10.minutes.inWholeMilliseconds) }
+        }
+        assertThat(persistence.fetchListResults("job1", BACKBONE)).hasSize(1)
+    }
+
+    @Test
+    fun testEviction() {
+        val evictingPersistence = RedisComputationPersistence(pool, retention = RetentionConfig(maxSize = 1))
+        storeListResult(evictingPersistence, "job1")
+        assertThat(evictingPersistence.fetchStatus("job1").isSuccess).isTrue()
+        storeListResult(evictingPersistence, "job2")
+
+        // the most recently stored job is kept even if it exceeds the maximum size
+        assertThat(evictingPersistence.fetchStatus("job1").isFailure).isTrue()
+        assertThat(evictingPersistence.fetchStatus("job2").isSuccess).isTrue()
+        assertThat(evictingPersistence.storedBytes().keys).containsExactly(BACKBONE.path)
+    }
+
+    @Test
+    fun testEvictionOfLeastRecentlyUsedJobs() {
+        storeListResult(persistence, "job0")
+        val jobSize = persistence.storedBytes()[BACKBONE.path]!!
+        persistence.deleteAllComputations()
+
+        val retention = RetentionConfig(maxSize = 5 * jobSize / 2)
+        val evictingPersistence = RedisComputationPersistence(pool, retention = retention)
+        storeListResult(evictingPersistence, "job1")
+        Thread.sleep(2)
+        storeListResult(evictingPersistence, "job2")
+        Thread.sleep(2)
+        assertThat(evictingPersistence.fetchStatus("job1").isSuccess).isTrue()
+        Thread.sleep(2)
+        storeListResult(evictingPersistence, "job3")
+
+        assertThat(evictingPersistence.fetchStatus("job1").isSuccess).isTrue()
+        assertThat(evictingPersistence.fetchStatus("job2").isFailure).isTrue()
+        assertThat(evictingPersistence.fetchStatus("job3").isSuccess).isTrue()
+        assertThat(totalBytes()).isEqualTo(2 * jobSize)
+    }
+
+    @Test
+    fun testRunningTotal() {
+        storeListResult(persistence, "job1")
+        persistence.storeSliceGroups("job2", listOf(listOf(s1, s2)))
+        storeListResult(persistence, "job2")
+        assertThat(totalBytes()).isEqualTo(persistence.storedBytes()[BACKBONE.path])
+
+        // an update replaces the size of the former result
+        storeListResult(persistence, "job1")
+        assertThat(totalBytes()).isEqualTo(persistence.storedBytes()[BACKBONE.path])
+
+        persistence.deleteComputation("job1")
+        assertThat(totalBytes()).isEqualTo(persistence.storedBytes()[BACKBONE.path])
+        persistence.deleteComputation("job2")
+        pool.resource.use { jedis -> assertThat(jedis.exists("result:index:bytes:total")).isFalse() }
+    }
+
+    @Test
+    fun testStoredBytes() {
+        storeListResult(persistence, "job1")
+        storeListResult(persistence, "job2")
+        val bytes = persistence.storedBytes()
+        assertThat(bytes.keys).containsExactly(BACKBONE.path)
+        assertThat(bytes[BACKBONE.path]).isPositive()
+
+        persistence.deleteComputation("job1")
+        assertThat(persistence.storedBytes()[BACKBONE.path]).isEqualTo(bytes[BACKBONE.path]!! / 2)
+        persistence.deleteAllComputations()
+        assertThat(persistence.storedBytes()).isEmpty()
+        pool.resource.use { jedis -> assertThat(jedis.dbSize()).isZero() }
+    }
+
+    @Test
+    fun testDeleteComputationsWithoutJobs() {
+        storeListResult(persistence, "job1")
+        persistence.storeSliceGroups("job2", listOf(listOf(s1)))
+        pool.resource.use { jedis -> jedis.set("result:old:status", "{}") }
+
+        val progress = CleanupProgress()
+        val deleted = persistence.deleteComputations("br-node-1", LocalDateTime.now(), progress)
+        assertThat(deleted).isEqualTo(progress.deletedEntries.get()).isPositive()
+        assertThat(progress.scannedJobs.get()).isEqualTo(3)
+        assertThat(progress.deletedJobs.get()).isEqualTo(3)
+        pool.resource.use { jedis -> assertThat(jedis.dbSize()).isZero() }
+    }
+
+    @Test
+    fun testDeleteComputationsKeepsOtherJobs() {
+        val startedAt = LocalDateTime.now()
+        runBlocking {
+            RedisJobPersistence(pool).transaction {
+                persistJob(job("own", createdAt = startedAt.minusMinutes(1)))
+                persistJob(job("other", createdBy = "br-node-2", createdAt = startedAt.minusMinutes(1)))
+                persistJob(job("new", createdAt = startedAt.plusMinutes(1)))
+            }
+        }
+        listOf("own", "other", "new").forEach { storeListResult(persistence, it) }
+
+        val progress = CleanupProgress()
+        persistence.deleteComputations("br-node-1", startedAt, progress)
+        assertThat(progress.scannedJobs.get()).isEqualTo(3)
+        assertThat(progress.deletedJobs.get()).isEqualTo(1)
+        assertThat(persistence.fetchStatus("own").isFailure).isTrue()
+        assertThat(persistence.fetchStatus("other").isSuccess).isTrue()
+        assertThat(persistence.fetchStatus("new").isSuccess).isTrue()
+        assertThat(persistence.fetchJobInfo("other").isSuccess).isTrue()
+    }
+
+    @Test
+    fun testCleanupWithoutInstanceOnlyDeletesOrphans() {
+        runBlocking { RedisJobPersistence(pool).transaction { persistJob(job("job1")) } }
+        storeListResult(persistence, "job1")
+        storeListResult(persistence, "job2")
+        StartupCleanup.run(persistence, ApplicationConfig.DEFAULT_INSTANCE, LocalDateTime.now().plusMinutes(1))
+        assertThat(StartupCleanup.statistics().state).isEqualTo(CleanupState.FINISHED)
+        assertThat(persistence.fetchStatus("job1").isSuccess).isTrue()
+        assertThat(persistence.fetchStatus("job2").isFailure).isTrue()
+    }
+
+    @Test
+    fun testCleanupWithoutInstanceDeletesExpiredJobs() {
+        val startedAt = LocalDateTime.now()
+        runBlocking {
+            RedisJobPersistence(pool).transaction {
+                persistJob(job("old", createdBy = "br-node-2", createdAt = startedAt.minusMinutes(20)))
+                persistJob(job("recent", createdBy = "br-node-2", createdAt = startedAt.minusMinutes(5)))
+            }
+        }
+        val expiringPersistence = RedisComputationPersistence(pool, retention = RetentionConfig(10.minutes))
+        listOf("old", "recent").forEach { storeListResult(expiringPersistence, it) }
+
+        expiringPersistence.deleteComputations(null, startedAt, CleanupProgress())
+        assertThat(expiringPersistence.fetchStatus("old").isFailure).isTrue()
+        assertThat(expiringPersistence.fetchStatus("recent").isSuccess).isTrue()
+    }
+
+    private fun totalBytes() = pool.resource.use { jedis -> jedis.get("result:index:bytes:total")?.toLong() }
+
+    private fun storeListResult(target: RedisComputationPersistence, jobId: String) {
+        val result = SliceComputationResult(1, BackboneType.MANDATORY, listOf(s1, s2))
+        val response = ListComputationResponse(
+            status(jobId),
+            listOf(ComputationElementResult(ComputationElement(1, feature("a")), listOf(result)))
+        )
+        runBlocking {
+            target.dataPersistence(BACKBONE).dataTransaction { persistOrUpdateResult(job(jobId), response) }
+        }
+    }
+
+    private fun feature(code: String) = FeatureDO(code, FeatureTypeDO.BOOLEAN)
+
+    private fun slice(vararg properties: SlicingPropertyDO) = SliceDO(properties.toList())
+
+    private fun enum(name: String, value: String) =
+        SlicingPropertyDO(name, PropertyTypeDO.ENUM, PropertyRangeDO(enumValues = setOf(value)))
+
+    private fun int(name: String, value: Int) =
+        SlicingPropertyDO(name, PropertyTypeDO.INT, PropertyRangeDO(intValues = setOf(value)))
+}
@@ -0,0 +1,107 @@
+package com.booleworks.boolerules.persistence
+
+import com.booleworks.boolerules.rulefile.UploadSummaryDO
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.LocalDateTime
+import kotlin.io.path.listDirectoryEntries
+
+class SegmentStoreTest {
+
+    @TempDir
+    lateinit var directory: Path
+
+    @Test
+    fun testPutGetDelete() {
+        SegmentStore(directory).use { store ->
+            store.put("a", "value a".toByteArray())
+            store.put("b", "value b".toByteArray())
+            store.put("a", "new value a".toByteArray())
+
+            assertThat(store.getBytes("a")).isEqualTo("new value a".toByteArray())
+            assertThat(store["b"]!!.isReadOnly).isTrue()
+            assertThat(store.getBytes("c")).isNull()
+            assertThat(store.delete("b")).isTrue()
+            assertThat(store.delete("b")).isFalse()
+            assertThat(store.keys()).containsExactly("a")
+        }
+    }
+
+    @Test
+    fun testReopen() {
+        SegmentStore(directory, maxSegmentSize = 32).use { store ->
+            (1..10).forEach { store.put("key$it", "value $it".toByteArray()) }
+            store.delete("key3")
+            store.put("key4", "updated".toByteArray())
+        }
+        assertThat(directory.listDirectoryEntries()).hasSizeGreaterThan(1)
+
+        SegmentStore(directory, maxSegmentSize = 32).use { store ->
+            assertThat(store.keys()).hasSize(9).doesNotContain("key3")
+            assertThat(store.getBytes("key4")).isEqualTo("updated".toByteArray())
+            assertThat(store.getBytes("key10")).isEqualTo("value 10".toByteArray())
+        }
+    }
+
+    @Test
+    fun testIncompleteRecordIsDiscarded() {
+        SegmentStore(directory).use { store ->
+            store.put("a", "value a".toByteArray())
+            store.put("b", "value b".toByteArray())
+        }
+        val segment = directory.listDirectoryEntries().single()
+        Files.write(segment, byteArrayOf(0, 0, 0, 1, 0, 0, 0, 10, 'c'.code.toByte()), StandardOpenOption.APPEND)
+
+        SegmentStore(directory).use { store ->
+            assertThat(store.keys()).containsExactlyInAnyOrder("a", "b")
+            store.put("c", "value c".toByteArray())
+        }
+        SegmentStore(directory).use { store ->
+            assertThat(store.getBytes("c")).isEqualTo("value c".toByteArray())
+        }
+    }
+
+    @Test
+    fun testCompaction() {
+        SegmentStore(directory).use { store ->
+            repeat(100) { store.put("a", ByteArray(1000) { _ -> it.toByte() }) }
+            store.put("b", "value b".toByteArray())
+            val (total, live) = store.size()
+            assertThat(total).isGreaterThan(100_000)
+
+            store.compact()
+            assertThat(store.size()).isEqualTo(Pair(live, live))
+            assertThat(store.getBytes("a")).containsOnly(99)
+            assertThat(store.getBytes("b")).isEqualTo("value b".toByteArray())
+        }
+        assertThat(directory.listDirectoryEntries()).hasSize(1)
+    }
+
+    @Test
+    fun testRulefilePersistence() {
+        val summary =
+            UploadSummaryDO("rf1", "test.prl", LocalDateTime.now(), 3, 1, 2, true, false, false, listOf(), setOf())
+        SegmentStore(directory).use { store ->
+            val persistence = DiskRulefilePersistence(store)
+            persistence.storeRuleFile("rf1", byteArrayOf(1, 2, 3), summary)
+            persistence.storeRuleFile("rf2", byteArrayOf(4), summary.copy(id = "rf2"))
+            assertThat(persistence.deleteRuleFile("rf2")).isTrue()
+            assertThat(persistence.deleteRuleFile("rf2")).isFalse()
+        }
+        SegmentStore(directory).use { store ->
+            val persistence = DiskRulefilePersistence(store)
+            assertThat(persistence.getBinaryRuleFile("rf1").getOrThrow()).containsExactly(1, 2, 3)
+            assertThat(persistence.getBinaryRuleFile("rf2").isFailure).isTrue()
+            val stream = persistence.openBinaryRuleFile("rf1").getOrThrow()
+            assertThat(stream.use { it.readBytes() }).containsExactly(1, 2, 3)
+            assertThat(persistence.openBinaryRuleFile("rf2").isFailure).isTrue()
+            assertThat(persistence.getAllSummaries()).containsExactly(summary)
+            assertThat(persistence.getSummary("rf1").getOrThrow()).isEqualTo(summary)
+            assertThat(persistence.getSummary("rf2").isFailure).isTrue()
+        }
+    }
+}
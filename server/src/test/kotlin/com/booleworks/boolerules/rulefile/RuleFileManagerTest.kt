@@ -0,0 +1,91 @@
+package com.booleworks.boolerules.rulefile
+
+import com.booleworks.boolerules.persistence.Persistence
+import com.booleworks.boolerules.service.ServiceEnv
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.io.File
+import java.util.UUID
+
+class RuleFileManagerTest {
+
+    private val file = File("../test-files/prl/transpiler/merge3.prl")
+
+    @BeforeEach
+    fun setUp() {
+        val env = mapOf("instance" to "test", "persistenceType" to "in_memory")
+        Persistence.setFromEnvironment(ServiceEnv.read { env[it] })
+    }
+
+    @Test
+    fun testContentId() {
+        val id = contentId("feature a\nrule a".toByteArray())
+        assertThat(id).isEqualTo(contentId("feature a\nrule a".toByteArray()))
+        assertThat(id).isNotEqualTo(contentId("feature b\nrule b".toByteArray()))
+
+        val uuid = UUID.fromString(id)
+        assertThat(uuid.toString()).isEqualTo(id)
+        assertThat(uuid.version()).isEqualTo(8)
+        assertThat(uuid.variant()).isEqualTo(2)
+    }
+
+    @Test
+    fun testIdenticalUploadReturnsStoredSummary() {
+        val summary = upload("first.prl")
+        assertThat(summary.hasErrors()).isFalse()
+        assertThat(summary.id).isEqualTo(contentId(file.readBytes()))
+
+        // the rule file is not parsed again, so the summary still has the name and time of the first upload
+        val second = upload("second.prl")
+        assertThat(second).isEqualTo(summary)
+        assertThat(second.fileName).isEqualTo("first.prl")
+        assertThat(getAllSummaries()).containsExactly(summary)
+    }
+
+    @Test
+    fun testUploadAfterDeletion() {
+        val summary = upload("first.prl")
+        assertThat(deleteRuleFile(summary.id)).isTrue()
+        assertThat(getRuleFile(summary.id)).isNull()
+
+        val second = upload("second.prl")
+        assertThat(second.id).isEqualTo(summary.id)
+        assertThat(second.fileName).isEqualTo("second.prl")
+        assertThat(getRuleFile(summary.id)).isNotNull()
+        assertThat(getAllSummaries()).containsExactly(second)
+    }
+
+    @Test
+    fun testTemporaryFilesAreDeleted() {
+        val before = temporaryFiles()
+        upload("first.prl")
+        upload("second.prl")
+        "feature a\nrule (".byteInputStream().use { storeRuleFile("invalid.prl", it) }
+        assertThat(temporaryFiles()).isSubsetOf(before)
+    }
+
+    @Test
+    fun testParseError() {
+        val summary = "feature a\nrule (".byteInputStream().use { storeRuleFile("invalid.prl", it) }
+        assertThat(summary.hasErrors()).isTrue()
+        assertThat(summary.id).isEmpty()
+        assertThat(summary.fileName).isEqualTo("invalid.prl")
+        assertThat(getAllSummaries()).isEmpty()
+    }
+
+    @Test
+    fun testMeasureAllocatedBytes() {
+        val (array, allocated) = measureAllocatedBytes { ByteArray(1024 * 1024) }
+        assertThat(array).hasSize(1024 * 1024)
+        // -1 if the JVM does not measure the allocations of threads
+        if (allocated != -1L) {
+            assertThat(allocated).isGreaterThanOrEqualTo(1024L * 1024L)
+        }
+    }
+
+    private fun temporaryFiles() =
+        File(System.getProperty("java.io.tmpdir")).listFiles { f -> f.name.startsWith("rulefile-") }!!.toSet()
+
+    private fun upload(fileName: String) = file.inputStream().use { storeRuleFile(fileName, it) }
+}
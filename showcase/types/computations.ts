@@ -85,6 +85,7 @@ export type ComputationStatistics = {
     computationTimeInMs: number
     numberOfSlices: number
     numberOfSliceComputations: number
+    numberOfSavedSliceComputations: number
     averageSliceComputationTimeInMs: number
 }
 